@@ -0,0 +1,102 @@
+/*
+ * Copyright [2021] [ACoLi Lab, Prof. Dr. Chiarcos, Christian Faeth, Goethe University Frankfurt]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.acoli.fintan.bench;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.acoli.fintan.core.util.CustomCSVFormat;
+import org.acoli.fintan.core.util.JenaUtils;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.query.ResultSetFactory;
+import org.apache.jena.query.ResultSetFormatter;
+import org.apache.jena.query.ResultSetRewindable;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serialization of a SPARQL ResultSet by JenaUtils.outputCustomCSV in 
+ * CoNLL format. The query result is materialized once, so only the 
+ * serialization is measured. Jena's CSV writer serves as baseline.
+ * 
+ * @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CustomCSVBenchmark {
+	
+	private static final int SEGMENTS = 1000;
+	
+	private static final String QUERY = 
+			"PREFIX conll: <http://ufal.mff.cuni.cz/conll2009-st/task-description.html#>\n"
+			+ "PREFIX nif: <http://persistence.uni-leipzig.org/nlp2rdf/ontologies/nif-core#>\n"
+			+ "SELECT ?w ?word ?pos ?head ?next WHERE { "
+			+ "?w a nif:Word ; conll:WORD ?word ; conll:POS ?pos ; conll:HEAD ?head "
+			+ "OPTIONAL { ?w nif:nextWord ?next } }";
+	
+	private ResultSetRewindable results;
+	
+	@Setup
+	public void setup() {
+		Model model = ModelFactory.createDefaultModel();
+		for (Model m:new SyntheticCorpus(SEGMENTS, 42).toModels()) {
+			model.add(m);
+		}
+		Query query = QueryFactory.create(QUERY);
+		try (QueryExecution qexec = QueryExecutionFactory.create(query, model)) {
+			results = ResultSetFactory.copyResults(qexec.execSelect());
+		}
+	}
+	
+	private ResultSet rewind() {
+		results.reset();
+		return results;
+	}
+	
+	@Benchmark
+	public long outputCustomCSV() {
+		SyntheticCorpus.CountingOutputStream out = new SyntheticCorpus.CountingOutputStream();
+		JenaUtils.outputCustomCSV(new PrintStream(out), rewind(), CustomCSVFormat.CoNLL);
+		return out.getCount();
+	}
+	
+	@Benchmark
+	public long jenaCSV() {
+		SyntheticCorpus.CountingOutputStream out = new SyntheticCorpus.CountingOutputStream();
+		ResultSetFormatter.outputAsCSV(out, rewind());
+		return out.getCount();
+	}
+
+}
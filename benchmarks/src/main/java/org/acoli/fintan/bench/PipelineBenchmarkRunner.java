@@ -0,0 +1,260 @@
+/*
+ * Copyright [2021] [ACoLi Lab, Prof. Dr. Chiarcos, Christian Faeth, Goethe University Frankfurt]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.acoli.fintan.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.acoli.fintan.core.FintanManager;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.Options;
+import org.apache.commons.io.FileUtils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Runs a Fintan pipeline config repeatedly and reports wall time, CPU time, 
+ * peak heap, GC time and segments/sec per component as JSON lines.
+ * 
+ * Each run is executed by PipelineRun in a fresh JVM, so runs do not share 
+ * heap, JIT state or global settings. Optionally, parameters are swept 
+ * over all combinations of the given values:
+ * 
+ * 	-s modelQueueSize=10,100,1000	global parameter
+ * 	-s threads=1,2,4				parameter of all RDFUpdaters
+ * 	-s upd1:lookahead=0,2			parameter of the component instance "upd1"
+ * 
+ * Global parameters are: modelQueueSize, threadBudget, pipeBufferSize, 
+ * pipeChunkSize, bridgeModelStreams, virtualThreads. 
+ * All other parameters are set on components.
+ * 
+ * @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
+ *
+ */
+public class PipelineBenchmarkRunner {
+	
+	public static final List<String> GLOBAL_PARAMETERS = Arrays.asList(
+			"modelQueueSize", "threadBudget", "pipeBufferSize", "pipeChunkSize", 
+			"bridgeModelStreams", "virtualThreads");
+	public static final String DEFAULT_COMPONENT_CLASS = "RDFUpdater";
+	
+	private final ObjectMapper mapper = new ObjectMapper();
+	private ObjectNode config;
+	private final Map<String, List<String>> sweeps = new LinkedHashMap<String, List<String>>();
+	private int runs = 5;
+	private int warmups = 1;
+	private List<String> jvmArgs = new ArrayList<String>();
+	
+	/**
+	 * Usage:
+	 * 	-c config.json [-p params...] [-n runs] [-w warmups] [-s param=v1,v2 ...] 
+	 * 	[-j "jvm args"] [-o results.jsonl]
+	 */
+	public static void main(String[] args) throws Exception {
+		Options options = new Options();
+		options.addRequiredOption("c", "config", true, "Specify JSON config file");
+		options.addOption("p", "params", true, "Specify optional parameters for JSON config file.");
+		options.getOption("p").setOptionalArg(true);
+		options.getOption("p").setArgs(100);
+		options.addOption("n", "runs", true, "Number of measured runs per parameter combination. Default: 5");
+		options.addOption("w", "warmups", true, "Number of unreported runs per parameter combination. Default: 1");
+		options.addOption("s", "sweep", true, "Parameter sweep: [instance:]param=value1,value2,...");
+		options.addOption("j", "jvmArgs", true, "Arguments for the JVMs executing the runs, e.g. \"-Xmx8g\"");
+		options.addOption("o", "output", true, "JSON lines file for the results. Default: stdout");
+		
+		CommandLineParser parser = new DefaultParser();
+		CommandLine cmd = parser.parse(options, args);
+		
+		PipelineBenchmarkRunner runner = new PipelineBenchmarkRunner();
+		FintanManager man = new FintanManager();
+		man.readConfig(cmd.getOptionValue("c"), cmd.hasOption("p") ? cmd.getOptionValues("p") : new String[] {});
+		runner.config = man.getConfig();
+		if (cmd.hasOption("n"))
+			runner.runs = Integer.parseInt(cmd.getOptionValue("n"));
+		if (cmd.hasOption("w"))
+			runner.warmups = Integer.parseInt(cmd.getOptionValue("w"));
+		if (cmd.hasOption("j"))
+			runner.jvmArgs = Arrays.asList(cmd.getOptionValue("j").trim().split("\\s+"));
+		if (cmd.hasOption("s")) {
+			for (String sweep:cmd.getOptionValues("s")) {
+				int eq = sweep.indexOf('=');
+				if (eq <= 0) 
+					throw new IllegalArgumentException("Invalid sweep: "+sweep);
+				runner.sweeps.put(sweep.substring(0, eq), Arrays.asList(sweep.substring(eq + 1).split(",")));
+			}
+		}
+		
+		PrintWriter out;
+		if (cmd.hasOption("o")) 
+			out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(cmd.getOptionValue("o"), true), StandardCharsets.UTF_8));
+		else 
+			out = new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+		try {
+			runner.run(out);
+		} finally {
+			out.flush();
+			if (cmd.hasOption("o")) 
+				out.close();
+		}
+	}
+	
+	/**
+	 * Execute all runs for all parameter combinations.
+	 */
+	public void run(PrintWriter out) throws IOException, InterruptedException {
+		File tmpDir = java.nio.file.Files.createTempDirectory("fintan-bench").toFile();
+		try {
+			for (Map<String, String> params:combinations()) {
+				ObjectNode runConfig = apply(config.deepCopy(), params);
+				File configFile = new File(tmpDir, "config.json");
+				mapper.writeValue(configFile, runConfig);
+				List<Long> wallTimes = new ArrayList<Long>();
+				for (int i = -warmups; i < runs; i++) {
+					File resultFile = new File(tmpDir, "result.json");
+					FileUtils.deleteQuietly(resultFile);
+					int exit = fork(configFile, resultFile, new File(tmpDir, "run.log"));
+					if (exit != 0 || !resultFile.exists()) {
+						System.err.println("Run failed with exit code "+exit+" for "+params);
+						continue;
+					}
+					if (i < 0) 
+						continue;
+					ObjectNode result = (ObjectNode) mapper.readTree(resultFile);
+					ObjectNode line = mapper.createObjectNode();
+					line.put("timestamp", System.currentTimeMillis());
+					line.put("run", i);
+					ObjectNode paramNode = line.putObject("params");
+					for (Map.Entry<String, String> param:params.entrySet()) {
+						paramNode.put(param.getKey(), param.getValue());
+					}
+					line.setAll(result);
+					out.println(line.toString());
+					out.flush();
+					wallTimes.add(result.get("wallMillis").asLong());
+				}
+				if (!wallTimes.isEmpty()) {
+					Collections.sort(wallTimes);
+					System.err.println(params+": median wall time "+wallTimes.get(wallTimes.size() / 2)+" ms over "+wallTimes.size()+" runs");
+				}
+			}
+		} finally {
+			FileUtils.deleteQuietly(tmpDir);
+		}
+	}
+	
+	private int fork(File configFile, File resultFile, File logFile) throws IOException, InterruptedException {
+		List<String> command = new ArrayList<String>();
+		command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+		command.addAll(jvmArgs);
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(PipelineRun.class.getName());
+		command.add(configFile.getPath());
+		command.add(resultFile.getPath());
+		ProcessBuilder pb = new ProcessBuilder(command);
+		// keep stdout free for results
+		pb.redirectOutput(ProcessBuilder.Redirect.appendTo(logFile));
+		pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+		return pb.start().waitFor();
+	}
+	
+	/**
+	 * @return all combinations of sweep values, in order. 
+	 * 		A single empty combination if nothing is swept.
+	 */
+	private List<Map<String, String>> combinations() {
+		List<Map<String, String>> combinations = new ArrayList<Map<String, String>>();
+		combinations.add(new LinkedHashMap<String, String>());
+		for (Map.Entry<String, List<String>> sweep:sweeps.entrySet()) {
+			List<Map<String, String>> next = new ArrayList<Map<String, String>>();
+			for (Map<String, String> combination:combinations) {
+				for (String value:sweep.getValue()) {
+					Map<String, String> extended = new LinkedHashMap<String, String>(combination);
+					extended.put(sweep.getKey(), value.trim());
+					next.add(extended);
+				}
+			}
+			combinations = next;
+		}
+		return combinations;
+	}
+	
+	/**
+	 * Set the parameters of one combination in a config.
+	 */
+	private ObjectNode apply(ObjectNode conf, Map<String, String> params) {
+		for (Map.Entry<String, String> param:params.entrySet()) {
+			String key = param.getKey();
+			String instance = null;
+			int colon = key.indexOf(':');
+			if (colon > 0) {
+				instance = key.substring(0, colon);
+				key = key.substring(colon + 1);
+			}
+			JsonNode value = parseValue(param.getValue());
+			if (instance == null && GLOBAL_PARAMETERS.contains(key)) {
+				conf.set(key, value);
+				continue;
+			}
+			int matched = 0;
+			for (String section:new String[] {"pipeline", "components"}) {
+				if (!conf.hasNonNull(section)) 
+					continue;
+				for (JsonNode component:conf.withArray(section)) {
+					if (!component.isObject()) 
+						continue;
+					boolean match;
+					if (instance != null) 
+						match = component.hasNonNull("componentInstance") 
+								&& instance.equals(component.get("componentInstance").asText());
+					else 
+						match = component.hasNonNull("class") 
+								&& component.get("class").asText().endsWith(DEFAULT_COMPONENT_CLASS);
+					if (match) {
+						((ObjectNode) component).set(key, value);
+						matched++;
+					}
+				}
+			}
+			if (matched == 0) 
+				throw new IllegalArgumentException("No component found for parameter "+param.getKey());
+		}
+		return conf;
+	}
+	
+	private JsonNode parseValue(String value) {
+		try {
+			return mapper.readTree(value);
+		} catch (IOException e) {
+			return mapper.getNodeFactory().textNode(value);
+		}
+	}
+
+}
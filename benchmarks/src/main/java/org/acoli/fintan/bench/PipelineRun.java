@@ -0,0 +1,156 @@
+/*
+ * Copyright [2021] [ACoLi Lab, Prof. Dr. Chiarcos, Christian Faeth, Goethe University Frankfurt]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.acoli.fintan.bench;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.acoli.fintan.core.FintanManager;
+import org.acoli.fintan.core.metrics.FintanMetrics;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Executes a single run of a Fintan pipeline and writes its measurements 
+ * to a JSON file. Invoked in a fresh JVM by PipelineBenchmarkRunner, so 
+ * heap and GC figures only reflect this run.
+ * 
+ * Usage: PipelineRun config.json result.json
+ * 
+ * @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
+ *
+ */
+public class PipelineRun {
+
+	public static void main(String[] args) throws Exception {
+		if (args.length != 2) 
+			throw new IllegalArgumentException("Usage: PipelineRun config.json result.json");
+		
+		FintanManager man = new FintanManager();
+		man.readConfig(args[0], new String[] {});
+		// metrics are required for per-component figures, but reports are not.
+		if (!man.getConfig().hasNonNull("metrics") || !man.getConfig().get("metrics").isObject()) {
+			ObjectNode metrics = man.getConfig().putObject("metrics");
+			metrics.put("interval", 0);
+			metrics.put("jmx", false);
+			metrics.put("log", false);
+		}
+		
+		for (MemoryPoolMXBean pool:ManagementFactory.getMemoryPoolMXBeans()) {
+			pool.resetPeakUsage();
+		}
+		long gcTime = gcTime();
+		long gcCount = gcCount();
+		long cpuTime = processCpuTime();
+		long start = System.nanoTime();
+		
+		man.buildComponentStack();
+		long built = System.nanoTime();
+		man.start();
+		long end = System.nanoTime();
+		
+		ObjectMapper mapper = new ObjectMapper();
+		ObjectNode result = mapper.createObjectNode();
+		result.put("wallMillis", (end - start) / 1000000);
+		result.put("buildMillis", (built - start) / 1000000);
+		long cpu = processCpuTime();
+		result.put("cpuMillis", (cpu < 0 || cpuTime < 0) ? -1 : (cpu - cpuTime) / 1000000);
+		result.put("peakHeapBytes", peakHeap());
+		result.put("gcMillis", gcTime() - gcTime);
+		result.put("gcCount", gcCount() - gcCount);
+		result.set("components", components(FintanMetrics.snapshot(), mapper));
+		
+		mapper.writeValue(new File(args[1]), result);
+	}
+	
+	/**
+	 * Aggregates stream metrics per component. 
+	 * Segments/sec are based on the segments a component consumed, 
+	 * or produced if it has no Model input (e.g. loaders).
+	 */
+	private static ArrayNode components(ObjectNode snapshot, ObjectMapper mapper) {
+		Map<String, long[]> segments = new HashMap<String, long[]>(); // {in, out}
+		for (JsonNode stream:snapshot.withArray("streams")) {
+			if (stream.hasNonNull("destination")) 
+				segments.computeIfAbsent(stream.get("destination").asText(), k -> new long[2])[0] += stream.get("segmentsRead").asLong();
+			if (stream.hasNonNull("source")) 
+				segments.computeIfAbsent(stream.get("source").asText(), k -> new long[2])[1] += stream.get("segmentsWritten").asLong();
+		}
+		ArrayNode components = mapper.createArrayNode();
+		for (JsonNode component:snapshot.withArray("components")) {
+			ObjectNode node = components.addObject();
+			String name = component.get("name").asText();
+			long[] io = segments.getOrDefault(name, new long[2]);
+			long elapsed = component.get("elapsedMillis").asLong();
+			long processed = (io[0] > 0) ? io[0] : io[1];
+			node.put("name", name);
+			node.put("class", component.get("class").asText());
+			node.put("segmentsIn", io[0]);
+			node.put("segmentsOut", io[1]);
+			node.put("segmentsPerSecond", (elapsed > 0) ? processed * 1000.0 / elapsed : 0);
+			node.put("busyMillis", component.get("busyMillis").asLong());
+			node.put("elapsedMillis", elapsed);
+			node.put("utilization", component.get("utilization").asDouble());
+		}
+		return components;
+	}
+	
+	private static long processCpuTime() {
+		OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+		if (os instanceof com.sun.management.OperatingSystemMXBean) 
+			return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+		return -1;
+	}
+	
+	/**
+	 * Sum of the peak usage of all heap pools. Since pools peak at different 
+	 * times, this is an upper bound of the actual peak heap usage.
+	 */
+	private static long peakHeap() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool:ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) 
+				peak += pool.getPeakUsage().getUsed();
+		}
+		return peak;
+	}
+	
+	private static long gcTime() {
+		long time = 0;
+		for (GarbageCollectorMXBean gc:ManagementFactory.getGarbageCollectorMXBeans()) {
+			time += Math.max(0, gc.getCollectionTime());
+		}
+		return time;
+	}
+	
+	private static long gcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc:ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, gc.getCollectionCount());
+		}
+		return count;
+	}
+
+}
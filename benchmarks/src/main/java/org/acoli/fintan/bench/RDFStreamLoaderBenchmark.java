@@ -0,0 +1,86 @@
+/*
+ * Copyright [2021] [ACoLi Lab, Prof. Dr. Chiarcos, Christian Faeth, Goethe University Frankfurt]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.acoli.fintan.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.acoli.fintan.core.FintanStreamHandler;
+import org.acoli.fintan.load.RDFStreamLoader;
+import org.apache.jena.rdf.model.Model;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Segment parsing throughput of the RDFStreamLoader on Turtle input. 
+ * 
+ * prefixes:
+ * 	perSegment	prefixes repeated for each segment, globalPrefixes=false
+ * 	global		prefixes declared once, globalPrefixes=true
+ * 	fallback	prefixes declared once, globalPrefixes=false 
+ * 				(each segment fails once and is reparsed with cached prefixes)
+ * 
+ * @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RDFStreamLoaderBenchmark {
+	
+	private static final int SEGMENTS = 1000;
+	
+	@Param({"perSegment", "global", "fallback"})
+	public String prefixes;
+	
+	private byte[] corpus;
+	
+	@Setup
+	public void setup() {
+		corpus = new SyntheticCorpus(SEGMENTS, 42).toTurtle("perSegment".equals(prefixes));
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(SEGMENTS)
+	public long load() throws IOException, InterruptedException {
+		RDFStreamLoader loader = new RDFStreamLoader();
+		loader.setSegmentDelimiter("");
+		loader.setSplit(true);
+		loader.setGlobalPrefixes("global".equals(prefixes));
+		FintanStreamHandler<Model> out = new FintanStreamHandler<Model>();
+		loader.setInputStream(SyntheticCorpus.asInputStream(corpus));
+		loader.setOutputStream(out);
+		long[] triples = new long[1];
+		Thread drain = SyntheticCorpus.drain(out, triples);
+		loader.run();
+		drain.join();
+		return triples[0];
+	}
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright [2021] [ACoLi Lab, Prof. Dr. Chiarcos, Christian Faeth, Goethe University Frankfurt]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.acoli.fintan.bench;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.acoli.fintan.core.FintanStreamHandler;
+import org.acoli.fintan.write.RDFStreamWriter;
+import org.apache.jena.rdf.model.Model;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Segment serialization throughput of the RDFStreamWriter to Turtle, 
+ * with and without prefix deduplication.
+ * 
+ * @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RDFStreamWriterBenchmark {
+	
+	private static final int SEGMENTS = 1000;
+	
+	@Param({"false", "true"})
+	public boolean prefixDeduplication;
+	
+	private List<Model> segments;
+	
+	@Setup
+	public void setup() {
+		segments = new SyntheticCorpus(SEGMENTS, 42).toModels();
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(SEGMENTS)
+	public long write() throws IOException, InterruptedException {
+		RDFStreamWriter writer = new RDFStreamWriter();
+		writer.setLang("TTL");
+		writer.setSegmentDelimiter("");
+		writer.setPrefixDeduplication(prefixDeduplication);
+		FintanStreamHandler<Model> in = new FintanStreamHandler<Model>();
+		SyntheticCorpus.CountingOutputStream out = new SyntheticCorpus.CountingOutputStream();
+		writer.setInputStream(in);
+		writer.setOutputStream(out);
+		Thread feed = SyntheticCorpus.feed(segments, in);
+		writer.run();
+		feed.join();
+		return out.getCount();
+	}
+
+}
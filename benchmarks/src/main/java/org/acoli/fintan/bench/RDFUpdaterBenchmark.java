@@ -0,0 +1,118 @@
+/*
+ * Copyright [2021] [ACoLi Lab, Prof. Dr. Chiarcos, Christian Faeth, Goethe University Frankfurt]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.acoli.fintan.bench;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.acoli.fintan.core.FintanScheduler;
+import org.acoli.fintan.core.FintanStreamHandler;
+import org.acoli.fintan.rdf.RDFUpdater;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.lang3.tuple.ImmutableTriple;
+import org.apache.commons.lang3.tuple.Triple;
+import org.apache.jena.rdf.model.Model;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Segment throughput of the RDFUpdater executing typical CoNLL-RDF rules: 
+ * a single pass classification, a transitive rule iterated until it 
+ * reaches a fixpoint, and a rule combining OPTIONAL and DELETE.
+ * 
+ * Segments are copied before each invocation, since updates modify them.
+ * 
+ * @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RDFUpdaterBenchmark {
+	
+	private static final int SEGMENTS = 200;
+	
+	private static final String PREFIXES = 
+			"PREFIX conll: <http://ufal.mff.cuni.cz/conll2009-st/task-description.html#>\n"
+			+ "PREFIX nif: <http://persistence.uni-leipzig.org/nlp2rdf/ontologies/nif-core#>\n";
+	
+	public static final String[][] UPDATES = {
+			{"classify", PREFIXES 
+				+ "INSERT { ?w conll:NOUN true } WHERE { ?w a nif:Word ; conll:POS \"P1\" }", "1"},
+			{"dominates", PREFIXES 
+				+ "INSERT { ?a conll:DOM ?c } WHERE { ?a conll:HEAD ?b . ?b conll:HEAD ?c . FILTER(?a != ?c) }", "*"},
+			{"relabel", PREFIXES 
+				+ "DELETE { ?w conll:POS ?pos } INSERT { ?w conll:UPOS ?pos ; conll:HAS_NEXT ?hasNext } "
+				+ "WHERE { ?w conll:POS ?pos OPTIONAL { ?w nif:nextWord ?n } BIND(BOUND(?n) AS ?hasNext) }", "1"}
+	};
+	
+	@Param({"1", "4"})
+	public int threads;
+	
+	private List<Model> corpus;
+	private List<Model> segments;
+	private List<Triple<String, String, String>> updates;
+	
+	@Setup
+	public void setup() {
+		corpus = new SyntheticCorpus(SEGMENTS, 42).toModels();
+		updates = new ArrayList<Triple<String, String, String>>();
+		for (String[] update:UPDATES) {
+			updates.add(new ImmutableTriple<String, String, String>(update[0], update[1], update[2]));
+		}
+	}
+	
+	@Setup(Level.Invocation)
+	public void copySegments() {
+		segments = SyntheticCorpus.copy(corpus);
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(SEGMENTS)
+	public long update() throws IOException, ParseException, InterruptedException {
+		FintanScheduler.reset();
+		RDFUpdater updater = new RDFUpdater("", "", threads);
+		updater.parseUpdates(updates);
+		FintanStreamHandler<Model> in = new FintanStreamHandler<Model>();
+		FintanStreamHandler<Model> out = new FintanStreamHandler<Model>();
+		updater.setInputStream(in);
+		updater.setOutputStream(out);
+		long[] triples = new long[1];
+		Thread feed = SyntheticCorpus.feed(segments, in);
+		Thread drain = SyntheticCorpus.drain(out, triples);
+		updater.run();
+		feed.join();
+		drain.join();
+		return triples[0];
+	}
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright [2021] [ACoLi Lab, Prof. Dr. Chiarcos, Christian Faeth, Goethe University Frankfurt]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.acoli.fintan.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.acoli.fintan.core.FintanStreamHandler;
+import org.acoli.fintan.core.metrics.StreamMetrics;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Hand-off throughput of a FintanStreamHandler between one producer 
+ * and one consumer thread, with and without metrics.
+ * 
+ * @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StreamHandlerBenchmark {
+	
+	private static final int SEGMENTS = 100000;
+	
+	@Param({"false", "true"})
+	public boolean metrics;
+	
+	private Model segment;
+	
+	@Setup
+	public void setup() {
+		segment = ModelFactory.createDefaultModel();
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(SEGMENTS)
+	public void handOff(Blackhole bh) throws InterruptedException {
+		FintanStreamHandler<Model> handler = new FintanStreamHandler<Model>();
+		if (metrics) 
+			handler.setMetrics(new StreamMetrics("bench", handler));
+		Thread producer = new Thread(() -> {
+			try {
+				for (int i = 0; i < SEGMENTS; i++) {
+					handler.write(segment);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			handler.terminate();
+		});
+		producer.start();
+		while (handler.canRead()) {
+			bh.consume(handler.read());
+		}
+		producer.join();
+	}
+
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright [2021] [ACoLi Lab, Prof. Dr. Chiarcos, Christian Faeth, Goethe University Frankfurt]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.acoli.fintan.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.acoli.fintan.core.FintanInputStream;
+import org.acoli.fintan.core.FintanOutputStream;
+import org.acoli.fintan.load.SyntheticCorpusGenerator;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+
+/**
+ * Reproducible CoNLL-RDF corpora for benchmarking, so no external data is 
+ * required. The segments are generated by SyntheticCorpusGenerator with 
+ * WORD, POS and HEAD columns, uniformly distributed sentence lengths and 
+ * Zipf-distributed word forms over a fixed vocabulary.
+ * 
+ * Also provides helpers for feeding and draining FintanStreams.
+ * 
+ * @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
+ *
+ */
+public class SyntheticCorpus {
+	
+	public static final int VOCABULARY_SIZE = 5000;
+	public static final int MIN_LENGTH = 5;
+	public static final int MAX_LENGTH = 30;
+	public static final int POS_TAGS = 12;
+	
+	private final List<Model> segments = new ArrayList<Model>();
+	
+	/**
+	 * @param sentences number of segments
+	 * @param seed for reproducible corpora
+	 */
+	public SyntheticCorpus(int sentences, long seed) {
+		SyntheticCorpusGenerator generator = new SyntheticCorpusGenerator();
+		generator.setSentences(sentences);
+		generator.setSeed(seed);
+		generator.setLengthDistribution(SyntheticCorpusGenerator.DISTRIBUTION_UNIFORM);
+		generator.setMinLength(MIN_LENGTH);
+		generator.setMaxLength(MAX_LENGTH);
+		generator.setVocabularySize(VOCABULARY_SIZE);
+		generator.setTagsetSize(POS_TAGS);
+		Iterator<Model> iter = generator.segments();
+		while (iter.hasNext()) {
+			segments.add(iter.next());
+		}
+	}
+	
+	public int size() {
+		return segments.size();
+	}
+	
+	/**
+	 * @param prefixesPerSegment 
+	 * 		if true, prefixes are repeated for each segment. 
+	 * 		Otherwise, they are only declared once in the beginning.
+	 * @return the corpus as Turtle, with segments delimited by empty lines.
+	 */
+	public byte[] toTurtle(boolean prefixesPerSegment) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < segments.size(); i++) {
+			StringWriter turtle = new StringWriter();
+			segments.get(i).write(turtle, "TTL");
+			for (String line:turtle.toString().split("\n")) {
+				// all segments share the same prefixes
+				if (line.startsWith("@prefix") && !prefixesPerSegment && i > 0) 
+					continue;
+				if (!line.trim().isEmpty()) 
+					sb.append(line).append('\n');
+			}
+			sb.append('\n');
+		}
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * @return a new Model for each segment.
+	 */
+	public List<Model> toModels() {
+		return copy(segments);
+	}
+	
+	/**
+	 * @return a copy of each Model, e.g. for components modifying their input.
+	 */
+	public static List<Model> copy(List<Model> models) {
+		List<Model> copies = new ArrayList<Model>(models.size());
+		for (Model m:models) {
+			copies.add(ModelFactory.createDefaultModel().add(m).setNsPrefixes(m.getNsPrefixMap()));
+		}
+		return copies;
+	}
+	
+	public static ByteArrayInputStream asInputStream(byte[] data) {
+		return new ByteArrayInputStream(data);
+	}
+	
+	/**
+	 * Writes all models to a stream on a separate thread and terminates it.
+	 * @return the feeding thread.
+	 */
+	public static Thread feed(List<Model> models, FintanOutputStream<Model> out) {
+		Thread t = new Thread(() -> {
+			try {
+				for (Model m:models) {
+					out.write(m);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			out.terminate();
+		}, "bench-feeder");
+		t.start();
+		return t;
+	}
+	
+	/**
+	 * Reads a stream until it is terminated on a separate thread.
+	 * @param triples receives the number of triples read.
+	 * @return the draining thread.
+	 */
+	public static Thread drain(FintanInputStream<Model> in, long[] triples) {
+		Thread t = new Thread(() -> {
+			long count = 0;
+			try {
+				while (in.canRead()) {
+					Model m = in.read();
+					if (m != null) 
+						count += m.size();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			triples[0] = count;
+		}, "bench-drain");
+		t.start();
+		return t;
+	}
+	
+	/**
+	 * Discards all bytes, but counts them.
+	 */
+	public static class CountingOutputStream extends OutputStream {
+		
+		private long count = 0;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+		
+		public long getCount() {
+			return count;
+		}
+	}
+
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright [2021] [ACoLi Lab, Prof. Dr. Chiarcos, Christian Faeth, Goethe University Frankfurt]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.acoli.fintan.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pipe for streaming serialized data between threads. Replaces
+ * java.io.PipedInputStream / PipedOutputStream for linking generic IO components.
+ *
+ * The writing end fills chunks of CHUNK_SIZE bytes and hands them off to the
+ * reading end as a whole. Full and empty chunks circulate between two bounded
+ * queues. Chunks are allocated on demand, up to bufferSize, and reused 
+ * afterwards. Waiting threads are parked and signalled by the queues' locks.
+ *
+ * The reading end only receives EOF when the writing end has been closed.
+ * Like java.io pipes, a read fails if the last thread writing to the pipe 
+ * has died without closing it and all data has been consumed.
+ *
+ * @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
+ *
+ */
+public class BytePipe {
+
+	protected static int BUFFER_SIZE = 4 * 1024 * 1024;
+	protected static int CHUNK_SIZE = 64 * 1024;
+
+	private static final ByteBuffer EOF = ByteBuffer.allocate(0);
+	// interval in which a waiting reader checks the liveness of the writer.
+	private static final long WRITER_CHECK_MILLIS = 1000;
+
+	private final BlockingQueue<ByteBuffer> filled;
+	private final BlockingQueue<ByteBuffer> empty;
+	private final Sink sink = new Sink();
+	private final Source source = new Source();
+
+	private volatile boolean sinkClosed = false;
+	private volatile boolean sourceClosed = false;
+	// last thread writing to the pipe, null before the first write.
+	private volatile Thread writeSide = null;
+
+	private final int chunks;
+	private final int chunkSize;
+
+	/**
+	 * Creates a pipe with the default buffer and chunk sizes.
+	 */
+	public BytePipe() {
+		this(BUFFER_SIZE, CHUNK_SIZE);
+	}
+
+	/**
+	 * Creates a pipe holding up to bufferSize bytes in chunks of chunkSize.
+	 *
+	 * @param bufferSize
+	 * 			total capacity in bytes. At least one chunk.
+	 * @param chunkSize
+	 * 			size of a single chunk handed off to the reader.
+	 */
+	public BytePipe(int bufferSize, int chunkSize) {
+		if (chunkSize <= 0)
+			throw new IllegalArgumentException("chunkSize must be positive.");
+		this.chunks = Math.max(1, bufferSize / chunkSize);
+		this.chunkSize = chunkSize;
+		// one additional slot for the EOF marker
+		filled = new ArrayBlockingQueue<ByteBuffer>(chunks + 1);
+		empty = new ArrayBlockingQueue<ByteBuffer>(chunks);
+	}
+
+	/**
+	 * @return the writing end of this pipe.
+	 */
+	public OutputStream getOutputStream() {
+		return sink;
+	}
+
+	/**
+	 * @return the reading end of this pipe.
+	 */
+	public InputStream getInputStream() {
+		return source;
+	}
+
+
+	private class Sink extends OutputStream {
+
+		private ByteBuffer current;
+		private int allocated = 0;
+
+		private void ensureOpen() throws IOException {
+			if (sinkClosed)
+				throw new IOException("Pipe closed.");
+			if (sourceClosed)
+				throw new IOException("Read end of pipe closed.");
+			writeSide = Thread.currentThread();
+		}
+
+		private void nextChunk() throws IOException {
+			current = empty.poll();
+			if (current == null && allocated < chunks) {
+				current = ByteBuffer.allocate(chunkSize);
+				allocated++;
+			} else if (current == null) {
+				try {
+					current = empty.take();
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException(e.getMessage());
+				}
+			}
+			current.clear();
+		}
+
+		private void handOff() throws IOException {
+			if (current == null || current.position() == 0)
+				return;
+			current.flip();
+			try {
+				filled.put(current);
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException(e.getMessage());
+			}
+			current = null;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			ensureOpen();
+			if (current == null)
+				nextChunk();
+			current.put((byte) b);
+			if (!current.hasRemaining())
+				handOff();
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				ensureOpen();
+				if (current == null)
+					nextChunk();
+				int n = Math.min(len, current.remaining());
+				current.put(b, off, n);
+				off += n;
+				len -= n;
+				if (!current.hasRemaining())
+					handOff();
+			}
+		}
+
+		/**
+		 * Hands off the current partial chunk, so the reader does not have to
+		 * wait for it to be filled up.
+		 */
+		@Override
+		public void flush() throws IOException {
+			if (sinkClosed || sourceClosed)
+				return;
+			handOff();
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (sinkClosed)
+				return;
+			if (!sourceClosed)
+				handOff();
+			sinkClosed = true;
+			try {
+				filled.put(EOF);
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException(e.getMessage());
+			}
+		}
+	}
+
+
+	private class Source extends InputStream {
+
+		private ByteBuffer current;
+
+		/**
+		 * @return false on EOF
+		 */
+		private boolean ensureData() throws IOException {
+			if (sourceClosed)
+				throw new IOException("Pipe closed.");
+			if (current == EOF)
+				return false;
+			if (current != null && current.hasRemaining())
+				return true;
+			if (current != null)
+				empty.offer(current);
+			try {
+				while ((current = filled.poll(WRITER_CHECK_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+					Thread writer = writeSide;
+					if (writer != null && !writer.isAlive() && filled.isEmpty())
+						throw new IOException("Write end dead.");
+				}
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException(e.getMessage());
+			}
+			return current != EOF;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (!ensureData())
+				return -1;
+			return current.get() & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0)
+				return 0;
+			if (!ensureData())
+				return -1;
+			int n = Math.min(len, current.remaining());
+			current.get(b, off, n);
+			return n;
+		}
+
+		@Override
+		public int available() throws IOException {
+			if (current == null || current == EOF)
+				return 0;
+			return current.remaining();
+		}
+
+		/**
+		 * Closing the reading end releases a writer waiting for free chunks.
+		 * All subsequent writes fail.
+		 */
+		@Override
+		public void close() throws IOException {
+			sourceClosed = true;
+			if (current != null && current != EOF)
+				empty.offer(current);
+			current = EOF;
+			ByteBuffer chunk;
+			while ((chunk = filled.poll()) != null) {
+				if (chunk != EOF)
+					empty.offer(chunk);
+			}
+		}
+	}
+}
@@ -19,13 +19,15 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.HashMap;
 
+import org.acoli.fintan.core.checkpoint.FintanCheckpoint;
+import org.acoli.fintan.core.graph.NodeInterner;
+import org.acoli.fintan.core.metrics.FintanMetrics;
 import org.acoli.fintan.core.util.IOUtils;
+import org.acoli.fintan.core.util.JenaUtils;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.DefaultParser;
@@ -68,7 +70,9 @@ public class FintanManager {
 	
 	private ObjectNode config;
 	
-	private HashMap<String, FintanStreamComponent> componentStack;
+	private HashMap<String, FintanStreamComponent<?, ?>> componentStack;
+	
+	private boolean bridgeModelStreams = false;
 	
 	
 	/**
@@ -134,6 +138,21 @@ public class FintanManager {
 	}
 
 	
+	/**
+	 * @return the JSON config of this pipeline.
+	 */
+	public ObjectNode getConfig() {
+		return config;
+	}
+
+	/**
+	 * Provide a JSON config instead of reading it from a file.
+	 * @param config
+	 */
+	public void setConfig(ObjectNode config) {
+		this.config = config;
+	}
+
 	/**
 	 * Validates config and reads all parameters to construct a Fintan pipeline.
 	 * @throws IOException
@@ -147,28 +166,63 @@ public class FintanManager {
 		
 		//BUILD COMPONENT STACK
 		if (componentStack == null) 
-			componentStack = new HashMap<String, FintanStreamComponent>();
+			componentStack = new HashMap<String, FintanStreamComponent<?, ?>>();
 		else
 			componentStack.clear();
 		
+		FintanScheduler.reset();
+		
 		//SET GLOBAL PARAMETERS
+		if (config.hasNonNull("threadBudget"))
+			FintanScheduler.setThreadBudget(config.get("threadBudget").asInt(0));
+		if (config.hasNonNull("virtualThreads"))
+			FintanScheduler.setVirtualThreads(config.get("virtualThreads").asBoolean(false));
 		if (config.hasNonNull("modelQueueSize"))
 			FintanStreamHandler.QUEUE_SIZE = config.get("modelQueueSize").asInt(100);
+		if (config.hasNonNull("spillDirectory"))
+			FintanStreamHandler.SPILL_DIRECTORY = config.get("spillDirectory").asText();
+		// limit per Model stream: N streams may spill up to N * spillMaxBytes.
+		if (config.hasNonNull("spillMaxBytes"))
+			FintanStreamHandler.SPILL_MAX_BYTES = config.get("spillMaxBytes").asLong(FintanStreamHandler.SPILL_MAX_BYTES);
+		if (config.hasNonNull("pipeBufferSize"))
+			BytePipe.BUFFER_SIZE = config.get("pipeBufferSize").asInt(BytePipe.BUFFER_SIZE);
+		if (config.hasNonNull("pipeChunkSize"))
+			BytePipe.CHUNK_SIZE = config.get("pipeChunkSize").asInt(BytePipe.CHUNK_SIZE);
+		if (config.hasNonNull("compressionThreads"))
+			IOUtils.COMPRESSION_THREADS = config.get("compressionThreads").asInt(IOUtils.COMPRESSION_THREADS);
+		if (config.hasNonNull("compactGraphs"))
+			JenaUtils.setCompactGraphs(config.get("compactGraphs").asBoolean(false));
+		if (config.hasNonNull("nodeCacheSize"))
+			NodeInterner.setGlobalSize(config.get("nodeCacheSize").asInt(0));
+		if (config.hasNonNull("bridgeModelStreams"))
+			bridgeModelStreams = config.get("bridgeModelStreams").asBoolean(false);
+		FintanMetrics.configure(config.get("metrics"));
+		FintanCheckpoint.configure(config.get("checkpoint"));
+		if (NodeInterner.getGlobal() != null)
+			FintanMetrics.registerSource(NodeInterner.getGlobal());
 		
 
-		//BUILD DEFAULT "PIPELINE" including default I/O
-		if (config.hasNonNull("pipeline"))
-			buildDefaultPipeline();
-		
 		//BUILD ALL OTHER COMPONENTS
+		//before the default pipeline, since checkpointing depends on all components.
 		if (config.hasNonNull("components"))
 			buildOtherComponents();
 		
+		//BUILD DEFAULT "PIPELINE" including default I/O
+		if (config.hasNonNull("pipeline"))
+			buildDefaultPipeline();
+		
 		//INTERLINK COMPONENTS as defined in "streams"
 		if (config.hasNonNull("streams"))
 			buildStreams();
 		
 		validateLinkState();
+		
+		//DISTRIBUTE thread budget among parallel components
+		FintanScheduler.assignWorkers(componentStack.values());
+		
+		for (FintanStreamComponent<?, ?> component:componentStack.values()) {
+			FintanMetrics.registerComponent(component);
+		}
 	}
 	
 
@@ -199,8 +253,15 @@ public class FintanManager {
 			validDefaultOutput = true;
 		}
 		
-		if (validPipeline && validDefaultInput && validDefaultOutput) {
+		if (validPipeline && validDefaultOutput) {
 			//regular old CoNLL-RDF pipeline
+			//default input may be omitted, if the pipeline starts with a generator. 
+			//missing input streams are detected by validateLinkState()
+			valid = true;
+		}
+		
+		if (validPipeline && validDefaultInput) {
+			//pipeline ending in a component without output, e.g. TDBIndexer
 			valid = true;
 		}
 		
@@ -225,18 +286,12 @@ public class FintanManager {
 	 */
 	private void buildDefaultPipeline() throws IOException {
 		//read default input parameter, can be null in case it is defined in "streams"
-		InputStream defaultInput = null;
-		if (config.hasNonNull("input"))
-			defaultInput = IOUtils.parseConfEntryAsInputStream(config.get("input").asText());
-
+		String inputEntry = config.hasNonNull("input") ? config.get("input").asText() : null;
 		//read default output parameter, can be null in case it is defined in "streams"
-		OutputStream defaultOutput = null;
-		if (config.hasNonNull("output"))
-			defaultOutput = IOUtils.parseConfEntryAsOutputStream(config.get("output").asText());
+		String outputEntry = config.hasNonNull("output") ? config.get("output").asText() : null;
 
-		// First inputStream is always main input
-		Object nextInput = defaultInput;
 		// Traverse pipeline array	
+		ArrayList<FintanStreamComponent<?, ?>> pipeline = new ArrayList<FintanStreamComponent<?, ?>>();
 		for (JsonNode pipelineElement:config.withArray("pipeline")) {
 			if (!pipelineElement.getNodeType().equals(JsonNodeType.OBJECT)) {
 				throw new IOException("Elements in 'pipeline' must be object nodes.");
@@ -255,20 +310,37 @@ public class FintanManager {
 			component.setInstanceName(identifier);
 			
 			componentStack.put(identifier, component);
+			pipeline.add(component);
+		}
+		
+		InputStream defaultInput = null;
+		OutputStream defaultOutput = null;
+		if (FintanCheckpoint.isEnabled() && FintanCheckpoint.supports(inputEntry, outputEntry, componentStack.values())) {
+			//resumes from the checkpoint, if there is any.
+			FintanCheckpoint.attach(inputEntry, outputEntry);
+			defaultInput = FintanCheckpoint.openInput();
+			defaultOutput = FintanCheckpoint.openOutput();
+		} else {
+			if (inputEntry != null)
+				defaultInput = IOUtils.parseConfEntryAsInputStream(inputEntry);
+			if (outputEntry != null)
+				defaultOutput = IOUtils.parseConfEntryAsOutputStream(outputEntry);
+		}
 
-			
-			// Define Pipeline I/O
-			// always use previously defined input... first main input, later piped input
-			// currently late binding. Will terminate if streams are incompatible.
-			if (nextInput != null)
-				component.setInputStream(nextInput);
-			
-			if (componentStack.size() == config.withArray("pipeline").size()) {
+		// Define Pipeline I/O
+		for (int i = 0; i < pipeline.size(); i++) {
+			FintanStreamComponent component = pipeline.get(i);
+			// First inputStream is always main input
+			if (i == 0 && defaultInput != null)
+				component.setInputStream(defaultInput);
+			if (i == pipeline.size() - 1) {
 				// last component, final output
 				if (defaultOutput != null)
 					component.setOutputStream(defaultOutput);
 			} else {
-				nextInput = connectComponents(component, null, null, null);
+				// piped input of the next component.
+				// currently late binding. Will terminate if streams are incompatible.
+				connectComponents(component, null, pipeline.get(i+1), null);
 			}
 		}
 	}
@@ -380,10 +452,10 @@ public class FintanManager {
 		// TODO possibly check for deadlocks using Fintan Ontology.
 		for (String key:componentStack.keySet()) {
 			FintanStreamComponent component = componentStack.get(key);
-			if (component.listInputStreamNames().length <=0)
+			if (component.requiresInputStream() && component.listInputStreamNames().length <=0)
 				throw new IOException("Component has no valid InputStream: "+key);
 
-			if (component.listOutputStreamNames().length <=0)
+			if (component.requiresOutputStream() && component.listOutputStreamNames().length <=0)
 				throw new IOException("Component has no valid OutputStream: "+key);
 		}
 	}
@@ -491,23 +563,36 @@ public class FintanManager {
 		if (sourceComp instanceof StreamLoader) {
 			// Loader uses FintanStream as Output
 			FintanStreamHandler compOutput = new FintanStreamHandler();
+			registerStreamMetrics(compOutput, sourceComp, sourceGraph, destComp, destGraph);
 			sourceComp.setOutputStream(compOutput, sourceGraph);
 			nextInput = compOutput;
 		} else if (sourceComp instanceof StreamRdfUpdater) {
 			// Updater uses FintanStream as Output
 			FintanStreamHandler compOutput = new FintanStreamHandler();
+			registerStreamMetrics(compOutput, sourceComp, sourceGraph, destComp, destGraph);
 			sourceComp.setOutputStream(compOutput, sourceGraph);
 			nextInput = compOutput;
 		} else if (sourceComp instanceof StreamTransformerGenericIO) {
 			// GenericIO uses java OutputStreams
-			PipedOutputStream compOutput = new PipedOutputStream();
-			sourceComp.setOutputStream(compOutput, sourceGraph);
-			nextInput = new PipedInputStream(compOutput);
+			BytePipe pipe = new BytePipe();
+			sourceComp.setOutputStream(pipe.getOutputStream(), sourceGraph);
+			nextInput = pipe.getInputStream();
 		} else if (sourceComp instanceof StreamWriter) {
-			// GenericIO uses java OutputStreams
-			PipedOutputStream compOutput = new PipedOutputStream();
+			OutputStream compOutput;
+			if (bridgeable(sourceComp, destComp)) {
+				// skip serialization between compatible RDF writer and loader
+				LOG.info("Bridging Model stream from <"+sourceComp.getInstanceName()+"> to <"+destComp.getInstanceName()+">");
+				ModelStreamBridge bridge = new ModelStreamBridge();
+				registerStreamMetrics(bridge.getHandler(), sourceComp, sourceGraph, destComp, destGraph);
+				compOutput = bridge.getOutputStream();
+				nextInput = bridge.getInputStream();
+			} else {
+				// GenericIO uses java OutputStreams
+				BytePipe pipe = new BytePipe();
+				compOutput = pipe.getOutputStream();
+				nextInput = pipe.getInputStream();
+			}
 			sourceComp.setOutputStream(compOutput, sourceGraph);
-			nextInput = new PipedInputStream(compOutput);
 		}
 		
 		if (destComp != null && nextInput != null) {
@@ -521,20 +606,65 @@ public class FintanManager {
 		return nextInput;
 	}
 
+	/**
+	 * Attach metrics to a stream linking two stream slots. No-op if metrics are disabled.
+	 */
+	private static void registerStreamMetrics(FintanStreamHandler<?> handler, FintanStreamComponent<?, ?> sourceComp, String sourceGraph, FintanStreamComponent<?, ?> destComp, String destGraph) {
+		FintanMetrics.registerStream(handler, streamName(sourceComp, sourceGraph, destComp, destGraph), 
+				sourceComp.getInstanceName(), (destComp != null) ? destComp.getInstanceName() : null);
+	}
+
+	/**
+	 * @return a readable name for a link between two stream slots, 
+	 * 		e.g. "loader->updater:http://graph"
+	 */
+	private static String streamName(FintanStreamComponent<?, ?> sourceComp, String sourceGraph, FintanStreamComponent<?, ?> destComp, String destGraph) {
+		String name = sourceComp.getInstanceName();
+		if (!sourceGraph.isEmpty())
+			name += ":"+sourceGraph;
+		name += "->";
+		if (destComp != null) {
+			name += destComp.getInstanceName();
+			if (!destGraph.isEmpty())
+				name += ":"+destGraph;
+		}
+		return name;
+	}
+
+	/**
+	 * Checks whether the text link between two components can be replaced 
+	 * by a ModelStreamBridge. Only applies if "bridgeModelStreams" is active.
+	 * @param sourceComp
+	 * @param destComp
+	 * @return true if both components support compatible bridging.
+	 */
+	private boolean bridgeable(FintanStreamComponent<?, ?> sourceComp, FintanStreamComponent<?, ?> destComp) {
+		if (!bridgeModelStreams || destComp == null)
+			return false;
+		if (!(sourceComp instanceof ModelStreamBridgeable) || !(destComp instanceof ModelStreamBridgeable))
+			return false;
+		if (!(destComp instanceof StreamLoader))
+			return false;
+		return ModelStreamBridge.canBridge((ModelStreamBridgeable) sourceComp, (ModelStreamBridgeable) destComp);
+	}
+
 	/**
 	 * Start pipeline execution. Each component is run in a separate thread.
+	 * Returns after all components and their sub-workers have finished.
 	 * ComponentStack must be built beforehand.
 	 * @throws InterruptedException 
 	 */
 	public void start() throws InterruptedException {
-		ArrayList<Thread> threads = new ArrayList<Thread>();
+		FintanMetrics.start();
+		FintanCheckpoint.start();
 		for (FintanStreamComponent component:componentStack.values()) {
-			Thread t = new Thread(component);
-	        t.start();
-	        threads.add(t);
+			FintanScheduler.startThread(component, "fintan-"+component.getInstanceName());
 		}
-		for (Thread t:threads) {
-			t.join();
+		try {
+			FintanScheduler.joinAll();
+			FintanCheckpoint.stop();
+		} finally {
+			FintanMetrics.stop();
 		}
 	}
 
@@ -0,0 +1,292 @@
+/*
+ * Copyright [2021] [ACoLi Lab, Prof. Dr. Chiarcos, Christian Faeth, Goethe University Frankfurt]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.acoli.fintan.core;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import org.acoli.fintan.core.metrics.FintanMetrics;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Pipeline-wide execution model for Fintan components. 
+ * 
+ * All threads of a pipeline should be created by the scheduler:
+ * 	- component threads and per-stream sub-workers are started by 
+ * 		startThread(). They mostly block on streams and are not 
+ * 		counted against the thread budget.
+ * 	- worker threads for parallel processing of a single stream are 
+ * 		requested by requestWorkers(). The total number of workers 
+ * 		granted to all components is limited by the thread budget.
+ * 
+ * The budget defaults to the number of logical cores available to the runtime.
+ * 
+ * Optionally, component threads and sub-workers can be run as virtual threads, 
+ * if the runtime supports them (Java 21+). Since Fintan targets Java 8, they 
+ * are created reflectively. Budgeted workers always remain platform threads.
+ * 
+ * @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
+ *
+ */
+public class FintanScheduler {
+	
+	protected static final Logger LOG = LogManager.getLogger(FintanScheduler.class.getName());
+	
+	private static int threadBudget = defaultThreadBudget();
+	private static final IdentityHashMap<Object, Integer> allocations = new IdentityHashMap<Object, Integer>();
+	private static final List<Thread> threads = new ArrayList<Thread>();
+	private static boolean virtualThreads = false;
+	
+	// Thread.ofVirtual() and Thread.Builder.unstarted(Runnable), null if unsupported
+	private static final Method OF_VIRTUAL;
+	private static final Method BUILDER_NAME;
+	private static final Method BUILDER_UNSTARTED;
+	static {
+		Method ofVirtual = null;
+		Method builderName = null;
+		Method builderUnstarted = null;
+		if (javaVersion() >= 21) {
+			try {
+				Class<?> builder = Class.forName("java.lang.Thread$Builder");
+				ofVirtual = Thread.class.getMethod("ofVirtual");
+				builderName = builder.getMethod("name", String.class);
+				builderUnstarted = builder.getMethod("unstarted", Runnable.class);
+			} catch (ClassNotFoundException | NoSuchMethodException e) {
+				ofVirtual = null;
+			}
+		}
+		OF_VIRTUAL = ofVirtual;
+		BUILDER_NAME = builderName;
+		BUILDER_UNSTARTED = builderUnstarted;
+	}
+	
+	private static int javaVersion() {
+		String version = System.getProperty("java.specification.version", "1.8");
+		if (version.startsWith("1.")) 
+			version = version.substring(2);
+		try {
+			return Integer.parseInt(version);
+		} catch (NumberFormatException e) {
+			return 8;
+		}
+	}
+	
+	private static int defaultThreadBudget() {
+		return Math.max(1, Runtime.getRuntime().availableProcessors());
+	}
+	
+	public static synchronized int getThreadBudget() {
+		return threadBudget;
+	}
+
+	/**
+	 * Set the total number of worker threads available to all components. 
+	 * Values <= 0 reset the budget to the number of logical cores.
+	 * @param threadBudget
+	 */
+	public static synchronized void setThreadBudget(int threadBudget) {
+		if (threadBudget <= 0) 
+			threadBudget = defaultThreadBudget();
+		FintanScheduler.threadBudget = threadBudget;
+	}
+	
+	/**
+	 * @return true if the runtime supports virtual threads.
+	 */
+	public static boolean supportsVirtualThreads() {
+		return OF_VIRTUAL != null;
+	}
+	
+	public static synchronized boolean isVirtualThreads() {
+		return virtualThreads;
+	}
+
+	/**
+	 * Run component threads and sub-workers on virtual threads. 
+	 * Falls back to platform threads, if the runtime does not support them.
+	 * @param virtualThreads
+	 */
+	public static synchronized void setVirtualThreads(boolean virtualThreads) {
+		if (virtualThreads && !supportsVirtualThreads()) {
+			LOG.warn("Virtual threads require Java 21 or later. Falling back to platform threads.");
+			virtualThreads = false;
+		}
+		FintanScheduler.virtualThreads = virtualThreads;
+	}
+	
+	/**
+	 * Discard all allocations and tracked threads and restore the default 
+	 * settings, e.g. before building a new pipeline.
+	 */
+	public static synchronized void reset() {
+		allocations.clear();
+		threads.clear();
+		threadBudget = defaultThreadBudget();
+		virtualThreads = false;
+	}
+	
+	/**
+	 * @return the number of workers not yet allocated to any component.
+	 */
+	public static synchronized int getAvailableWorkers() {
+		int allocated = 0;
+		for (int a:allocations.values()) {
+			allocated += a;
+		}
+		return Math.max(0, threadBudget - allocated);
+	}
+	
+	/**
+	 * Distributes the thread budget among all parallel components of a pipeline 
+	 * and assigns the resulting number of workers to each of them.
+	 * 
+	 * Components with an explicit thread count in their config are served first. 
+	 * If they exceed the budget, they are scaled down proportionally. 
+	 * The remaining workers are split evenly among the other components.
+	 * Each component is granted at least one worker.
+	 * 
+	 * @param components all components of the pipeline. Only instances of 
+	 * 		ParallelStreamComponent are considered.
+	 */
+	public static synchronized void assignWorkers(Collection<? extends FintanStreamComponent<?, ?>> components) {
+		List<ParallelStreamComponent> explicit = new ArrayList<ParallelStreamComponent>();
+		List<ParallelStreamComponent> auto = new ArrayList<ParallelStreamComponent>();
+		int requested = 0;
+		for (FintanStreamComponent<?, ?> component:components) {
+			if (!(component instanceof ParallelStreamComponent)) 
+				continue;
+			ParallelStreamComponent parallel = (ParallelStreamComponent) component;
+			if (parallel.getThreads() > 0) {
+				explicit.add(parallel);
+				requested += parallel.getThreads();
+			} else {
+				auto.add(parallel);
+			}
+		}
+		
+		int available = getAvailableWorkers();
+		if (requested > available) {
+			LOG.warn("Requested worker threads ("+requested+") exceed thread budget ("+available+"). Scaling down.");
+		}
+		for (ParallelStreamComponent parallel:explicit) {
+			int granted = parallel.getThreads();
+			if (requested > available) 
+				granted = Math.max(1, granted * available / requested);
+			grant(parallel, granted);
+		}
+		
+		if (!auto.isEmpty()) {
+			int share = Math.max(1, getAvailableWorkers() / auto.size());
+			for (ParallelStreamComponent parallel:auto) {
+				grant(parallel, share);
+			}
+		}
+	}
+	
+	private static void grant(ParallelStreamComponent parallel, int granted) {
+		allocations.put(parallel, granted);
+		parallel.setThreads(granted);
+		if (parallel instanceof FintanStreamComponent) 
+			LOG.info("Assigned "+granted+" worker threads to <"+((FintanStreamComponent) parallel).getInstanceName()+">");
+	}
+	
+	/**
+	 * Request worker threads for a component. If workers have already been 
+	 * assigned to the component, the assignment is returned. Otherwise, the 
+	 * request is served from the unallocated budget.
+	 * 
+	 * @param requester the component requesting workers
+	 * @param requested the number of workers requested. 
+	 * 		0 or less for all available workers.
+	 * @return the number of workers granted, at least 1.
+	 */
+	public static synchronized int requestWorkers(Object requester, int requested) {
+		Integer allocated = allocations.get(requester);
+		if (allocated != null) 
+			return allocated;
+		int available = getAvailableWorkers();
+		int granted = (requested > 0) ? Math.min(requested, available) : available;
+		granted = Math.max(1, granted);
+		allocations.put(requester, granted);
+		return granted;
+	}
+	
+	/**
+	 * Return all workers allocated to a component to the budget.
+	 * @param requester
+	 */
+	public static synchronized void releaseWorkers(Object requester) {
+		allocations.remove(requester);
+	}
+	
+	/**
+	 * Start a component thread or per-stream sub-worker. 
+	 * The thread is tracked until the pipeline terminates. If metrics are enabled, 
+	 * its CPU time is accounted to the respective component.
+	 * 
+	 * @param runnable
+	 * @param name
+	 * @return the started Thread
+	 */
+	public static Thread startThread(Runnable runnable, String name) {
+		Thread t;
+		synchronized (FintanScheduler.class) {
+			t = newThread(FintanMetrics.monitor(runnable), name);
+			threads.add(t);
+		}
+		t.start();
+		return t;
+	}
+	
+	private static Thread newThread(Runnable runnable, String name) {
+		if (virtualThreads) {
+			try {
+				Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), name);
+				return (Thread) BUILDER_UNSTARTED.invoke(builder, runnable);
+			} catch (IllegalAccessException | InvocationTargetException e) {
+				LOG.warn("Failed to create virtual thread. Falling back to platform threads: "+e);
+				virtualThreads = false;
+			}
+		}
+		return new Thread(runnable, name);
+	}
+	
+	/**
+	 * Wait for all threads started by the scheduler to finish, 
+	 * including threads started while waiting.
+	 * 
+	 * @throws InterruptedException
+	 */
+	public static void joinAll() throws InterruptedException {
+		int joined = 0;
+		while (true) {
+			Thread t;
+			synchronized (FintanScheduler.class) {
+				if (joined >= threads.size()) 
+					return;
+				t = threads.get(joined);
+			}
+			t.join();
+			joined++;
+		}
+	}
+
+}
@@ -174,6 +174,37 @@ public abstract class FintanStreamComponent<In, Out> implements Runnable {
 	}
 
 
+	/**
+	 * Components generating data on their own can override this method. 
+	 * Their input stream slots are not required to be linked.
+	 * 
+	 * @return true if this component requires at least one input stream.
+	 */
+	public boolean requiresInputStream() {
+		return true;
+	}
+
+	/**
+	 * Components storing data elsewhere can override this method. 
+	 * Their output stream slots are not required to be linked.
+	 * 
+	 * @return true if this component requires at least one output stream.
+	 */
+	public boolean requiresOutputStream() {
+		return true;
+	}
+
+	/**
+	 * Components whose output for a segment depends on preceding or 
+	 * following segments must override this method. A checkpoint only 
+	 * resumes after the last written segment, without their context.
+	 * 
+	 * @return true if processing can be resumed at any segment.
+	 */
+	public boolean supportsCheckpointing() {
+		return true;
+	}
+
 	/**
 	 * Start this component.
 	 */
@@ -15,14 +15,33 @@
  */
 package org.acoli.fintan.core;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.acoli.fintan.core.metrics.StreamMetrics;
+import org.apache.jena.rdf.model.Model;
 
 
 /**
  * Implements a BlockingQueue for streaming non-serialized objects between threads.
  * 
+ * In spill mode (SPILL_DIRECTORY is set), Models written to a full queue do 
+ * not block the producer. Instead, they are serialized into a SpillBuffer 
+ * of at most SPILL_MAX_BYTES and moved back into the queue in their original 
+ * order as soon as the reader frees space. While segments are spilled, all 
+ * new segments are spilled as well. The producer only blocks if the 
+ * SpillBuffer is full.
  * 
+ * SPILL_MAX_BYTES limits each stream separately, not the whole pipeline. 
+ * A pipeline with N Model streams may spill up to N times SPILL_MAX_BYTES 
+ * to SPILL_DIRECTORY.
  * 
  * @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
  *
@@ -31,17 +50,97 @@ import java.util.concurrent.BlockingQueue;
 public class FintanStreamHandler<T> implements FintanInputStream<T>, FintanOutputStream<T> {
 
 	protected static int QUEUE_SIZE = 100;
+	// spill mode is disabled unless a directory is set.
+	protected static String SPILL_DIRECTORY = null;
+	// maximum number of bytes spilled by a single stream.
+	protected static long SPILL_MAX_BYTES = 1024L * 1024 * 1024;
 	
-	private boolean active = true;
+	private volatile boolean active = true;
 	private BlockingQueue<Object> queue = new ArrayBlockingQueue<Object>(QUEUE_SIZE);
 	private static final Object POISON_PILL = new Object();
+	// serializes readers. A ReentrantLock does not pin virtual threads while blocking on take().
+	private final ReentrantLock readLock = new ReentrantLock();
+	// null unless metrics are enabled
+	private volatile StreamMetrics metrics = null;
+	
+	// null unless spill mode is enabled. Guarded by spillLock.
+	private final SpillBuffer spill = SPILL_DIRECTORY == null ? null : new SpillBuffer(new File(SPILL_DIRECTORY), SPILL_MAX_BYTES);
+	private final ReentrantLock spillLock = new ReentrantLock();
+	// signalled whenever the reader frees space in the queue or the spill buffer.
+	private final Condition spaceFreed = spillLock.newCondition();
+	// number of segments currently spilled. Writers must not enqueue directly while > 0.
+	// Writers only enqueue while holding spillLock, so the reader can rely on it.
+	private final AtomicInteger spilled = new AtomicInteger();
+	private volatile long spilledBytes = 0;
+	private final LongAdder segmentsSpilled = new LongAdder();
+	
+	/**
+	 * @return the metrics attached to this stream, or null.
+	 */
+	public StreamMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Attach metrics to this stream. Only done by FintanMetrics.
+	 * @param metrics
+	 */
+	public void setMetrics(StreamMetrics metrics) {
+		this.metrics = metrics;
+	}
+	
+	/**
+	 * @return the number of elements currently queued.
+	 */
+	public int size() {
+		return queue.size();
+	}
+	
+	/**
+	 * @return the maximum number of elements to be queued.
+	 */
+	public int capacity() {
+		return queue.size() + queue.remainingCapacity();
+	}
+	
+	/**
+	 * @return the number of segments currently spilled.
+	 */
+	public int spilledSize() {
+		return spilled.get();
+	}
+	
+	/**
+	 * @return the number of bytes currently spilled.
+	 */
+	public long spilledBytes() {
+		return spilledBytes;
+	}
+	
+	/**
+	 * @return the total number of segments spilled so far.
+	 */
+	public long segmentsSpilled() {
+		return segmentsSpilled.sum();
+	}
 	
 	
 	@Override
 	public void terminate() {
 		if (active) {
 			active = false;
-			if (queue.isEmpty())
+			if (spill != null) {
+				spillLock.lock();
+				try {
+					// a spilled segment may be pending while the queue is empty
+					if (queue.isEmpty() && spilled.get() == 0)
+						queue.add(POISON_PILL);
+					if (spilled.get() == 0) 
+						spill.close();
+				} finally {
+					spillLock.unlock();
+				}
+			} else if (queue.isEmpty())
 				//in case a reader Thread is already waiting, add poison pill.
 				//this is recommended for BlockingQueues:  "Java Concurrency in Practice", pp. 155-156
 				//only one poison pill is required for multiple threads, since read() is synchronized.
@@ -55,7 +154,7 @@ public class FintanStreamHandler<T> implements FintanInputStream<T>, FintanOutpu
 	
 	@Override
 	public boolean canRead() {
-		return active || queue.size()>0;
+		return active || queue.size()>0 || spilled.get()>0;
 	}
 	
 	@Override
@@ -70,13 +169,95 @@ public class FintanStreamHandler<T> implements FintanInputStream<T>, FintanOutpu
 
 	/**
 	 * Write will block if buffer is full. Calling thread will resume operation
-	 * as soon as buffer is free.
+	 * as soon as buffer is free. 
+	 * 
+	 * In spill mode, Models are spilled instead, unless the SpillBuffer is 
+	 * full as well.
 	 */
 	@Override
 	public void write(T m) throws InterruptedException {
 		if (!canWrite()) 
 			throw new InterruptedException("Stream has already been marked for termination.");
-		queue.put(m);
+		if (spill != null && m instanceof Model) {
+			writeSpilling(m);
+			return;
+		}
+		StreamMetrics metrics = this.metrics;
+		if (metrics == null) {
+			queue.put(m);
+			return;
+		}
+		if (!queue.offer(m)) {
+			long blocked = System.nanoTime();
+			queue.put(m);
+			metrics.producerBlocked(System.nanoTime() - blocked);
+		}
+		metrics.written(m);
+	}
+	
+	private void writeSpilling(T m) throws InterruptedException {
+		StreamMetrics metrics = this.metrics;
+		spillLock.lockInterruptibly();
+		try {
+			if (spilled.get() == 0 && queue.offer(m)) {
+				if (metrics != null) 
+					metrics.written(m);
+				return;
+			}
+		} finally {
+			spillLock.unlock();
+		}
+		// serialize outside the lock, the reader may still free space meanwhile.
+		byte[] record = SpillBuffer.serialize((Model) m);
+		spillLock.lockInterruptibly();
+		try {
+			long blocked = 0;
+			while (true) {
+				if (spilled.get() == 0 && queue.offer(m)) 
+					break;
+				if (spill.fits(record.length)) {
+					spill.append(record);
+					spilledBytes = spill.bytes();
+					spilled.incrementAndGet();
+					segmentsSpilled.increment();
+					break;
+				}
+				// oversized records are enqueued as soon as the spill buffer is empty
+				if (blocked == 0) 
+					blocked = System.nanoTime();
+				spaceFreed.await();
+			}
+			if (blocked != 0 && metrics != null) 
+				metrics.producerBlocked(System.nanoTime() - blocked);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error when spilling to "+SPILL_DIRECTORY, e);
+		} finally {
+			spillLock.unlock();
+		}
+		if (metrics != null) 
+			metrics.written(m);
+	}
+	
+	/**
+	 * Moves the oldest spilled segment back into the queue, if there is space. 
+	 * Otherwise, it remains spilled until the next call.
+	 * Called by the reader after taking an element.
+	 */
+	private void refill() {
+		spillLock.lock();
+		try {
+			if (spilled.get() > 0 && queue.remainingCapacity() > 0) {
+				queue.add(SpillBuffer.deserialize(spill.poll()));
+				spilledBytes = spill.bytes();
+				if (spilled.decrementAndGet() == 0 && !active) 
+					spill.close();
+			}
+			spaceFreed.signalAll();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error when reading spilled segments from "+SPILL_DIRECTORY, e);
+		} finally {
+			spillLock.unlock();
+		}
 	}
 
 
@@ -85,16 +266,36 @@ public class FintanStreamHandler<T> implements FintanInputStream<T>, FintanOutpu
 	 * If queue is empty on take operation, block the calling thread. It will 
 	 * resume operation, as soon as data is available or stream is terminated.
 	 * 
-	 * Method is synchronized. If more than one thread attempts to read(), the
+	 * Method is synchronized by readLock. If more than one thread attempts to read(), the
 	 * other ones will be blocked until the read operation is finished.
 	 * 
 	 * @return parameterized Entry
 	 * 		may return null in case the queue has been emptied and terminated.
 	 */
 	@Override
-	public synchronized T read() throws InterruptedException {
-		if (!canRead()) return null;
-		Object obj = queue.take();
+	public T read() throws InterruptedException {
+		readLock.lockInterruptibly();
+		Object obj;
+		try {
+			if (!canRead()) return null;
+			StreamMetrics metrics = this.metrics;
+			if (metrics == null) {
+				obj = queue.take();
+			} else {
+				obj = queue.poll();
+				if (obj == null) {
+					long blocked = System.nanoTime();
+					obj = queue.take();
+					metrics.consumerBlocked(System.nanoTime() - blocked);
+				}
+				if (obj != POISON_PILL) 
+					metrics.read();
+			}
+			if (spill != null && obj != POISON_PILL) 
+				refill();
+		} finally {
+			readLock.unlock();
+		}
 		
 		//this is recommended for BlockingQueues:  "Java Concurrency in Practice", pp. 155-156
 		//only one poison pill is required for multiple threads, since read() is synchronized.
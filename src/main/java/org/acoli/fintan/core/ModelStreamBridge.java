@@ -0,0 +1,121 @@
+/*
+ * Copyright [2021] [ACoLi Lab, Prof. Dr. Chiarcos, Christian Faeth, Goethe University Frankfurt]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.acoli.fintan.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.acoli.fintan.core.util.JenaUtils;
+import org.apache.jena.rdf.model.Model;
+
+/**
+ * Short-circuits a serialized RDF link between a StreamWriter and a
+ * StreamLoader in the same pipeline. Instead of writing and re-parsing text,
+ * the segments are handed over as Models through a FintanStreamHandler.
+ *
+ * Both ends are disguised as java streams, so they can occupy the regular
+ * stream slots of the components. Components supporting the bridge must check
+ * for these types and use the underlying FintanStreams instead. Any attempt to
+ * read or write bytes fails with an IOException.
+ *
+ * @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
+ *
+ */
+public class ModelStreamBridge {
+
+	private final FintanStreamHandler<Model> handler = new FintanStreamHandler<Model>();
+	private final Output output = new Output();
+	private final Input input = new Input();
+
+	/**
+	 * Checks whether the text link between a writer and a loader can be
+	 * replaced by a bridge without changing the resulting segments.
+	 * This is the case, if both use the same RDF syntax and the same
+	 * segment delimiter.
+	 *
+	 * @param writer the source of the text link
+	 * @param loader the destination of the text link
+	 * @return true if both ends are compatible.
+	 */
+	public static boolean canBridge(ModelStreamBridgeable writer, ModelStreamBridgeable loader) {
+		if (!writer.preservesSegments() || !loader.preservesSegments())
+			return false;
+		if (!writer.getSegmentDelimiter().equals(loader.getSegmentDelimiter()))
+			return false;
+		return JenaUtils.isSameLang(writer.getLang(), loader.getLang());
+	}
+
+	/**
+	 * @return the FintanStream carrying the segments, e.g. for attaching metrics.
+	 */
+	FintanStreamHandler<Model> getHandler() {
+		return handler;
+	}
+
+	/**
+	 * @return the end to be set as OutputStream of the StreamWriter.
+	 */
+	public Output getOutputStream() {
+		return output;
+	}
+
+	/**
+	 * @return the end to be set as InputStream of the StreamLoader.
+	 */
+	public Input getInputStream() {
+		return input;
+	}
+
+	public class Output extends OutputStream {
+
+		/**
+		 * @return the FintanStream carrying the segments.
+		 */
+		public FintanOutputStream<Model> getModelStream() {
+			return handler;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			throw new IOException("ModelStreamBridge only transmits Models.");
+		}
+
+		/**
+		 * Terminates the underlying FintanStream.
+		 */
+		@Override
+		public void close() {
+			handler.terminate();
+		}
+	}
+
+	public class Input extends InputStream {
+
+		/**
+		 * @return the FintanStream carrying the segments.
+		 */
+		public FintanInputStream<Model> getModelStream() {
+			return handler;
+		}
+
+		@Override
+		public int read() throws IOException {
+			throw new IOException("ModelStreamBridge only transmits Models.");
+		}
+	}
+
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright [2021] [ACoLi Lab, Prof. Dr. Chiarcos, Christian Faeth, Goethe University Frankfurt]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.acoli.fintan.core;
+
+/**
+ * Interface for StreamWriters and StreamLoaders which serialize or parse 
+ * segmented RDF text and can be linked by a ModelStreamBridge instead.
+ * 
+ * Implementing components must check their java streams for the types 
+ * ModelStreamBridge.Output and ModelStreamBridge.Input respectively and 
+ * forward the segments as Models.
+ * 
+ * @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
+ *
+ */
+public interface ModelStreamBridgeable {
+	
+	/**
+	 * @return the RDF syntax following the naming convention of Apache Jena.
+	 */
+	public String getLang();
+	
+	/**
+	 * @return the textual delimiter indicating the end of a segment.
+	 */
+	public String getSegmentDelimiter();
+	
+	/**
+	 * @return true if segment boundaries are marked by the segment delimiter 
+	 * 		in the text stream.
+	 */
+	public boolean preservesSegments();
+
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright [2021] [ACoLi Lab, Prof. Dr. Chiarcos, Christian Faeth, Goethe University Frankfurt]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.acoli.fintan.core;
+
+/**
+ * Interface for components which process a single stream on multiple worker 
+ * threads. The number of workers is assigned by the FintanScheduler from the 
+ * pipeline's thread budget.
+ * 
+ * @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
+ *
+ */
+public interface ParallelStreamComponent {
+	
+	/**
+	 * @return the number of worker threads requested or assigned. 
+	 * 		0 or less if no specific number has been requested.
+	 */
+	public int getThreads();
+	
+	/**
+	 * Set the number of worker threads to be used by this component.
+	 * @param threads
+	 */
+	public void setThreads(int threads);
+
+}
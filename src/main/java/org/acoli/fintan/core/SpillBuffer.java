@@ -0,0 +1,187 @@
+/*
+ * Copyright [2021] [ACoLi Lab, Prof. Dr. Chiarcos, Christian Faeth, Goethe University Frankfurt]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.acoli.fintan.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import org.acoli.fintan.core.util.JenaUtils;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFFormat;
+
+/**
+ * Bounded FIFO log of serialized segments, backed by a temporary file.
+ * 
+ * Segments are serialized as RDF Thrift (including prefixes) and stored 
+ * as length-prefixed records in a ring buffer of maxBytes. The file is 
+ * created on the first append and deleted by close().
+ * 
+ * Not thread-safe. Used by FintanStreamHandler under its spillLock.
+ * 
+ * @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
+ *
+ */
+class SpillBuffer {
+	
+	private static final int HEADER = 4;
+	
+	private final File directory;
+	private final long capacity;
+	
+	private File file = null;
+	private FileChannel channel = null;
+	private final ByteBuffer header = ByteBuffer.allocate(HEADER);
+	
+	private long head = 0;
+	private long used = 0;
+	private int segments = 0;
+	
+	/**
+	 * @param directory directory for the temporary file
+	 * @param maxBytes maximum number of bytes to be spilled at any time.
+	 */
+	SpillBuffer(File directory, long maxBytes) {
+		this.directory = directory;
+		this.capacity = maxBytes;
+	}
+	
+	static byte[] serialize(Model m) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+		RDFDataMgr.write(out, m, RDFFormat.RDF_THRIFT);
+		return out.toByteArray();
+	}
+	
+	static Model deserialize(byte[] bytes) {
+		Model m = JenaUtils.createSegmentModel();
+		RDFDataMgr.read(m, new ByteArrayInputStream(bytes), Lang.RDFTHRIFT);
+		return m;
+	}
+	
+	/**
+	 * @return true if a record of the given length fits into the buffer.
+	 */
+	boolean fits(int length) {
+		return used + HEADER + length <= capacity;
+	}
+	
+	int segments() {
+		return segments;
+	}
+	
+	long bytes() {
+		return used;
+	}
+	
+	/**
+	 * Appends a record. Call fits() first.
+	 * @param record
+	 * @throws IOException
+	 */
+	void append(byte[] record) throws IOException {
+		if (channel == null) {
+			Files.createDirectories(directory.toPath());
+			file = File.createTempFile("fintan-spill-", ".log", directory);
+			file.deleteOnExit();
+			channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+		}
+		long tail = (head + used) % capacity;
+		header.clear();
+		header.putInt(record.length).flip();
+		write(header, tail);
+		write(ByteBuffer.wrap(record), (tail + HEADER) % capacity);
+		used += HEADER + record.length;
+		segments++;
+	}
+	
+	/**
+	 * Removes the oldest record.
+	 * @return the record, or null if the buffer is empty.
+	 * @throws IOException
+	 */
+	byte[] poll() throws IOException {
+		if (segments == 0) 
+			return null;
+		header.clear();
+		read(header, head);
+		header.flip();
+		byte[] record = new byte[header.getInt()];
+		read(ByteBuffer.wrap(record), (head + HEADER) % capacity);
+		head = (head + HEADER + record.length) % capacity;
+		used -= HEADER + record.length;
+		segments--;
+		if (segments == 0) 
+			head = used = 0;
+		return record;
+	}
+	
+	/**
+	 * Deletes the file. The buffer may be reused afterwards.
+	 */
+	void close() {
+		if (channel == null) 
+			return;
+		try {
+			channel.close();
+		} catch (IOException e) {
+			// nothing left to lose
+		}
+		file.delete();
+		channel = null;
+		file = null;
+		head = used = 0;
+		segments = 0;
+	}
+	
+	// positional write, wrapping at the end of the ring
+	private void write(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int limit = buffer.limit();
+			long toEnd = capacity - position;
+			if (buffer.remaining() > toEnd) 
+				buffer.limit(buffer.position() + (int) toEnd);
+			while (buffer.hasRemaining()) 
+				position += channel.write(buffer, position);
+			buffer.limit(limit);
+			position %= capacity;
+		}
+	}
+	
+	// positional read, wrapping at the end of the ring
+	private void read(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int limit = buffer.limit();
+			long toEnd = capacity - position;
+			if (buffer.remaining() > toEnd) 
+				buffer.limit(buffer.position() + (int) toEnd);
+			while (buffer.hasRemaining()) {
+				int read = channel.read(buffer, position);
+				if (read < 0) 
+					throw new IOException("Unexpected end of spill file "+file);
+				position += read;
+			}
+			buffer.limit(limit);
+			position %= capacity;
+		}
+	}
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright [2021] [ACoLi Lab, Prof. Dr. Chiarcos, Christian Faeth, Goethe University Frankfurt]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.acoli.fintan.core.checkpoint;
+
+import java.io.FilterInputStream;
+import java.io.InputStream;
+
+/**
+ * Marks a pipeline's default input, so that FintanCheckpoint can record 
+ * the offset after each segment.
+ * 
+ * Loaders must track the number of bytes they consumed themselves, e.g. 
+ * by a SegmentReader, since their read buffers are ahead of the segments 
+ * handed to the pipeline.
+ * 
+ * @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
+ *
+ */
+public class CheckpointInputStream extends FilterInputStream {
+	
+	private final long offset;
+	
+	/**
+	 * @param in the underlying stream, already positioned at the offset.
+	 * @param offset the offset in bytes from the beginning of the input.
+	 */
+	public CheckpointInputStream(InputStream in, long offset) {
+		super(in);
+		this.offset = offset;
+	}
+	
+	/**
+	 * @return the offset in bytes this stream started reading at.
+	 */
+	public long getOffset() {
+		return offset;
+	}
+	
+	/**
+	 * Record that all segments up to the given position have been handed 
+	 * to the pipeline.
+	 * @param position the number of bytes consumed from this stream.
+	 * @param prefixes the prefix declarations required for parsing the following segments.
+	 */
+	public void markSegment(long position, String prefixes) {
+		FintanCheckpoint.inputMarked(offset + position, prefixes);
+	}
+}
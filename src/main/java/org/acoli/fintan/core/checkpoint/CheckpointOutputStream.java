@@ -0,0 +1,73 @@
+/*
+ * Copyright [2021] [ACoLi Lab, Prof. Dr. Chiarcos, Christian Faeth, Goethe University Frankfurt]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.acoli.fintan.core.checkpoint;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Counts the bytes written to a pipeline's default output, so that 
+ * FintanCheckpoint can record the offset after each segment.
+ * 
+ * Writers call markSegment() after each fully written segment. All bytes
+ * must have been passed to this stream by then. Buffers below this stream 
+ * are flushed on markSegment().
+ * 
+ * @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
+ *
+ */
+public class CheckpointOutputStream extends FilterOutputStream {
+	
+	private long position;
+	
+	/**
+	 * @param out the underlying stream, opened for appending at the offset.
+	 * @param position the offset in bytes from the beginning of the output.
+	 */
+	public CheckpointOutputStream(OutputStream out, long position) {
+		super(out);
+		this.position = position;
+	}
+	
+	/**
+	 * @return the number of bytes written from the beginning of the output.
+	 */
+	public long getPosition() {
+		return position;
+	}
+	
+	/**
+	 * Record that a segment has been written completely.
+	 * @throws IOException if flushing fails.
+	 */
+	public void markSegment() throws IOException {
+		out.flush();
+		FintanCheckpoint.outputMarked(position);
+	}
+	
+	@Override
+	public void write(int b) throws IOException {
+		out.write(b);
+		position++;
+	}
+	
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		out.write(b, off, len);
+		position += len;
+	}
+}
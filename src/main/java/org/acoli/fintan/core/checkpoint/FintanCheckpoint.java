@@ -0,0 +1,334 @@
+/*
+ * Copyright [2021] [ACoLi Lab, Prof. Dr. Chiarcos, Christian Faeth, Goethe University Frankfurt]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.acoli.fintan.core.checkpoint;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.acoli.fintan.core.FintanStreamComponent;
+import org.acoli.fintan.core.util.ChannelInputStream;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Global checkpointing for the default input and output of a pipeline.
+ * 
+ * Periodically, and when the JVM exits, the number of fully written output 
+ * segments is saved to a JSON file together with the corresponding byte 
+ * offsets in input and output. If the pipeline is started again with the 
+ * same input and output, the input is read from the recorded offset and 
+ * the output is truncated to the recorded offset and appended to.
+ * 
+ * Input and output segments are correlated by their order. Thus, each 
+ * input segment must result in exactly one output segment, as in regular 
+ * loader-updater-writer pipelines. Only plain files are supported. 
+ * Named streams are not checkpointed.
+ * 
+ * The output of a segment must not depend on other segments. Resuming 
+ * skips all segments up to the checkpoint, so an RDFUpdater with lookback 
+ * would miss its context window. Checkpointing is disabled for pipelines 
+ * with components using lookback or lookahead 
+ * (see FintanStreamComponent.supportsCheckpointing()).
+ * 
+ * Configured by FintanManager from the global "checkpoint" entry.
+ * 
+ * @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
+ *
+ */
+public class FintanCheckpoint {
+	
+	protected static final Logger LOG = LogManager.getLogger(FintanCheckpoint.class.getName());
+	
+	public static final int DEFAULT_INTERVAL = 60;
+	
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	
+	private static boolean enabled = false;
+	private static File file = null;
+	private static int interval = DEFAULT_INTERVAL;
+	
+	private static String input = null;
+	private static String output = null;
+	private static long segments = 0;
+	private static long inputOffset = 0;
+	private static long outputOffset = 0;
+	private static String prefixes = "";
+	private static boolean consistent = true;
+	// input offsets and prefixes of segments not yet written, in input order
+	private static final ArrayDeque<Pair<Long, String>> pending = new ArrayDeque<Pair<Long, String>>();
+	
+	private static ScheduledExecutorService saver = null;
+	private static Thread shutdownHook = null;
+	
+	/**
+	 * @return true if checkpointing is configured.
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+	
+	/**
+	 * Enable checkpointing based on the global "checkpoint" config entry.
+	 * @param conf either the path of the checkpoint file or an object node 
+	 * 		with "file" and "interval" in seconds.
+	 */
+	public static synchronized void configure(JsonNode conf) {
+		reset();
+		if (conf == null || conf.isNull()) 
+			return;
+		if (conf.isTextual()) {
+			file = new File(conf.asText());
+		} else if (conf.hasNonNull("file")) {
+			file = new File(conf.get("file").asText());
+			if (conf.hasNonNull("interval"))
+				interval = conf.get("interval").asInt(DEFAULT_INTERVAL);
+		}
+		enabled = file != null;
+	}
+	
+	/**
+	 * Disable checkpointing and discard all state.
+	 */
+	public static synchronized void reset() {
+		stopSaving();
+		enabled = false;
+		file = null;
+		interval = DEFAULT_INTERVAL;
+		input = null;
+		output = null;
+		segments = 0;
+		inputOffset = 0;
+		outputOffset = 0;
+		prefixes = "";
+		consistent = true;
+		pending.clear();
+	}
+	
+	/**
+	 * Checks whether input and output can be checkpointed.
+	 * Logs a warning if not.
+	 * @param input config entry of the default input
+	 * @param output config entry of the default output
+	 * @param components all components of the pipeline
+	 * @return true if both are plain files and all components support checkpointing.
+	 */
+	public static boolean supports(String input, String output, Collection<? extends FintanStreamComponent<?, ?>> components) {
+		for (FintanStreamComponent<?, ?> component:components) {
+			if (!component.supportsCheckpointing()) {
+				LOG.warn("Checkpointing is disabled: component "+component.getInstanceName()
+						+" ("+component.getClass().getSimpleName()+") depends on preceding or following segments"
+						+" (e.g. lookback or lookahead) and cannot be resumed.");
+				return false;
+			}
+		}
+		for (String entry:new String[] {input, output}) {
+			if (entry == null || entry.equals("System.in") || entry.equals("System.out")) {
+				LOG.warn("Checkpointing is disabled: default input and output must be files.");
+				return false;
+			}
+			if (entry.endsWith(".gz") || entry.endsWith(".lz4")) {
+				LOG.warn("Checkpointing is disabled: compressed files cannot be resumed: "+entry);
+				return false;
+			}
+		}
+		if (!new File(input).isFile()) {
+			LOG.warn("Checkpointing is disabled: input is no local file: "+input);
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Attaches checkpointing to the default input and output. If a checkpoint 
+	 * of an incomplete run on the same files exists, processing is resumed 
+	 * from there. Must be called before openInput() and openOutput().
+	 * @param input path of the default input
+	 * @param output path of the default output
+	 * @throws IOException if the checkpoint cannot be read.
+	 */
+	public static synchronized void attach(String input, String output) throws IOException {
+		FintanCheckpoint.input = new File(input).getAbsolutePath();
+		FintanCheckpoint.output = new File(output).getAbsolutePath();
+		load();
+		if (segments > 0) 
+			LOG.info("Resuming from checkpoint "+file+" after "+segments+" segments.");
+	}
+	
+	/**
+	 * Opens the default input at the recorded offset.
+	 * @return the input stream
+	 * @throws IOException
+	 */
+	public static synchronized CheckpointInputStream openInput() throws IOException {
+		return new CheckpointInputStream(new ChannelInputStream(new File(input), inputOffset), inputOffset);
+	}
+	
+	/**
+	 * Opens the default output, truncated to the recorded offset for appending.
+	 * @return the output stream
+	 * @throws IOException if the output does not match the checkpoint.
+	 */
+	public static synchronized CheckpointOutputStream openOutput() throws IOException {
+		File outFile = new File(output);
+		if (outputOffset > 0) {
+			if (!outFile.isFile() || outFile.length() < outputOffset)
+				throw new IOException("Output "+output+" is shorter than recorded in checkpoint "+file+". Delete the checkpoint to start over.");
+			try (FileChannel channel = FileChannel.open(outFile.toPath(), StandardOpenOption.WRITE)) {
+				channel.truncate(outputOffset);
+			}
+		} else if (outFile.getParentFile() != null) {
+			outFile.getParentFile().mkdirs();
+		}
+		return new CheckpointOutputStream(new FileOutputStream(outFile, outputOffset > 0), outputOffset);
+	}
+	
+	/**
+	 * Reads the checkpoint file, if it belongs to an incomplete run on the same files.
+	 */
+	private static void load() throws IOException {
+		if (!file.isFile()) 
+			return;
+		JsonNode node = MAPPER.readTree(file);
+		if (node.path("complete").asBoolean(false)) {
+			LOG.info("Checkpoint "+file+" belongs to a completed run and is ignored.");
+			return;
+		}
+		if (!input.equals(node.path("input").asText()) || !output.equals(node.path("output").asText())) {
+			LOG.warn("Checkpoint "+file+" belongs to different input or output and is ignored.");
+			return;
+		}
+		segments = node.path("segments").asLong(0);
+		inputOffset = node.path("inputOffset").asLong(0);
+		outputOffset = node.path("outputOffset").asLong(0);
+		prefixes = node.path("prefixes").asText("");
+	}
+	
+	/**
+	 * @return the prefix declarations recorded with the last checkpoint. 
+	 * 		Loaders must use them when resuming.
+	 */
+	public static synchronized String getPrefixes() {
+		return prefixes;
+	}
+	
+	/**
+	 * Called by CheckpointInputStream after a segment has been read.
+	 */
+	static synchronized void inputMarked(long position, String prefixes) {
+		pending.addLast(new ImmutablePair<Long, String>(position, prefixes));
+	}
+	
+	/**
+	 * Called by CheckpointOutputStream after a segment has been written.
+	 */
+	static synchronized void outputMarked(long position) {
+		Pair<Long, String> in = pending.pollFirst();
+		if (in == null) {
+			if (consistent) 
+				LOG.warn("Checkpointing is disabled: more segments were written than read.");
+			consistent = false;
+			return;
+		}
+		segments++;
+		inputOffset = in.getLeft();
+		prefixes = in.getRight();
+		outputOffset = position;
+	}
+	
+	/**
+	 * Start periodic saving. Saves on JVM exit as well, 
+	 * including System.exit() after errors.
+	 */
+	public static synchronized void start() {
+		if (!enabled || input == null) 
+			return;
+		if (interval > 0) {
+			saver = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread t = new Thread(r, "fintan-checkpoint");
+				t.setDaemon(true);
+				return t;
+			});
+			saver.scheduleAtFixedRate(() -> save(false), interval, interval, TimeUnit.SECONDS);
+		}
+		shutdownHook = new Thread(() -> save(false), "fintan-checkpoint-hook");
+		Runtime.getRuntime().addShutdownHook(shutdownHook);
+	}
+	
+	/**
+	 * Stop periodic saving and mark the run as complete.
+	 */
+	public static synchronized void stop() {
+		if (!enabled || input == null) 
+			return;
+		stopSaving();
+		if (!pending.isEmpty()) {
+			LOG.warn("Checkpointing: "+pending.size()+" segments were read but not written.");
+			consistent = false;
+		}
+		save(true);
+	}
+	
+	private static void stopSaving() {
+		if (saver != null) {
+			saver.shutdownNow();
+			saver = null;
+		}
+		if (shutdownHook != null) {
+			try {
+				Runtime.getRuntime().removeShutdownHook(shutdownHook);
+			} catch (IllegalStateException e) {
+				// JVM is already shutting down
+			}
+			shutdownHook = null;
+		}
+	}
+	
+	private static synchronized void save(boolean complete) {
+		if (!consistent && !complete) 
+			return;
+		ObjectNode node = MAPPER.createObjectNode();
+		node.put("input", input);
+		node.put("output", output);
+		node.put("segments", segments);
+		node.put("inputOffset", inputOffset);
+		node.put("outputOffset", outputOffset);
+		node.put("prefixes", prefixes);
+		node.put("complete", complete);
+		try {
+			File tmp = new File(file.getAbsolutePath()+".tmp");
+			MAPPER.writerWithDefaultPrettyPrinter().writeValue(tmp, node);
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			LOG.error("Checkpoint cannot be saved: "+file, e);
+		}
+	}
+}
@@ -0,0 +1,478 @@
+/*
+ * Copyright [2021] [ACoLi Lab, Prof. Dr. Chiarcos, Christian Faeth, Goethe University Frankfurt]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.acoli.fintan.core.graph;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+
+import org.apache.jena.graph.GraphEvents;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.graph.impl.GraphBase;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.util.iterator.NiceIterator;
+import org.apache.jena.util.iterator.NullIterator;
+
+/**
+ * Compact in-memory Graph for short-lived segments.
+ * 
+ * Each node is stored once in a dictionary local to the graph. New nodes are 
+ * shared with other graphs via NodeInterner, if enabled. Triples are 
+ * encoded as node ids in a single int array, so a triple costs 12 bytes 
+ * instead of a Triple object and three hash index entries as in GraphMem.
+ * 
+ * Small graphs are matched by linear scan. As soon as a graph exceeds 
+ * INDEX_THRESHOLD triples, chains of all triples sharing the same subject, 
+ * predicate or object are maintained in int arrays.
+ * 
+ * Removed triples are only marked and compacted on one of the following adds.
+ * Thus, triples may be removed while iterating. Adding triples while 
+ * iterating throws a ConcurrentModificationException.
+ * 
+ * As in GraphMem, triples are added and deleted by term equality, while 
+ * find and contains match literals by value, e.g. "1"^^xsd:int matches 
+ * "01"^^xsd:int. For this purpose, all literals with the same indexing 
+ * value share a value id, by which the chains are maintained.
+ * 
+ * Not thread-safe.
+ * 
+ * @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
+ *
+ */
+public class CompactGraph extends GraphBase {
+	
+	/**
+	 * Number of triples up to which a graph is matched by linear scan.
+	 */
+	public static int INDEX_THRESHOLD = 32;
+	
+	private static final int INITIAL_CAPACITY = 16;
+	private static final int DELETED = -1;
+	private static final int ANY = -2;
+	
+	// node dictionary: ids are positions in nodes, 
+	// nodeTable is an open addressing hash table containing id+1
+	private Node[] nodes;
+	private int[] nodeTable;
+	private int nodeCount;
+	
+	// value id by node id: the id of the first literal with the same 
+	// indexing value, the node id itself for all other nodes.
+	// valueTable is an open addressing hash table of the value ids of literals, containing id+1
+	private int[] valueIds;
+	private int[] valueTable;
+	
+	// subject, predicate and object ids of a triple at 3*slot
+	private int[] spo;
+	private int slots;
+	private int live;
+	
+	// chains: first slot by value id, next slot by slot, -1 terminated
+	private boolean indexed;
+	private int[] sHead, pHead, oHead;
+	private int[] sNext, pNext, oNext;
+	
+	private int modCount = 0;
+	
+	public CompactGraph() {
+		allocate();
+	}
+	
+	private void allocate() {
+		nodes = new Node[INITIAL_CAPACITY];
+		nodeTable = new int[2*INITIAL_CAPACITY];
+		valueIds = new int[INITIAL_CAPACITY];
+		valueTable = new int[2*INITIAL_CAPACITY];
+		spo = new int[3*INITIAL_CAPACITY];
+		sHead = pHead = oHead = sNext = pNext = oNext = null;
+	}
+	
+	private static int hash(Node n) {
+		return spread(n.hashCode());
+	}
+	
+	private static int spread(int h) {
+		return h ^ (h >>> 16);
+	}
+	
+	/**
+	 * @return the id of the node, or -1 if it is not contained in the dictionary.
+	 */
+	private int lookup(Node n) {
+		int mask = nodeTable.length - 1;
+		for (int i = hash(n) & mask; ; i = (i + 1) & mask) {
+			int e = nodeTable[i];
+			if (e == 0) 
+				return -1;
+			if (nodes[e-1] == n || nodes[e-1].equals(n)) 
+				return e-1;
+		}
+	}
+	
+	/**
+	 * @return the value id of the node, or -1 if no node with the same value 
+	 * 		is contained in the dictionary.
+	 */
+	private int lookupValue(Node n) {
+		if (!n.isLiteral()) 
+			return lookup(n);
+		Object value = n.getIndexingValue();
+		int mask = valueTable.length - 1;
+		for (int i = spread(value.hashCode()) & mask; ; i = (i + 1) & mask) {
+			int e = valueTable[i];
+			if (e == 0) 
+				return -1;
+			if (nodes[e-1].getIndexingValue().equals(value)) 
+				return e-1;
+		}
+	}
+	
+	/**
+	 * @return the value id of a new literal, which is added to the value table if necessary.
+	 */
+	private int internValue(int id) {
+		Object value = nodes[id].getIndexingValue();
+		int mask = valueTable.length - 1;
+		int i = spread(value.hashCode()) & mask;
+		for (; ; i = (i + 1) & mask) {
+			int e = valueTable[i];
+			if (e == 0) 
+				break;
+			if (nodes[e-1].getIndexingValue().equals(value)) 
+				return e-1;
+		}
+		valueTable[i] = id+1;
+		return id;
+	}
+	
+	/**
+	 * @return the id of the node, which is added to the dictionary if necessary.
+	 */
+	private int intern(Node n) {
+		int mask = nodeTable.length - 1;
+		int i = hash(n) & mask;
+		for (; ; i = (i + 1) & mask) {
+			int e = nodeTable[i];
+			if (e == 0) 
+				break;
+			if (nodes[e-1] == n || nodes[e-1].equals(n)) 
+				return e-1;
+		}
+		if (nodeCount == nodes.length) {
+			nodes = Arrays.copyOf(nodes, 2*nodes.length);
+			valueIds = Arrays.copyOf(valueIds, nodes.length);
+			if (indexed) {
+				sHead = Arrays.copyOf(sHead, nodes.length);
+				pHead = Arrays.copyOf(pHead, nodes.length);
+				oHead = Arrays.copyOf(oHead, nodes.length);
+			}
+		}
+		int id = nodeCount++;
+		nodes[id] = NodeInterner.intern(n);
+		nodeTable[i] = id+1;
+		valueIds[id] = n.isLiteral() ? internValue(id) : id;
+		if (indexed) 
+			sHead[id] = pHead[id] = oHead[id] = -1;
+		if (2*nodeCount > nodeTable.length) 
+			rehash(2*nodeTable.length);
+		return id;
+	}
+	
+	private void rehash(int capacity) {
+		nodeTable = new int[capacity];
+		valueTable = new int[capacity];
+		int mask = capacity - 1;
+		for (int id = 0; id < nodeCount; id++) {
+			int i = hash(nodes[id]) & mask;
+			while (nodeTable[i] != 0) 
+				i = (i + 1) & mask;
+			nodeTable[i] = id+1;
+			if (valueIds[id] == id && nodes[id].isLiteral()) {
+				i = spread(nodes[id].getIndexingValue().hashCode()) & mask;
+				while (valueTable[i] != 0) 
+					i = (i + 1) & mask;
+				valueTable[i] = id+1;
+			}
+		}
+	}
+	
+	/**
+	 * @return the slot of a triple, or -1 if it is not contained.
+	 */
+	private int slotOf(int s, int p, int o) {
+		if (indexed) {
+			for (int t = sHead[valueIds[s]]; t >= 0; t = sNext[t]) {
+				int i = 3*t;
+				if (spo[i] == s && spo[i+1] == p && spo[i+2] == o) 
+					return t;
+			}
+			return -1;
+		}
+		for (int t = 0, i = 0; t < slots; t++, i += 3) {
+			if (spo[i] == s && spo[i+1] == p && spo[i+2] == o) 
+				return t;
+		}
+		return -1;
+	}
+	
+	private void link(int t) {
+		int i = 3*t;
+		int s = valueIds[spo[i]];
+		int p = valueIds[spo[i+1]];
+		int o = valueIds[spo[i+2]];
+		sNext[t] = sHead[s];
+		sHead[s] = t;
+		pNext[t] = pHead[p];
+		pHead[p] = t;
+		oNext[t] = oHead[o];
+		oHead[o] = t;
+	}
+	
+	private static int[] ensureCapacity(int[] a, int capacity) {
+		if (a == null || a.length < capacity) 
+			return new int[capacity];
+		return a;
+	}
+	
+	private void buildIndex() {
+		int capacity = spo.length/3;
+		sNext = ensureCapacity(sNext, capacity);
+		pNext = ensureCapacity(pNext, capacity);
+		oNext = ensureCapacity(oNext, capacity);
+		sHead = ensureCapacity(sHead, nodes.length);
+		pHead = ensureCapacity(pHead, nodes.length);
+		oHead = ensureCapacity(oHead, nodes.length);
+		Arrays.fill(sHead, 0, nodeCount, -1);
+		Arrays.fill(pHead, 0, nodeCount, -1);
+		Arrays.fill(oHead, 0, nodeCount, -1);
+		indexed = true;
+		for (int t = 0; t < slots; t++) {
+			if (spo[3*t] != DELETED) 
+				link(t);
+		}
+	}
+	
+	/**
+	 * Moves all remaining triples to the beginning of the array, 
+	 * so that the slots of deleted triples can be reused.
+	 */
+	private void compact() {
+		int target = 0;
+		for (int t = 0; t < slots; t++) {
+			int i = 3*t;
+			if (spo[i] == DELETED) 
+				continue;
+			if (target != t) 
+				System.arraycopy(spo, i, spo, 3*target, 3);
+			target++;
+		}
+		slots = target;
+		if (indexed) 
+			buildIndex();
+	}
+	
+	private Triple tripleAt(int t) {
+		int i = 3*t;
+		return Triple.create(nodes[spo[i]], nodes[spo[i+1]], nodes[spo[i+2]]);
+	}
+	
+	@Override
+	public void performAdd(Triple t) {
+		int s = intern(t.getSubject());
+		int p = intern(t.getPredicate());
+		int o = intern(t.getObject());
+		if (slotOf(s, p, o) >= 0) 
+			return;
+		modCount++;
+		if (slots - live > live && slots >= INITIAL_CAPACITY) 
+			compact();
+		if (3*slots == spo.length) {
+			spo = Arrays.copyOf(spo, 2*spo.length);
+			if (indexed) {
+				sNext = Arrays.copyOf(sNext, spo.length/3);
+				pNext = Arrays.copyOf(pNext, spo.length/3);
+				oNext = Arrays.copyOf(oNext, spo.length/3);
+			}
+		}
+		int slot = slots++;
+		spo[3*slot] = s;
+		spo[3*slot+1] = p;
+		spo[3*slot+2] = o;
+		live++;
+		if (indexed) 
+			link(slot);
+		else if (live > INDEX_THRESHOLD) 
+			buildIndex();
+	}
+	
+	@Override
+	public void performDelete(Triple t) {
+		int s = lookup(t.getSubject());
+		int p = lookup(t.getPredicate());
+		int o = lookup(t.getObject());
+		if (s < 0 || p < 0 || o < 0) 
+			return;
+		int slot = slotOf(s, p, o);
+		if (slot < 0) 
+			return;
+		spo[3*slot] = DELETED;
+		live--;
+	}
+	
+	/**
+	 * @return the value id of a concrete node, ANY for a wildcard, 
+	 * 		or -1 if the node does not occur in this graph.
+	 */
+	private int matchId(Node n) {
+		if (n == null || !n.isConcrete()) 
+			return ANY;
+		return lookupValue(n);
+	}
+	
+	@Override
+	protected ExtendedIterator<Triple> graphBaseFind(Triple m) {
+		int s = matchId(m.getMatchSubject());
+		int p = matchId(m.getMatchPredicate());
+		int o = matchId(m.getMatchObject());
+		if (s == -1 || p == -1 || o == -1) 
+			return NullIterator.instance();
+		return new CompactIterator(s, p, o, m);
+	}
+	
+	@Override
+	protected boolean graphBaseContains(Triple t) {
+		// literals are matched by value
+		if (!t.isConcrete() || t.getSubject().isLiteral() || t.getObject().isLiteral()) 
+			return super.graphBaseContains(t);
+		int s = lookup(t.getSubject());
+		int p = lookup(t.getPredicate());
+		int o = lookup(t.getObject());
+		if (s < 0 || p < 0 || o < 0) 
+			return false;
+		return slotOf(s, p, o) >= 0;
+	}
+	
+	@Override
+	protected int graphBaseSize() {
+		return live;
+	}
+	
+	/**
+	 * Removes all triples and resets the dictionary. 
+	 * Arrays are reused unless they have grown large.
+	 */
+	@Override
+	public void clear() {
+		modCount++;
+		if (nodes.length > 64*INITIAL_CAPACITY) {
+			allocate();
+		} else {
+			Arrays.fill(nodes, 0, nodeCount, null);
+			Arrays.fill(nodeTable, 0);
+			Arrays.fill(valueTable, 0);
+		}
+		nodeCount = 0;
+		slots = 0;
+		live = 0;
+		indexed = false;
+		getEventManager().notifyEvent(this, GraphEvents.removeAll);
+	}
+	
+	/**
+	 * Iterates either all slots or the chain of a concrete node.
+	 * Nodes are preselected by value id. Literals are then matched by value.
+	 */
+	private class CompactIterator extends NiceIterator<Triple> {
+		
+		private final int s, p, o;
+		private final Node sm, pm, om;
+		private final int[] chain;
+		private final int expectedModCount = modCount;
+		private int next;
+		private int current = -1;
+		private int last = -1;
+		
+		CompactIterator(int s, int p, int o, Triple m) {
+			this.s = s;
+			this.p = p;
+			this.o = o;
+			this.sm = literal(m.getMatchSubject());
+			this.pm = literal(m.getMatchPredicate());
+			this.om = literal(m.getMatchObject());
+			if (indexed && s != ANY) {
+				chain = sNext;
+				next = sHead[s];
+			} else if (indexed && o != ANY) {
+				chain = oNext;
+				next = oHead[o];
+			} else if (indexed && p != ANY) {
+				chain = pNext;
+				next = pHead[p];
+			} else {
+				chain = null;
+				next = 0;
+			}
+		}
+		
+		@Override
+		public boolean hasNext() {
+			if (modCount != expectedModCount) 
+				throw new ConcurrentModificationException();
+			if (current >= 0) 
+				return true;
+			while (chain == null ? next < slots : next >= 0) {
+				int t = next;
+				next = chain == null ? t+1 : chain[t];
+				int i = 3*t;
+				if (spo[i] != DELETED 
+						&& (s == ANY || matches(spo[i], s, sm)) 
+						&& (p == ANY || matches(spo[i+1], p, pm)) 
+						&& (o == ANY || matches(spo[i+2], o, om))) {
+					current = t;
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		private Node literal(Node n) {
+			return n != null && n.isLiteral() ? n : null;
+		}
+		
+		private boolean matches(int id, int valueId, Node literal) {
+			if (literal == null) 
+				return id == valueId;
+			return valueIds[id] == valueId && literal.sameValueAs(nodes[id]);
+		}
+		
+		@Override
+		public Triple next() {
+			if (!hasNext()) 
+				throw new NoSuchElementException();
+			last = current;
+			current = -1;
+			return tripleAt(last);
+		}
+		
+		@Override
+		public void remove() {
+			if (last < 0 || spo[3*last] == DELETED) 
+				throw new IllegalStateException();
+			delete(tripleAt(last));
+		}
+	}
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright [2021] [ACoLi Lab, Prof. Dr. Chiarcos, Christian Faeth, Goethe University Frankfurt]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.acoli.fintan.core.graph;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.acoli.fintan.core.metrics.MetricsSource;
+import org.apache.jena.datatypes.RDFDatatype;
+import org.apache.jena.graph.Node;
+import org.apache.jena.riot.system.FactoryRDF;
+import org.apache.jena.riot.system.FactoryRDFStd;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Bounded cache for sharing equal IRI and literal Nodes across segments 
+ * and components.
+ * 
+ * The cache is split into stripes, each guarded by its own lock and 
+ * evicting in LRU order. New nodes are only admitted to a full stripe, if 
+ * they have been requested more frequently than the node to be evicted 
+ * (TinyLFU). Frequencies are estimated by a count-min sketch with 4-bit 
+ * counters, which are halved periodically to forget old frequencies. 
+ * Thus, vocabulary and frequent literals stay cached, while one-off 
+ * identifiers do not flush the cache.
+ * 
+ * Blank nodes and long literals are never interned.
+ * 
+ * A global instance is configured by FintanManager ("nodeCacheSize") and 
+ * used by the RDFStreamLoader's parser and by CompactGraph.
+ * 
+ * @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
+ *
+ */
+public class NodeInterner implements MetricsSource {
+	
+	public static final int DEFAULT_SIZE = 100000;
+	public static final int MAX_LITERAL_LENGTH = 256;
+	
+	private static final int DEPTH = 4;
+	private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+	
+	private static volatile NodeInterner global = null;
+	
+	/**
+	 * @return the global instance, or null if interning is disabled.
+	 */
+	public static NodeInterner getGlobal() {
+		return global;
+	}
+	
+	/**
+	 * Set the size of the global instance. Set by FintanManager.
+	 * @param size maximum number of cached nodes. 0 disables interning.
+	 */
+	public static void setGlobalSize(int size) {
+		if (size <= 0) 
+			global = null;
+		else
+			global = new NodeInterner(size);
+	}
+	
+	/**
+	 * Interns a node with the global instance.
+	 * @param n
+	 * @return an equal cached node, or n itself.
+	 */
+	public static Node intern(Node n) {
+		NodeInterner interner = global;
+		if (interner == null) 
+			return n;
+		return interner.internNode(n);
+	}
+	
+	/**
+	 * Creates a parser factory which interns all IRIs and literals with the 
+	 * global instance. A new factory must be used for each document, since
+	 * blank node labels are scoped by the factory.
+	 * 
+	 * @return the factory, or null if interning is disabled.
+	 */
+	public static FactoryRDF createFactoryRDF() {
+		if (global == null) 
+			return null;
+		return new FactoryRDFStd() {
+			@Override
+			public Node createURI(String uriStr) {
+				return intern(super.createURI(uriStr));
+			}
+			@Override
+			public Node createTypedLiteral(String lexical, RDFDatatype datatype) {
+				return intern(super.createTypedLiteral(lexical, datatype));
+			}
+			@Override
+			public Node createLangLiteral(String lexical, String langTag) {
+				return intern(super.createLangLiteral(lexical, langTag));
+			}
+			@Override
+			public Node createStringLiteral(String lexical) {
+				return intern(super.createStringLiteral(lexical));
+			}
+		};
+	}
+	
+	private final int size;
+	private final Stripe[] stripes;
+	private final int stripeShift;
+	
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	
+	public NodeInterner(int size) {
+		this.size = size;
+		int n = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors())) * 16;
+		while (n > 1 && size / n < 64) 
+			n /= 2;
+		stripes = new Stripe[n];
+		stripeShift = 32 - Integer.numberOfTrailingZeros(n);
+		for (int i = 0; i < n; i++) 
+			stripes[i] = new Stripe(Math.max(1, size / n));
+	}
+	
+	private static int spread(int h) {
+		h *= 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+	
+	private static boolean isInternable(Node n) {
+		if (n.isURI()) 
+			return true;
+		return n.isLiteral() && n.getLiteralLexicalForm().length() <= MAX_LITERAL_LENGTH;
+	}
+	
+	/**
+	 * @param n
+	 * @return an equal cached node, or n itself.
+	 */
+	public Node internNode(Node n) {
+		if (n == null || !isInternable(n)) 
+			return n;
+		int h = spread(n.hashCode());
+		Stripe stripe = stripes.length == 1 ? stripes[0] : stripes[h >>> stripeShift];
+		synchronized (stripe) {
+			stripe.increment(h);
+			Node cached = stripe.entries.get(n);
+			if (cached != null) {
+				hits.increment();
+				return cached;
+			}
+			misses.increment();
+			if (stripe.entries.size() < stripe.capacity) {
+				stripe.entries.put(n, n);
+				return n;
+			}
+			Iterator<Node> eldest = stripe.entries.keySet().iterator();
+			Node victim = eldest.next();
+			if (stripe.frequency(h) > stripe.frequency(spread(victim.hashCode()))) {
+				eldest.remove();
+				stripe.entries.put(n, n);
+				evictions.increment();
+			} else {
+				rejected.increment();
+			}
+			return n;
+		}
+	}
+	
+	/**
+	 * @return the number of cached nodes.
+	 */
+	public int entries() {
+		int entries = 0;
+		for (Stripe stripe:stripes) {
+			synchronized (stripe) {
+				entries += stripe.entries.size();
+			}
+		}
+		return entries;
+	}
+	
+	@Override
+	public String getName() {
+		return "nodeInterner";
+	}
+
+	@Override
+	public ObjectNode snapshot() {
+		ObjectNode node = JsonNodeFactory.instance.objectNode();
+		node.put("size", size);
+		node.put("entries", entries());
+		node.put("hits", hits.sum());
+		node.put("misses", misses.sum());
+		node.put("rejected", rejected.sum());
+		node.put("evictions", evictions.sum());
+		return node;
+	}
+
+	@Override
+	public String summary() {
+		long h = hits.sum();
+		long total = h + misses.sum();
+		return String.format(Locale.ROOT, "node interner: %d entries, %d hits, %d misses, %d rejected, hit rate %.1f%%", 
+				entries(), h, misses.sum(), rejected.sum(), total == 0 ? 0.0 : 100.0 * h / total);
+	}
+	
+	/**
+	 * LRU map with a frequency sketch for admission. Guarded by its own monitor.
+	 */
+	private static final class Stripe {
+		
+		private final LinkedHashMap<Node, Node> entries = new LinkedHashMap<Node, Node>(16, 0.75f, true);
+		private final int capacity;
+		private final byte[][] sketch;
+		private final int mask;
+		private final int sampleSize;
+		private int additions = 0;
+		
+		Stripe(int capacity) {
+			this.capacity = capacity;
+			int width = Integer.highestOneBit(Math.max(16, capacity) * 2 - 1);
+			sketch = new byte[DEPTH][width];
+			mask = width - 1;
+			sampleSize = 10 * width;
+		}
+		
+		private int index(int h, int row) {
+			int x = h * SEEDS[row];
+			return (x ^ (x >>> 15)) & mask;
+		}
+		
+		int frequency(int h) {
+			int min = Integer.MAX_VALUE;
+			for (int row = 0; row < DEPTH; row++) 
+				min = Math.min(min, sketch[row][index(h, row)]);
+			return min;
+		}
+		
+		void increment(int h) {
+			for (int row = 0; row < DEPTH; row++) {
+				int i = index(h, row);
+				if (sketch[row][i] < 15) 
+					sketch[row][i]++;
+			}
+			if (++additions >= sampleSize) {
+				for (byte[] counters:sketch) {
+					for (int i = 0; i < counters.length; i++) 
+						counters[i] >>= 1;
+				}
+				additions /= 2;
+			}
+		}
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright [2021] [ACoLi Lab, Prof. Dr. Chiarcos, Christian Faeth, Goethe University Frankfurt]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.acoli.fintan.core.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.acoli.fintan.core.FintanStreamComponent;
+
+/**
+ * Busy time of a single FintanStreamComponent. 
+ * 
+ * The busy time is the CPU time consumed by all threads of the component: 
+ * the component thread itself and all threads started from it. Threads 
+ * are sampled while running and once more when they finish. Time spent 
+ * waiting on streams does not count as busy.
+ * 
+ * @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
+ *
+ */
+public class ComponentMetrics implements ComponentMetricsMBean {
+	
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	private final FintanStreamComponent<?, ?> component;
+	private long startNanos = -1;
+	private long endNanos = -1;
+	private Thread mainThread;
+	
+	// last known CPU time per thread. Retained after the thread has finished.
+	private final Map<Thread, Long> cpuNanos = new IdentityHashMap<Thread, Long>();
+	
+	public ComponentMetrics(FintanStreamComponent<?, ?> component) {
+		this.component = component;
+	}
+	
+	/**
+	 * Register the calling thread as a thread of this component.
+	 */
+	public synchronized void threadStarted() {
+		if (startNanos < 0) 
+			startNanos = System.nanoTime();
+		cpuNanos.put(Thread.currentThread(), 0L);
+	}
+	
+	/**
+	 * Take the final CPU time sample of the calling thread.
+	 */
+	public synchronized void threadFinished() {
+		long cpu = currentThreadCpuTime();
+		if (cpu >= 0) 
+			cpuNanos.put(Thread.currentThread(), cpu);
+		if (Thread.currentThread() == mainThread) 
+			endNanos = System.nanoTime();
+	}
+	
+	/**
+	 * Register the calling thread as the component thread. 
+	 * The component is considered finished when this thread finishes.
+	 */
+	public synchronized void componentStarted() {
+		mainThread = Thread.currentThread();
+		threadStarted();
+	}
+	
+	private static long currentThreadCpuTime() {
+		try {
+			if (THREADS.isCurrentThreadCpuTimeSupported()) 
+				return THREADS.getCurrentThreadCpuTime();
+		} catch (UnsupportedOperationException e) {
+			// e.g. virtual threads
+		}
+		return -1;
+	}
+	
+	private static long threadCpuTime(Thread t) {
+		try {
+			if (THREADS.isThreadCpuTimeSupported()) 
+				return THREADS.getThreadCpuTime(t.getId());
+		} catch (UnsupportedOperationException e) {
+			// e.g. virtual threads
+		}
+		return -1;
+	}
+
+	@Override
+	public String getName() {
+		return component.getInstanceName();
+	}
+
+	@Override
+	public String getComponentClass() {
+		return component.getClass().getSimpleName();
+	}
+
+	@Override
+	public synchronized int getThreadCount() {
+		return cpuNanos.size();
+	}
+
+	/**
+	 * Samples all live threads of the component.
+	 */
+	@Override
+	public synchronized long getBusyMillis() {
+		long sum = 0;
+		for (Map.Entry<Thread, Long> e:cpuNanos.entrySet()) {
+			if (e.getKey().isAlive()) {
+				long cpu = threadCpuTime(e.getKey());
+				if (cpu > e.getValue()) 
+					e.setValue(cpu);
+			}
+			sum += e.getValue();
+		}
+		return sum / 1000000;
+	}
+
+	@Override
+	public synchronized long getElapsedMillis() {
+		if (startNanos < 0) 
+			return 0;
+		long end = (endNanos < 0) ? System.nanoTime() : endNanos;
+		return (end - startNanos) / 1000000;
+	}
+
+	/**
+	 * @return busy time relative to elapsed time. 
+	 * 		Can exceed 1 for components running multiple threads.
+	 */
+	@Override
+	public double getUtilization() {
+		long elapsed = getElapsedMillis();
+		if (elapsed <= 0) 
+			return 0;
+		return (double) getBusyMillis() / elapsed;
+	}
+
+}
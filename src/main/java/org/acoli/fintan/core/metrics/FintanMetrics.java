@@ -0,0 +1,390 @@
+/*
+ * Copyright [2021] [ACoLi Lab, Prof. Dr. Chiarcos, Christian Faeth, Goethe University Frankfurt]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.acoli.fintan.core.metrics;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.acoli.fintan.core.FintanStreamComponent;
+import org.acoli.fintan.core.FintanStreamHandler;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Pipeline-wide registry for runtime metrics. Disabled by default.
+ * 
+ * If enabled, the FintanManager registers each FintanStreamHandler linking 
+ * two components and each component of the pipeline. Metrics are 
+ * 	- exposed as MBeans in the domain "org.acoli.fintan" (optional)
+ * 	- logged periodically at INFO level 
+ * 	- appended periodically to a JSON lines file (optional)
+ * Components may register additional MetricsSources, which are included in 
+ * log and file reports.
+ * A final report is issued when the pipeline has terminated.
+ * 
+ * Global config:
+ * 	"metrics" : true
+ * or
+ * 	"metrics" : {
+ * 		"interval" : 10,			// report interval in seconds. 0 for final report only.
+ * 		"file" : "metrics.jsonl",	// JSON lines file, one snapshot per line
+ * 		"jmx" : true,				// register MBeans
+ * 		"log" : true				// log snapshots
+ * 	}
+ * 
+ * @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
+ *
+ */
+public class FintanMetrics {
+	
+	protected static final Logger LOG = LogManager.getLogger(FintanMetrics.class.getName());
+	
+	public static final String JMX_DOMAIN = "org.acoli.fintan";
+	public static final int DEFAULT_INTERVAL = 10;
+	
+	private static volatile boolean enabled = false;
+	private static int interval = DEFAULT_INTERVAL;
+	private static String file = null;
+	private static boolean jmx = true;
+	private static boolean log = true;
+	
+	private static final List<StreamMetrics> streams = new ArrayList<StreamMetrics>();
+	private static final IdentityHashMap<Runnable, ComponentMetrics> components = new IdentityHashMap<Runnable, ComponentMetrics>();
+	private static final List<MetricsSource> sources = new ArrayList<MetricsSource>();
+	private static final List<ObjectName> registeredBeans = new ArrayList<ObjectName>();
+	private static ScheduledExecutorService reporter = null;
+	private static Writer fileWriter = null;
+	
+	// component owning the current thread. Inherited by all threads started from it.
+	private static final InheritableThreadLocal<ComponentMetrics> owner = new InheritableThreadLocal<ComponentMetrics>();
+	
+	public static boolean isEnabled() {
+		return enabled;
+	}
+	
+	/**
+	 * Enable metrics based on the global "metrics" config entry.
+	 * @param conf either a boolean or an object node.
+	 */
+	public static synchronized void configure(JsonNode conf) {
+		reset();
+		if (conf == null || conf.isNull()) 
+			return;
+		if (conf.isBoolean()) {
+			enabled = conf.asBoolean();
+			return;
+		}
+		enabled = true;
+		if (conf.hasNonNull("interval"))
+			interval = conf.get("interval").asInt(DEFAULT_INTERVAL);
+		if (conf.hasNonNull("file"))
+			file = conf.get("file").asText();
+		if (conf.hasNonNull("jmx"))
+			jmx = conf.get("jmx").asBoolean(true);
+		if (conf.hasNonNull("log"))
+			log = conf.get("log").asBoolean(true);
+	}
+	
+	/**
+	 * Disable metrics and discard all registered streams and components.
+	 */
+	public static synchronized void reset() {
+		shutdown(false);
+		enabled = false;
+		interval = DEFAULT_INTERVAL;
+		file = null;
+		jmx = true;
+		log = true;
+		streams.clear();
+		components.clear();
+		sources.clear();
+	}
+	
+	/**
+	 * Attach metrics to a stream. No-op if metrics are disabled.
+	 * @param handler
+	 * @param name
+	 * @param source instance name of the writing component, may be null
+	 * @param destination instance name of the reading component, may be null
+	 */
+	public static synchronized void registerStream(FintanStreamHandler<?> handler, String name, String source, String destination) {
+		if (!enabled) 
+			return;
+		StreamMetrics metrics = new StreamMetrics(name, source, destination, handler);
+		handler.setMetrics(metrics);
+		streams.add(metrics);
+	}
+	
+	/**
+	 * Attach metrics to a component. No-op if metrics are disabled.
+	 * @param component
+	 */
+	public static synchronized void registerComponent(FintanStreamComponent<?, ?> component) {
+		if (!enabled) 
+			return;
+		components.put(component, new ComponentMetrics(component));
+	}
+	
+	/**
+	 * Include additional metrics in all reports. No-op if metrics are disabled.
+	 * @param source
+	 */
+	public static synchronized void registerSource(MetricsSource source) {
+		if (!enabled) 
+			return;
+		sources.add(source);
+	}
+	
+	/**
+	 * Wraps a Runnable to account for its thread's CPU time. 
+	 * Registered components are accounted on their own. Any other Runnable 
+	 * is accounted to the component that started its thread.
+	 * 
+	 * @param runnable
+	 * @return the wrapped Runnable, or runnable itself if there is nothing to account for.
+	 */
+	public static Runnable monitor(Runnable runnable) {
+		if (!enabled) 
+			return runnable;
+		final ComponentMetrics component;
+		synchronized (FintanMetrics.class) {
+			component = components.get(runnable);
+		}
+		if (component == null && owner.get() == null) 
+			return runnable;
+		return new Runnable() {
+			@Override
+			public void run() {
+				if (component != null) {
+					owner.set(component);
+					component.componentStarted();
+				} else {
+					threadStarted();
+				}
+				try {
+					runnable.run();
+				} finally {
+					threadFinished();
+				}
+			}
+		};
+	}
+	
+	/**
+	 * Account the calling thread to the component that started it. 
+	 * For threads not started by the FintanScheduler.
+	 */
+	public static void threadStarted() {
+		ComponentMetrics component = owner.get();
+		if (component != null) 
+			component.threadStarted();
+	}
+
+	/**
+	 * Take the final CPU time sample of the calling thread.
+	 * For threads not started by the FintanScheduler.
+	 */
+	public static void threadFinished() {
+		ComponentMetrics component = owner.get();
+		if (component != null) 
+			component.threadFinished();
+	}
+	
+	/**
+	 * Register MBeans and start periodic reporting.
+	 */
+	public static synchronized void start() {
+		if (!enabled) 
+			return;
+		if (jmx) 
+			registerBeans();
+		if (file != null) {
+			try {
+				OutputStream out = new FileOutputStream(file, true);
+				fileWriter = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+			} catch (IOException e) {
+				LOG.error("Metrics file cannot be opened: "+file, e);
+			}
+		}
+		if (interval > 0) {
+			reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread t = new Thread(r, "fintan-metrics");
+				t.setDaemon(true);
+				return t;
+			});
+			reporter.scheduleAtFixedRate(FintanMetrics::report, interval, interval, TimeUnit.SECONDS);
+		}
+	}
+	
+	/**
+	 * Issue the final report, stop periodic reporting and unregister MBeans.
+	 */
+	public static synchronized void stop() {
+		shutdown(enabled);
+	}
+	
+	private static void shutdown(boolean finalReport) {
+		if (reporter != null) {
+			reporter.shutdownNow();
+			reporter = null;
+		}
+		if (finalReport)
+			report();
+		if (fileWriter != null) {
+			try {
+				fileWriter.close();
+			} catch (IOException e) {
+				LOG.error(e, e);
+			}
+			fileWriter = null;
+		}
+		unregisterBeans();
+	}
+	
+	/**
+	 * @return a JSON snapshot of all metrics.
+	 */
+	public static synchronized ObjectNode snapshot() {
+		ObjectMapper mapper = new ObjectMapper();
+		ObjectNode snapshot = mapper.createObjectNode();
+		snapshot.put("timestamp", System.currentTimeMillis());
+		ArrayNode compArray = snapshot.putArray("components");
+		for (ComponentMetrics c:components.values()) {
+			ObjectNode node = compArray.addObject();
+			node.put("name", c.getName());
+			node.put("class", c.getComponentClass());
+			node.put("threads", c.getThreadCount());
+			node.put("busyMillis", c.getBusyMillis());
+			node.put("elapsedMillis", c.getElapsedMillis());
+			node.put("utilization", c.getUtilization());
+		}
+		ArrayNode streamArray = snapshot.putArray("streams");
+		for (StreamMetrics s:streams) {
+			ObjectNode node = streamArray.addObject();
+			node.put("name", s.getName());
+			node.put("source", s.getSource());
+			node.put("destination", s.getDestination());
+			node.put("segmentsWritten", s.getSegmentsWritten());
+			node.put("segmentsRead", s.getSegmentsRead());
+			node.put("triplesWritten", s.getTriplesWritten());
+			node.put("segmentsPerSecond", s.getSegmentsPerSecond());
+			node.put("triplesPerSecond", s.getTriplesPerSecond());
+			node.put("queueFill", s.getQueueFill());
+			node.put("queueCapacity", s.getQueueCapacity());
+			node.put("spillFill", s.getSpillFill());
+			node.put("spillBytes", s.getSpillBytes());
+			node.put("segmentsSpilled", s.getSegmentsSpilled());
+			node.put("producerBlockedMillis", s.getProducerBlockedMillis());
+			node.put("consumerBlockedMillis", s.getConsumerBlockedMillis());
+		}
+		if (!sources.isEmpty()) {
+			ObjectNode sourceNode = snapshot.putObject("sources");
+			for (MetricsSource source:sources) {
+				sourceNode.set(source.getName(), source.snapshot());
+			}
+		}
+		return snapshot;
+	}
+	
+	private static synchronized void report() {
+		if (log) {
+			for (ComponentMetrics c:components.values()) {
+				LOG.info(String.format(Locale.ROOT, "Component <%s> (%s): %d threads, busy %d ms of %d ms, utilization %.2f", 
+						c.getName(), c.getComponentClass(), c.getThreadCount(), 
+						c.getBusyMillis(), c.getElapsedMillis(), c.getUtilization()));
+			}
+			for (StreamMetrics s:streams) {
+				LOG.info(String.format(Locale.ROOT, "Stream <%s>: %d/%d segments written/read, %.1f segments/s, %.1f triples/s, queue %d/%d, spilled %d (%d bytes), blocked producer %d ms, consumer %d ms", 
+						s.getName(), s.getSegmentsWritten(), s.getSegmentsRead(), 
+						s.getSegmentsPerSecond(), s.getTriplesPerSecond(), 
+						s.getQueueFill(), s.getQueueCapacity(), 
+						s.getSpillFill(), s.getSpillBytes(), 
+						s.getProducerBlockedMillis(), s.getConsumerBlockedMillis()));
+			}
+			for (MetricsSource source:sources) {
+				LOG.info("<"+source.getName()+">: "+source.summary());
+			}
+		}
+		if (fileWriter != null) {
+			try {
+				fileWriter.write(snapshot().toString());
+				fileWriter.write("\n");
+				fileWriter.flush();
+			} catch (IOException e) {
+				LOG.error("Failed to write metrics: "+e);
+			}
+		}
+	}
+	
+	private static void registerBeans() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			for (ComponentMetrics c:components.values()) {
+				ObjectName name = new ObjectName(JMX_DOMAIN+":type=Component,name="+ObjectName.quote(c.getName()));
+				registerBean(server, c, name);
+			}
+			for (StreamMetrics s:streams) {
+				ObjectName name = new ObjectName(JMX_DOMAIN+":type=Stream,name="+ObjectName.quote(s.getName()));
+				registerBean(server, s, name);
+			}
+		} catch (JMException e) {
+			LOG.error("Failed to register metrics MBeans: "+e);
+		}
+	}
+	
+	private static void registerBean(MBeanServer server, Object bean, ObjectName name) {
+		try {
+			server.registerMBean(bean, name);
+			registeredBeans.add(name);
+		} catch (JMException e) {
+			LOG.warn("Failed to register MBean "+name+": "+e);
+		}
+	}
+	
+	private static void unregisterBeans() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		for (ObjectName name:registeredBeans) {
+			try {
+				server.unregisterMBean(name);
+			} catch (JMException e) {
+				LOG.trace(e, e);
+			}
+		}
+		registeredBeans.clear();
+	}
+
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright [2021] [ACoLi Lab, Prof. Dr. Chiarcos, Christian Faeth, Goethe University Frankfurt]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.acoli.fintan.core.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Lock-free histogram of non-negative long values, e.g. latencies in nanoseconds.
+ * 
+ * Values are recorded into log-linear buckets (HDR-style): each power of two 
+ * is split into SUB_BUCKETS linear buckets, so the relative error of any 
+ * reported percentile is below 1/SUB_BUCKETS. Values below 2*SUB_BUCKETS are 
+ * recorded exactly. Memory usage is constant, regardless of the value range.
+ * 
+ * @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
+ *
+ */
+public class Histogram {
+	
+	public static final int SUB_BUCKETS = 16;
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int EXACT = 2 * SUB_BUCKETS;
+	// highest shift for positive longs is 62 - SUB_BUCKET_BITS
+	private static final int BUCKETS = EXACT + (62 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+	
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+	
+	private static int index(long value) {
+		if (value < EXACT) 
+			return (int) value;
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		int sub = (int) (value >>> shift) - SUB_BUCKETS;
+		return EXACT + (shift - 1) * SUB_BUCKETS + sub;
+	}
+	
+	/**
+	 * @return the highest value recorded into the bucket at index.
+	 */
+	private static long highestValue(int index) {
+		if (index < EXACT) 
+			return index;
+		int shift = (index - EXACT) / SUB_BUCKETS + 1;
+		long sub = (index - EXACT) % SUB_BUCKETS + SUB_BUCKETS;
+		return ((sub + 1) << shift) - 1;
+	}
+	
+	/**
+	 * Record a value. Negative values are recorded as 0.
+	 * @param value
+	 */
+	public void record(long value) {
+		if (value < 0) 
+			value = 0;
+		counts.incrementAndGet(index(value));
+		count.increment();
+		sum.add(value);
+		max.accumulate(value);
+	}
+	
+	public long getCount() {
+		return count.sum();
+	}
+	
+	public long getSum() {
+		return sum.sum();
+	}
+	
+	public long getMax() {
+		return max.get();
+	}
+	
+	public double getMean() {
+		long n = count.sum();
+		if (n == 0) 
+			return 0;
+		return (double) sum.sum() / n;
+	}
+	
+	/**
+	 * @param percentile between 0 and 100
+	 * @return the upper bound of the bucket containing the given percentile. 
+	 * 		0 if nothing has been recorded.
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long n = count.sum();
+		if (n == 0) 
+			return 0;
+		long rank = (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * n);
+		rank = Math.max(1, rank);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= rank) 
+				return Math.min(highestValue(i), getMax());
+		}
+		return getMax();
+	}
+	
+	/**
+	 * @param scale divisor for all values, e.g. 1000 for microseconds from nanoseconds
+	 * @return count, mean, p50, p90, p99, p999 and max as JSON
+	 */
+	public ObjectNode toJson(long scale) {
+		ObjectNode node = JsonNodeFactory.instance.objectNode();
+		node.put("count", getCount());
+		node.put("mean", getMean() / scale);
+		node.put("p50", getValueAtPercentile(50) / (double) scale);
+		node.put("p90", getValueAtPercentile(90) / (double) scale);
+		node.put("p99", getValueAtPercentile(99) / (double) scale);
+		node.put("p999", getValueAtPercentile(99.9) / (double) scale);
+		node.put("max", getMax() / (double) scale);
+		return node;
+	}
+
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright [2021] [ACoLi Lab, Prof. Dr. Chiarcos, Christian Faeth, Goethe University Frankfurt]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.acoli.fintan.core.metrics;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Additional metrics provided by a component, e.g. profiling data. 
+ * Registered sources are included in the periodic reports of FintanMetrics.
+ * 
+ * @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
+ *
+ */
+public interface MetricsSource {
+	
+	/**
+	 * @return a unique name for this source.
+	 */
+	public String getName();
+	
+	/**
+	 * @return a JSON snapshot of the current state.
+	 */
+	public ObjectNode snapshot();
+	
+	/**
+	 * @return a short human-readable summary for the log.
+	 */
+	public String summary();
+
+}
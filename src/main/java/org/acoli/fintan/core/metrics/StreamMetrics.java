@@ -0,0 +1,180 @@
+/*
+ * Copyright [2021] [ACoLi Lab, Prof. Dr. Chiarcos, Christian Faeth, Goethe University Frankfurt]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.acoli.fintan.core.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.acoli.fintan.core.FintanStreamHandler;
+import org.apache.jena.rdf.model.Model;
+
+/**
+ * Counters for a single FintanStreamHandler. 
+ * 
+ * Counters are updated by the producing and consuming threads of the stream 
+ * and may be read at any time. Block times are only measured if a write or 
+ * read operation actually has to wait for the queue.
+ * 
+ * @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
+ *
+ */
+public class StreamMetrics implements StreamMetricsMBean {
+	
+	private final String name;
+	private final String source;
+	private final String destination;
+	private final FintanStreamHandler<?> handler;
+	private final long startNanos = System.nanoTime();
+	
+	private final LongAdder segmentsWritten = new LongAdder();
+	private final LongAdder segmentsRead = new LongAdder();
+	private final LongAdder triplesWritten = new LongAdder();
+	private final LongAdder producerBlockedNanos = new LongAdder();
+	private final LongAdder consumerBlockedNanos = new LongAdder();
+	
+	public StreamMetrics(String name, FintanStreamHandler<?> handler) {
+		this(name, null, null, handler);
+	}
+	
+	/**
+	 * @param name
+	 * @param source instance name of the writing component, may be null
+	 * @param destination instance name of the reading component, may be null
+	 * @param handler
+	 */
+	public StreamMetrics(String name, String source, String destination, FintanStreamHandler<?> handler) {
+		this.name = name;
+		this.source = source;
+		this.destination = destination;
+		this.handler = handler;
+	}
+	
+	/**
+	 * Record a segment written to the stream. 
+	 * For Models, the number of triples is recorded as well.
+	 * @param segment
+	 */
+	public void written(Object segment) {
+		segmentsWritten.increment();
+		if (segment instanceof Model) 
+			triplesWritten.add(((Model) segment).size());
+	}
+	
+	/**
+	 * Record a segment read from the stream.
+	 */
+	public void read() {
+		segmentsRead.increment();
+	}
+	
+	/**
+	 * Record the time a producer waited for free space in the queue.
+	 * @param nanos
+	 */
+	public void producerBlocked(long nanos) {
+		producerBlockedNanos.add(nanos);
+	}
+	
+	/**
+	 * Record the time a consumer waited for data in the queue.
+	 * @param nanos
+	 */
+	public void consumerBlocked(long nanos) {
+		consumerBlockedNanos.add(nanos);
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String getSource() {
+		return source;
+	}
+
+	@Override
+	public String getDestination() {
+		return destination;
+	}
+
+	@Override
+	public long getSegmentsWritten() {
+		return segmentsWritten.sum();
+	}
+
+	@Override
+	public long getSegmentsRead() {
+		return segmentsRead.sum();
+	}
+
+	@Override
+	public long getTriplesWritten() {
+		return triplesWritten.sum();
+	}
+
+	@Override
+	public double getSegmentsPerSecond() {
+		return perSecond(segmentsWritten.sum());
+	}
+
+	@Override
+	public double getTriplesPerSecond() {
+		return perSecond(triplesWritten.sum());
+	}
+
+	@Override
+	public int getQueueFill() {
+		return handler.size();
+	}
+
+	@Override
+	public int getQueueCapacity() {
+		return handler.capacity();
+	}
+
+	@Override
+	public int getSpillFill() {
+		return handler.spilledSize();
+	}
+
+	@Override
+	public long getSpillBytes() {
+		return handler.spilledBytes();
+	}
+
+	@Override
+	public long getSegmentsSpilled() {
+		return handler.segmentsSpilled();
+	}
+
+	@Override
+	public long getProducerBlockedMillis() {
+		return producerBlockedNanos.sum() / 1000000;
+	}
+
+	@Override
+	public long getConsumerBlockedMillis() {
+		return consumerBlockedNanos.sum() / 1000000;
+	}
+	
+	private double perSecond(long count) {
+		long elapsed = System.nanoTime() - startNanos;
+		if (elapsed <= 0) 
+			return 0;
+		return count * 1e9 / elapsed;
+	}
+
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright [2021] [ACoLi Lab, Prof. Dr. Chiarcos, Christian Faeth, Goethe University Frankfurt]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.acoli.fintan.core.metrics;
+
+/**
+ * JMX interface for StreamMetrics.
+ * 
+ * @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
+ *
+ */
+public interface StreamMetricsMBean {
+	
+	public String getName();
+	
+	public String getSource();
+	
+	public String getDestination();
+	
+	public long getSegmentsWritten();
+	
+	public long getSegmentsRead();
+	
+	public long getTriplesWritten();
+	
+	public double getSegmentsPerSecond();
+	
+	public double getTriplesPerSecond();
+	
+	public int getQueueFill();
+	
+	public int getQueueCapacity();
+	
+	public int getSpillFill();
+	
+	public long getSpillBytes();
+	
+	public long getSegmentsSpilled();
+	
+	public long getProducerBlockedMillis();
+	
+	public long getConsumerBlockedMillis();
+
+}
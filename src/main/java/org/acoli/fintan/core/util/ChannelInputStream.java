@@ -0,0 +1,132 @@
+/*
+ * Copyright [2021] [ACoLi Lab, Prof. Dr. Chiarcos, Christian Faeth, Goethe University Frankfurt]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.acoli.fintan.core.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a local file through a FileChannel.
+ * 
+ * Reads of at least MIN_DIRECT_READ bytes, e.g. by SegmentReader or 
+ * GZIPInputStream, go straight into the caller's array, which is wrapped 
+ * by a heap ByteBuffer. Smaller reads are served from a direct buffer, 
+ * which avoids a system call for each of them.
+ * 
+ * @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
+ *
+ */
+public class ChannelInputStream extends InputStream {
+	
+	public static int BUFFER_SIZE = 64 * 1024;
+	public static int MIN_DIRECT_READ = 8 * 1024;
+	
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	
+	/**
+	 * @param file the file to read.
+	 * @throws IOException
+	 */
+	public ChannelInputStream(File file) throws IOException {
+		this(file, 0);
+	}
+	
+	/**
+	 * @param file the file to read.
+	 * @param position the offset in bytes to start reading from.
+	 * @throws IOException
+	 */
+	public ChannelInputStream(File file, long position) throws IOException {
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		channel.position(position);
+		buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		buffer.flip();
+	}
+	
+	/**
+	 * @return false at the end of the file.
+	 */
+	private boolean fill() throws IOException {
+		buffer.clear();
+		int read = readInto(buffer);
+		buffer.flip();
+		return read > 0;
+	}
+
+	/**
+	 * @return the number of bytes read, or -1 at the end of the file.
+	 */
+	private int readInto(ByteBuffer target) throws IOException {
+		int read = 0;
+		while (read == 0) 
+			read = channel.read(target);
+		return read;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!buffer.hasRemaining() && !fill()) 
+			return -1;
+		return buffer.get() & 0xFF;
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) 
+			return 0;
+		if (!buffer.hasRemaining()) {
+			if (len >= MIN_DIRECT_READ) 
+				return readInto(ByteBuffer.wrap(b, off, len));
+			if (!fill()) 
+				return -1;
+		}
+		int n = Math.min(len, buffer.remaining());
+		buffer.get(b, off, n);
+		return n;
+	}
+	
+	@Override
+	public long skip(long n) throws IOException {
+		if (n <= 0) 
+			return 0;
+		if (n <= buffer.remaining()) {
+			buffer.position(buffer.position() + (int) n);
+			return n;
+		}
+		long skipped = buffer.remaining();
+		buffer.position(buffer.limit());
+		long target = Math.min(channel.size(), channel.position() + n - skipped);
+		skipped += target - channel.position();
+		channel.position(target);
+		return skipped;
+	}
+	
+	@Override
+	public int available() throws IOException {
+		long available = buffer.remaining() + channel.size() - channel.position();
+		return (int) Math.min(Integer.MAX_VALUE, Math.max(0, available));
+	}
+	
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -15,9 +15,9 @@
  */
 package org.acoli.fintan.core.util;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -26,10 +26,12 @@ import java.io.OutputStream;
 import java.io.PrintStream;
 import java.net.URL;
 import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorInputStream;
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorOutputStream;
+
 /**
  * Utilities for accessing streams, files and web resources in Fintan. 
  * 
@@ -38,13 +40,24 @@ import java.util.zip.ZipInputStream;
  */
 public class IOUtils {
 
+	private static final int GZIP_BUFFER_SIZE = 65536;
+	private static final int OUTPUT_BUFFER_SIZE = 65536;
+	
+	// threads for compressing GZIP output, requested from the FintanScheduler. 
+	// 0 or less for all workers of the thread budget not assigned to components.
+	public static int COMPRESSION_THREADS = 0;
+	
 	private static boolean sysInOccupied = false;
 	private static boolean sysOutOccupied = false;
 	
 	/**
 	 * Parse a given path or URL as an InputStream.
 	 * 
-	 * Supports GZIP (if pathOrURL ends with .gz)
+	 * Supports GZIP (if pathOrURL ends with .gz) and LZ4 frames (.lz4).
+	 * Compressed input is decompressed ahead on a separate thread.
+	 * 
+	 * Local files are read through a FileChannel, which fills the large 
+	 * buffers of the decompression and the loaders directly.
 	 * 
 	 * @param pathOrURL as String
 	 * @return InputStream
@@ -54,13 +67,15 @@ public class IOUtils {
 		InputStream inputStream;
 		File f = new File(pathOrURL);
 		if (f.canRead()) {
-			inputStream = new FileInputStream(f);
+			inputStream = new ChannelInputStream(f);
 		} else {
 			URL url = new URL(pathOrURL);
 			inputStream = url.openStream();
 		}
 		if (pathOrURL.endsWith(".gz")) 
-			inputStream = new GZIPInputStream(inputStream);
+			inputStream = new ReadAheadInputStream(new GZIPInputStream(inputStream, GZIP_BUFFER_SIZE), "fintan-gunzip");
+		else if (pathOrURL.endsWith(".lz4")) 
+			inputStream = new ReadAheadInputStream(new FramedLZ4CompressorInputStream(inputStream, true), "fintan-unlz4");
 		return inputStream;
 	}
 	
@@ -68,7 +83,9 @@ public class IOUtils {
 	 * Parse a given path as an OutputStream.
 	 * Create subfolders if necessary.
 	 * 
-	 * Supports GZIP (if path ends with .gz)
+	 * Supports GZIP (if path ends with .gz) and LZ4 frames (.lz4).
+	 * GZIP output is compressed in parallel by COMPRESSION_THREADS worker 
+	 * threads of the FintanScheduler as a multi-member file.
 	 * 
 	 * @param path as String
 	 * @return OutputStream
@@ -88,8 +105,10 @@ public class IOUtils {
 		}
 		outputStream = new FileOutputStream(f);
 		if (path.endsWith(".gz")) 
-			outputStream = new GZIPOutputStream(outputStream);
-		outputStream = new PrintStream(outputStream);
+			outputStream = new ParallelGZIPOutputStream(outputStream, COMPRESSION_THREADS);
+		else if (path.endsWith(".lz4")) 
+			outputStream = new FramedLZ4CompressorOutputStream(outputStream);
+		outputStream = new PrintStream(new BufferedOutputStream(outputStream, OUTPUT_BUFFER_SIZE));
 		return outputStream;
 	}
 
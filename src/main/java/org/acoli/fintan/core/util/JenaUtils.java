@@ -15,14 +15,30 @@
  */
 package org.acoli.fintan.core.util;
 
+import java.io.File;
 import java.io.PrintStream;
+import java.io.StringReader;
 import java.util.List;
+import java.util.regex.Pattern;
 
+import org.acoli.fintan.core.graph.CompactGraph;
+import org.acoli.fintan.core.graph.NodeInterner;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.query.Dataset;
 import org.apache.jena.query.Query;
 import org.apache.jena.query.QueryException;
 import org.apache.jena.query.QueryFactory;
 import org.apache.jena.query.QuerySolution;
 import org.apache.jena.query.ResultSet;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.system.FactoryRDF;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.apache.jena.tdb.TDBFactory;
+import org.apache.jena.tdb2.TDB2Factory;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -35,6 +51,114 @@ import org.apache.logging.log4j.Logger;
 public class JenaUtils {
 
 	protected static final Logger LOG = LogManager.getLogger(JenaUtils.class.getName());
+	
+	private static volatile boolean compactGraphs = false;
+	
+	// name of a TDB2 generation directory
+	private static final Pattern TDB2_GENERATION = Pattern.compile("Data-\\d{4}");
+	
+	/**
+	 * @return true if segments are stored in CompactGraphs.
+	 */
+	public static boolean isCompactGraphs() {
+		return compactGraphs;
+	}
+
+	/**
+	 * Store all segments in CompactGraphs instead of Jena's default GraphMem.
+	 * Set by FintanManager.
+	 * @param compactGraphs
+	 */
+	public static void setCompactGraphs(boolean compactGraphs) {
+		JenaUtils.compactGraphs = compactGraphs;
+	}
+	
+	/**
+	 * Detects the type of a persistent TDB directory.
+	 * @param directory
+	 * @return "TDB2", "TDB" or null if the directory does not contain a dataset.
+	 */
+	public static String detectTDBType(File directory) {
+		if (!directory.isDirectory()) 
+			return null;
+		// TDB2 keeps each generation of the dataset in a Data-NNNN subdirectory. 
+		// Older generations are deleted by compaction.
+		File[] generations = directory.listFiles(f -> f.isDirectory() && TDB2_GENERATION.matcher(f.getName()).matches());
+		if (generations != null && generations.length > 0) 
+			return "TDB2";
+		if (new File(directory, "nodes.dat").isFile()) 
+			return "TDB";
+		return null;
+	}
+	
+	/**
+	 * Connects to a persistent TDB or TDB2 dataset. The directory is created 
+	 * if it does not exist.
+	 * @param directory the dataset directory
+	 * @param type "TDB", "TDB1" or "TDB2". If null, the type of an existing 
+	 * 		dataset is detected. New datasets default to TDB2.
+	 * @return the Dataset. All operations require transactions.
+	 * @throws IllegalArgumentException if the type is unknown or does not match the directory.
+	 */
+	public static Dataset connectTDB(String directory, String type) throws IllegalArgumentException {
+		File dir = new File(directory);
+		String detected = detectTDBType(dir);
+		if (type == null) 
+			type = (detected != null) ? detected : "TDB2";
+		type = type.toUpperCase();
+		if (type.equals("TDB1")) 
+			type = "TDB";
+		if (!type.equals("TDB") && !type.equals("TDB2")) 
+			throw new IllegalArgumentException("Unknown tdbType: "+type+". Use TDB or TDB2.");
+		if (detected != null && !detected.equals(type)) 
+			throw new IllegalArgumentException("Directory <"+dir.getAbsolutePath()+"> contains a "+detected+" dataset, not "+type+".");
+		dir.mkdirs();
+		LOG.info("Connecting to "+type+" dataset <"+dir.getAbsolutePath()+">");
+		if (type.equals("TDB2")) 
+			return TDB2Factory.connectDataset(dir.getAbsolutePath());
+		return TDBFactory.createDataset(dir.getAbsolutePath());
+	}
+	
+	/**
+	 * Creates an empty Graph for holding a single segment.
+	 * 
+	 * @return a CompactGraph if compactGraphs is set, else Jena's default Graph.
+	 */
+	public static Graph createSegmentGraph() {
+		if (compactGraphs) 
+			return new CompactGraph();
+		return GraphFactory.createDefaultGraph();
+	}
+	
+	/**
+	 * Creates an empty Model for holding a single segment.
+	 * 
+	 * @return a Model backed by createSegmentGraph()
+	 */
+	public static Model createSegmentModel() {
+		if (compactGraphs) 
+			return ModelFactory.createModelForGraph(new CompactGraph());
+		return ModelFactory.createDefaultModel();
+	}
+	
+	/**
+	 * Reads a segment into a Model. Equivalent to Model.read(new StringReader(segment), null, lang), 
+	 * but IRIs and literals are interned if a global NodeInterner is configured.
+	 * 
+	 * @param m the Model to read into
+	 * @param segment the serialized segment
+	 * @param lang RDF syntax name following the naming convention of Apache Jena
+	 * @return m
+	 */
+	public static Model readSegment(Model m, String segment, String lang) {
+		FactoryRDF factory = NodeInterner.createFactoryRDF();
+		Lang l = RDFLanguages.nameToLang(lang);
+		if (factory == null || l == null) 
+			return m.read(new StringReader(segment), null, lang);
+		RDFParser.create().fromString(segment).lang(l).factory(factory).parse(m);
+		return m;
+	}
+	
 	/**
 	 * Parse a select query. 
 	 * 
@@ -88,4 +212,22 @@ public class JenaUtils {
 			out.flush();
 		}
 	}
+	
+	/**
+	 * Checks whether two RDF syntax names denote the same language, 
+	 * e.g. "ttl" and "TURTLE".
+	 * 
+	 * @param lang1 RDF syntax name following the naming convention of Apache Jena
+	 * @param lang2 RDF syntax name following the naming convention of Apache Jena
+	 * @return true if both names refer to the same language.
+	 */
+	public static boolean isSameLang(String lang1, String lang2) {
+		if (lang1 == null || lang2 == null) 
+			return false;
+		Lang l1 = RDFLanguages.nameToLang(lang1);
+		Lang l2 = RDFLanguages.nameToLang(lang2);
+		if (l1 == null || l2 == null) 
+			return lang1.equalsIgnoreCase(lang2);
+		return l1.equals(l2);
+	}
 }
@@ -0,0 +1,192 @@
+/*
+ * Copyright [2021] [ACoLi Lab, Prof. Dr. Chiarcos, Christian Faeth, Goethe University Frankfurt]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.acoli.fintan.core.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import org.acoli.fintan.core.FintanScheduler;
+
+/**
+ * Compresses GZIP output on multiple threads.
+ * 
+ * The data is split into blocks of BLOCK_SIZE bytes, which are compressed 
+ * independently and written in order as separate GZIP members. The result 
+ * can be read by any GZIP implementation supporting multi-member files, 
+ * including GZIPInputStream and gunzip. Compression is slightly worse than 
+ * single-threaded GZIP, since the dictionary is reset for every block.
+ * 
+ * The compression threads are requested from the FintanScheduler when the 
+ * first block is complete, i.e. after the workers of the pipeline's 
+ * components have been assigned, and released on close().
+ * 
+ * Like GZIPOutputStream, flush() does not force out data which has not been 
+ * compressed yet. Only close() finishes the last block.
+ * 
+ * @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
+ *
+ */
+public class ParallelGZIPOutputStream extends OutputStream {
+	
+	public static int BLOCK_SIZE = 1024 * 1024;
+	
+	private static final AtomicInteger INSTANCES = new AtomicInteger();
+	
+	private final OutputStream out;
+	private final int threads;
+	private ExecutorService executor;
+	// compressed blocks in output order
+	private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+	private int maxPending;
+	private byte[] block = new byte[BLOCK_SIZE];
+	private int count = 0;
+	private boolean empty = true;
+	private boolean closed = false;
+	
+	/**
+	 * @param out the underlying stream
+	 * @param threads the number of compression threads to request. 
+	 * 		0 or less for all available workers.
+	 */
+	public ParallelGZIPOutputStream(OutputStream out, int threads) {
+		this.out = out;
+		this.threads = threads;
+	}
+	
+	private ExecutorService executor() {
+		if (executor == null) {
+			int granted = FintanScheduler.requestWorkers(this, threads);
+			// keep all threads busy while the oldest block is written
+			maxPending = 2 * granted;
+			String name = "fintan-gzip-"+INSTANCES.incrementAndGet()+"-";
+			AtomicInteger workers = new AtomicInteger();
+			executor = Executors.newFixedThreadPool(granted, r -> {
+				Thread t = new Thread(r, name+workers.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		return executor;
+	}
+	
+	private static byte[] compress(byte[] data, int length) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(length / 3 + 64);
+		try (GZIPOutputStream gzip = new GZIPOutputStream(bytes, 64 * 1024)) {
+			gzip.write(data, 0, length);
+		}
+		return bytes.toByteArray();
+	}
+	
+	private void ensureOpen() throws IOException {
+		if (closed) 
+			throw new IOException("Stream closed.");
+	}
+	
+	/**
+	 * Hands the current block to the compression threads. Blocks while 
+	 * too many blocks are pending.
+	 */
+	private void submitBlock() throws IOException {
+		if (count == 0) 
+			return;
+		final byte[] data = block;
+		final int length = count;
+		pending.add(executor().submit(() -> compress(data, length)));
+		empty = false;
+		block = new byte[BLOCK_SIZE];
+		count = 0;
+		while (pending.size() >= maxPending) 
+			writeBlock();
+	}
+	
+	/**
+	 * Waits for the oldest pending block and writes it.
+	 */
+	private void writeBlock() throws IOException {
+		Future<byte[]> next = pending.poll();
+		try {
+			out.write(next.get());
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException(e.getMessage());
+		} catch (ExecutionException e) {
+			throw new IOException("Error when compressing block: "+e.getCause(), e.getCause());
+		}
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		ensureOpen();
+		if (count == block.length) 
+			submitBlock();
+		block[count++] = (byte) b;
+	}
+	
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+		while (len > 0) {
+			if (count == block.length) 
+				submitBlock();
+			int n = Math.min(len, block.length - count);
+			System.arraycopy(b, off, block, count, n);
+			off += n;
+			len -= n;
+			count += n;
+		}
+	}
+	
+	/**
+	 * Writes all blocks compressed so far without waiting for the others.
+	 */
+	@Override
+	public void flush() throws IOException {
+		ensureOpen();
+		while (!pending.isEmpty() && pending.peek().isDone()) 
+			writeBlock();
+		out.flush();
+	}
+	
+	@Override
+	public void close() throws IOException {
+		if (closed) 
+			return;
+		try {
+			submitBlock();
+			// an empty file is still a valid GZIP member
+			if (empty) 
+				out.write(compress(block, 0));
+			while (!pending.isEmpty()) 
+				writeBlock();
+			out.flush();
+		} finally {
+			closed = true;
+			if (executor != null) {
+				executor.shutdownNow();
+				FintanScheduler.releaseWorkers(this);
+			}
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright [2021] [ACoLi Lab, Prof. Dr. Chiarcos, Christian Faeth, Goethe University Frankfurt]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.acoli.fintan.core.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.acoli.fintan.core.BytePipe;
+import org.acoli.fintan.core.FintanScheduler;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Reads ahead of the consumer on a separate thread. 
+ * 
+ * The underlying stream is copied into a BytePipe by a thread started via 
+ * the FintanScheduler, so that expensive reads, e.g. decompression, overlap 
+ * with the processing of the data already read. The read-ahead is bounded by the pipe's buffer size. 
+ * IOExceptions of the underlying stream are thrown to the consumer when it 
+ * reaches the end of the data read before the error.
+ * 
+ * @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
+ *
+ */
+public class ReadAheadInputStream extends InputStream {
+	
+	protected static final Logger LOG = LogManager.getLogger(ReadAheadInputStream.class.getName());
+	
+	private static final int COPY_BUFFER_SIZE = 64 * 1024;
+	
+	private final InputStream source;
+	private volatile IOException error = null;
+	
+	/**
+	 * Read ahead with the default buffer size of BytePipe.
+	 * @param in the underlying stream. It is closed when it has been read completely 
+	 * 		or the consumer closes this stream.
+	 * @param name the name of the read-ahead thread
+	 */
+	public ReadAheadInputStream(InputStream in, String name) {
+		this(in, new BytePipe(), name);
+	}
+	
+	/**
+	 * @param in the underlying stream. It is closed when it has been read completely 
+	 * 		or the consumer closes this stream.
+	 * @param bufferSize the maximum number of bytes to read ahead.
+	 * @param chunkSize the size of the chunks handed off to the consumer.
+	 * @param name the name of the read-ahead thread
+	 */
+	public ReadAheadInputStream(InputStream in, int bufferSize, int chunkSize, String name) {
+		this(in, new BytePipe(bufferSize, chunkSize), name);
+	}
+	
+	private ReadAheadInputStream(InputStream in, BytePipe pipe, String name) {
+		this.source = pipe.getInputStream();
+		OutputStream sink = pipe.getOutputStream();
+		FintanScheduler.startThread(() -> copy(in, sink), name);
+	}
+	
+	private void copy(InputStream in, OutputStream sink) {
+		byte[] buf = new byte[COPY_BUFFER_SIZE];
+		try {
+			for (int read = in.read(buf); read >= 0; read = in.read(buf)) {
+				sink.write(buf, 0, read);
+				// do not hold back partial chunks from slow sources
+				if (in.available() <= 0) 
+					sink.flush();
+			}
+		} catch (IOException e) {
+			error = e;
+		} finally {
+			try {
+				in.close();
+			} catch (IOException e) {
+				LOG.debug("Error when closing read-ahead source: "+e);
+			}
+			try {
+				sink.close();
+			} catch (IOException e) {
+				// the consumer has closed the pipe.
+			}
+		}
+	}
+	
+	private void checkError() throws IOException {
+		IOException e = error;
+		if (e != null) 
+			throw new IOException("Error when reading ahead: "+e.getMessage(), e);
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = source.read();
+		if (b < 0) 
+			checkError();
+		return b;
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int read = source.read(b, off, len);
+		if (read < 0) 
+			checkError();
+		return read;
+	}
+	
+	@Override
+	public int available() throws IOException {
+		return source.available();
+	}
+	
+	/**
+	 * Releases the read-ahead thread, which closes the underlying stream.
+	 */
+	@Override
+	public void close() throws IOException {
+		source.close();
+	}
+}
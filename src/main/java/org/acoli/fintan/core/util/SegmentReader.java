@@ -0,0 +1,177 @@
+/*
+ * Copyright [2021] [ACoLi Lab, Prof. Dr. Chiarcos, Christian Faeth, Goethe University Frankfurt]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.acoli.fintan.core.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Splits a UTF-8 text stream into segments on raw bytes.
+ * 
+ * Segments are separated by delimiter lines, which are not part of the 
+ * segments. Lines may be terminated by \n or \r\n. Each segment is decoded 
+ * once from the read buffer, instead of decoding, copying and concatenating 
+ * each line separately.
+ * 
+ * - With split and a delimiter, every delimiter line ends a segment, 
+ * 		even an empty one. 
+ * - With split and without a delimiter, every line is a segment.
+ * - Without split, the whole stream is a single segment.
+ * The last segment is only returned if it contains non-whitespace characters.
+ * 
+ * @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
+ *
+ */
+public class SegmentReader {
+	
+	public static int BUFFER_SIZE = 1 << 20;
+	
+	private final InputStream in;
+	private final byte[] delimiter;
+	private final boolean split;
+	
+	// segments are kept contiguous in buf, which grows if a segment exceeds it.
+	private byte[] buf = new byte[BUFFER_SIZE];
+	private int limit = 0;
+	private int segmentStart = 0;
+	private int lineStart = 0;
+	// offset of buf[0] in the stream
+	private long bufferOffset = 0;
+	private long position = 0;
+	private boolean eof = false;
+	
+	/**
+	 * @param in the stream to read
+	 * @param delimiter the full content of a delimiter line, null for none
+	 * @param split if false, the whole stream is returned as a single segment
+	 */
+	public SegmentReader(InputStream in, String delimiter, boolean split) {
+		this.in = in;
+		this.delimiter = delimiter == null ? null : delimiter.getBytes(StandardCharsets.UTF_8);
+		this.split = split;
+	}
+	
+	/**
+	 * @return the number of bytes consumed up to the end of the last segment 
+	 * 		returned, including its delimiter line.
+	 */
+	public long getPosition() {
+		return position;
+	}
+	
+	/**
+	 * @return the next segment, or null at the end of the stream.
+	 * @throws IOException
+	 */
+	public String next() throws IOException {
+		while (true) {
+			int newline = find(lineStart);
+			while (newline < 0 && !eof) {
+				int searched = limit - lineStart;
+				fill();
+				newline = find(lineStart + searched);
+			}
+			if (newline < 0 && lineStart == limit) 
+				return finish();
+			int lineEnd = newline < 0 ? limit : newline;
+			int nextLine = newline < 0 ? limit : newline + 1;
+			int start = lineStart;
+			lineStart = nextLine;
+			if (!split) 
+				continue;
+			if (delimiter == null) {
+				String segment = decode(start, nextLine);
+				if (newline < 0) 
+					segment += "\n";
+				endSegment(nextLine);
+				return segment;
+			}
+			if (isDelimiter(start, lineEnd)) {
+				String segment = decode(segmentStart, start);
+				endSegment(nextLine);
+				return segment;
+			}
+		}
+	}
+	
+	private String finish() {
+		String segment = null;
+		if (!isBlank(segmentStart, limit)) 
+			segment = decode(segmentStart, limit);
+		endSegment(limit);
+		return segment;
+	}
+	
+	private void endSegment(int end) {
+		segmentStart = end;
+		position = bufferOffset + end;
+	}
+	
+	private String decode(int from, int to) {
+		return new String(buf, from, to - from, StandardCharsets.UTF_8);
+	}
+	
+	private int find(int from) {
+		for (int i = from; i < limit; i++) {
+			if (buf[i] == '\n') 
+				return i;
+		}
+		return -1;
+	}
+	
+	private boolean isDelimiter(int from, int to) {
+		if (to > from && buf[to-1] == '\r') 
+			to--;
+		if (to - from != delimiter.length) 
+			return false;
+		for (int i = 0; i < delimiter.length; i++) {
+			if (buf[from+i] != delimiter[i]) 
+				return false;
+		}
+		return true;
+	}
+	
+	private boolean isBlank(int from, int to) {
+		for (int i = from; i < to; i++) {
+			if ((buf[i] & 0xFF) > ' ') 
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Moves the current segment to the beginning of the buffer and reads more data.
+	 */
+	private void fill() throws IOException {
+		int shift = segmentStart;
+		if (shift > 0) {
+			System.arraycopy(buf, shift, buf, 0, limit - shift);
+			limit -= shift;
+			lineStart -= shift;
+			segmentStart = 0;
+			bufferOffset += shift;
+		}
+		if (limit == buf.length) 
+			buf = Arrays.copyOf(buf, 2 * buf.length);
+		int read = in.read(buf, limit, buf.length - limit);
+		if (read < 0) 
+			eof = true;
+		else 
+			limit += read;
+	}
+}
@@ -15,12 +15,14 @@
  */
 package org.acoli.fintan.genericIO;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
+import org.acoli.fintan.core.FintanScheduler;
 import org.acoli.fintan.core.FintanStreamComponentFactory;
 import org.acoli.fintan.core.StreamTransformerGenericIO;
 import org.apache.commons.cli.ParseException;
@@ -34,6 +36,12 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
  * 
  * Throws IOException, if a named InputStream is set. Can only take  a single input.
  * 
+ * The input is read into a single shared ring buffer. Each OutputStream is 
+ * served by its own consumer thread with an independent cursor, which writes 
+ * directly from the shared buffer. Thus, consumers progress independently and 
+ * no chunk is ever copied per consumer. The reader only blocks, if the slowest 
+ * consumer lags behind by more than the size of the ring buffer.
+ * 
  * @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
  *
  */
@@ -42,14 +50,28 @@ public final class IOStreamDuplicator extends StreamTransformerGenericIO impleme
 	protected static final Logger LOG = LogManager.getLogger(IOStreamDuplicator.class.getName());
 	
 	public static final int DEFAULT_BUFFER_SIZE = 8192;
+	public static final int DEFAULT_RING_SIZE = 1024 * 1024;
 	
 	/**
-	 * No json parameters necessary.
+	 * The following parameters can be set in the JSON config:
+	 * 
+	 * `bufferSize` size of the shared ring buffer in bytes. This is the lag 
+	 * 		tolerance: the maximum number of bytes the fastest consumer may 
+	 * 		run ahead of the slowest one. Default: 1 MiB
+	 * `chunkSize` maximum number of bytes read from the input at once.
+	 * 		Default: 8 KiB
 	 */
 	@Override
 	public IOStreamDuplicator buildFromJsonConf(ObjectNode conf)
 			throws IOException, IllegalArgumentException, ParseException {
-		return new IOStreamDuplicator();
+		IOStreamDuplicator duplicator = new IOStreamDuplicator();
+		if (conf.hasNonNull("bufferSize")) {
+			duplicator.setBufferSize(conf.get("bufferSize").asInt(DEFAULT_RING_SIZE));
+		}
+		if (conf.hasNonNull("chunkSize")) {
+			duplicator.setChunkSize(conf.get("chunkSize").asInt(DEFAULT_BUFFER_SIZE));
+		}
+		return duplicator;
 	}
 
 	@Override
@@ -57,6 +79,37 @@ public final class IOStreamDuplicator extends StreamTransformerGenericIO impleme
 			throws IOException, IllegalArgumentException, ParseException {
 		return new IOStreamDuplicator();
 	}
+	
+	private int bufferSize = DEFAULT_RING_SIZE;
+	private int chunkSize = DEFAULT_BUFFER_SIZE;
+	
+	// shared ring buffer, guarded by ringLock
+	private final ReentrantLock ringLock = new ReentrantLock();
+	private final Condition ringChanged = ringLock.newCondition();
+	private byte[] ring;
+	private long writePosition = 0;
+	private boolean endOfInput = false;
+	private final ArrayList<RingCursor> cursors = new ArrayList<RingCursor>();
+
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	public void setBufferSize(int bufferSize) {
+		if (bufferSize <= 0) 
+			throw new IllegalArgumentException("bufferSize must be positive.");
+		this.bufferSize = bufferSize;
+	}
+
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	public void setChunkSize(int chunkSize) {
+		if (chunkSize <= 0) 
+			throw new IllegalArgumentException("chunkSize must be positive.");
+		this.chunkSize = chunkSize;
+	}
 
 	/**
 	 * Overrides default method. Only accepts default stream.
@@ -90,24 +143,140 @@ public final class IOStreamDuplicator extends StreamTransformerGenericIO impleme
 			setOutputStream(outputStream);
 	}
 	
-	private void processStream() throws IOException {
-		BufferedInputStream in = new BufferedInputStream(getInputStream(), DEFAULT_BUFFER_SIZE);
-		int len = 0;
-		byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
-		while ((len = in.read(buffer)) > -1) {
-			byte[] outBuffer;
-			if (len < buffer.length) {
-				outBuffer = Arrays.copyOf(buffer, len);
-			} else {
-				outBuffer = buffer;
+	/**
+	 * Consumer of the shared ring buffer. Each cursor writes to a single 
+	 * OutputStream and advances independently of all other cursors.
+	 */
+	private class RingCursor implements Runnable {
+		
+		private final String name;
+		private final OutputStream out;
+		// guarded by ringLock
+		private long position = 0;
+		private boolean detached = false;
+		private IOException failure = null;
+		
+		private RingCursor(String name, OutputStream out) {
+			this.name = name;
+			this.out = out;
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					int offset;
+					int len;
+					ringLock.lock();
+					try {
+						while (position == writePosition && !endOfInput) {
+							ringChanged.await();
+						}
+						if (position == writePosition) 
+							break;
+						offset = (int) (position % ring.length);
+						len = (int) Math.min(writePosition - position, ring.length - offset);
+					} finally {
+						ringLock.unlock();
+					}
+					// region [position, position+len) is not touched by the reader 
+					// before this cursor has moved past it.
+					out.write(ring, offset, len);
+					ringLock.lock();
+					try {
+						position += len;
+						ringChanged.signalAll();
+					} finally {
+						ringLock.unlock();
+					}
+				}
+				out.close();
+			} catch (IOException e) {
+				LOG.error("Detaching OutputStream "+name+" after write error: "+e);
+				detach(e);
+			} catch (InterruptedException e) {
+				LOG.error("Detaching OutputStream "+name+" after interrupt: "+e);
+				detach(new IOException(e));
 			}
-			for (String name:listOutputStreamNames()) {
-				getOutputStream(name).write(outBuffer);
+		}
+		
+		private void detach(IOException e) {
+			ringLock.lock();
+			try {
+				detached = true;
+				failure = e;
+				ringChanged.signalAll();
+			} finally {
+				ringLock.unlock();
 			}
 		}
-
+	}
+	
+	/**
+	 * @return the position of the slowest attached cursor. Must hold ringLock.
+	 */
+	private long slowestPosition() {
+		long min = writePosition;
+		for (RingCursor cursor:cursors) {
+			if (!cursor.detached && cursor.position < min) 
+				min = cursor.position;
+		}
+		return min;
+	}
+	
+	private void processStream() throws IOException, InterruptedException {
+		InputStream in = getInputStream();
+		ring = new byte[bufferSize];
+		ArrayList<Thread> threads = new ArrayList<Thread>();
 		for (String name:listOutputStreamNames()) {
-			getOutputStream(name).close();
+			RingCursor cursor = new RingCursor(name, getOutputStream(name));
+			cursors.add(cursor);
+			threads.add(FintanScheduler.startThread(cursor, "fintan-"+getInstanceName()+"-"+name));
+		}
+		
+		try {
+			while (true) {
+				int offset;
+				int len;
+				ringLock.lock();
+				try {
+					while (writePosition - slowestPosition() >= ring.length) {
+						ringChanged.await();
+					}
+					offset = (int) (writePosition % ring.length);
+					int free = ring.length - (int) (writePosition - slowestPosition());
+					len = Math.min(Math.min(free, ring.length - offset), chunkSize);
+				} finally {
+					ringLock.unlock();
+				}
+				// region [writePosition, writePosition+len) has been released by all cursors.
+				len = in.read(ring, offset, len);
+				if (len < 0) 
+					break;
+				ringLock.lock();
+				try {
+					writePosition += len;
+					ringChanged.signalAll();
+				} finally {
+					ringLock.unlock();
+				}
+			}
+		} finally {
+			ringLock.lock();
+			try {
+				endOfInput = true;
+				ringChanged.signalAll();
+			} finally {
+				ringLock.unlock();
+			}
+		}
+		
+		for (Thread t:threads) {
+			t.join();
+		}
+		for (RingCursor cursor:cursors) {
+			if (cursor.failure != null) 
+				throw new IOException("Failed to duplicate stream to OutputStream "+cursor.name, cursor.failure);
 		}
 	}
 	
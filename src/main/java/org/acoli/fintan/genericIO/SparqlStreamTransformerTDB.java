@@ -17,27 +17,57 @@ package org.acoli.fintan.genericIO;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 
 import org.acoli.fintan.core.FintanManager;
+import org.acoli.fintan.core.FintanScheduler;
 import org.acoli.fintan.core.FintanStreamComponentFactory;
 import org.acoli.fintan.core.StreamTransformerGenericIO;
 import org.acoli.fintan.core.util.CustomCSVFormat;
 import org.acoli.fintan.core.util.IOUtils;
 import org.acoli.fintan.core.util.JenaUtils;
+import org.acoli.fintan.core.util.SegmentReader;
 import org.apache.commons.io.FileUtils;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.graph.compose.MultiUnion;
 import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
 import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryExecution;
 import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.QuerySolution;
 import org.apache.jena.query.ReadWrite;
 import org.apache.jena.query.ResultSet;
 import org.apache.jena.query.ResultSetFormatter;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.RiotException;
+import org.apache.jena.riot.lang.PipedRDFIterator;
+import org.apache.jena.riot.lang.PipedTriplesStream;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sparql.engine.binding.Binding;
 import org.apache.jena.sparql.resultset.ResultsFormat;
 import org.apache.jena.tdb.TDBFactory;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
 /**
@@ -47,6 +77,16 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
  * Named input streams are stored into the graph of the same name. 
  * For outputting the query results only the default stream is supported.
  * 
+ * In windowed mode, the default stream is not loaded into TDB. Instead, it is 
+ * split into windows of consecutive segments or triples, which may overlap. 
+ * The query is evaluated on each window in memory and the results are 
+ * emitted as soon as a window is complete. Named streams are still loaded 
+ * into TDB beforehand and serve as context graphs for all windows.
+ * 
+ * Instead of loading the input streams, the query can be run on a prebuilt, 
+ * persistent TDB or TDB2 dataset, e.g. created by TDBIndexer. In windowed 
+ * mode, its named graphs serve as context graphs.
+ * 
  * @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
  *
  */
@@ -60,6 +100,15 @@ public class SparqlStreamTransformerTDB extends StreamTransformerGenericIO imple
 	 * * `delimiterCSV` for the column delimiter. `\t` for CoNLL
 	 * * `quoteChar` optional for wrapping cell content
 	 * * `emptyChar` optional to denote an empty cell. `_` for CoNLL
+	 * 
+	 * Windowed mode is activated by a `window` object: 
+	 * * `size` the number of segments (if a `delimiter` is set) or triples per window
+	 * * `delimiter` optional textual delimiter of segments, as in RDFStreamLoader
+	 * * `overlap` optional number of segments or triples shared by consecutive 
+	 * 		windows. Results matching the overlap may be emitted repeatedly.
+	 * 
+	 * `tdbDirectory` optionally points to a prebuilt dataset, which is only read. 
+	 * `tdbType` can be set to `TDB` or `TDB2`, but is detected by default.
 	 */
 	@Override
 	public SparqlStreamTransformerTDB buildFromJsonConf(ObjectNode conf) throws IOException, IllegalArgumentException {
@@ -101,7 +150,26 @@ public class SparqlStreamTransformerTDB extends StreamTransformerGenericIO imple
 			writer.setCustomFormat(new CustomCSVFormat(escapeChar, delimiterCSV, quoteChar, emptyChar));
 		}
 		
-		if (conf.hasNonNull("tdbPath")) {
+		if (conf.hasNonNull("window")) {
+			JsonNode window = conf.get("window");
+			int size = 0;
+			if (window.hasNonNull("size"))
+				size = window.get("size").asInt(0);
+			int overlap = 0;
+			if (window.hasNonNull("overlap"))
+				overlap = window.get("overlap").asInt(0);
+			String delimiter = null;
+			if (window.hasNonNull("delimiter"))
+				delimiter = window.get("delimiter").asText();
+			writer.activateWindows(size, overlap, delimiter);
+		}
+		
+		if (conf.hasNonNull("tdbDirectory")) {
+			String type = null;
+			if (conf.hasNonNull("tdbType"))
+				type = conf.get("tdbType").asText();
+			writer.connectTDB(conf.get("tdbDirectory").asText(), type);
+		} else if (conf.hasNonNull("tdbPath")) {
 			writer.initTDB(conf.get("tdbPath").asText());
 		} else {
 			writer.initTDB(null);
@@ -132,13 +200,23 @@ public class SparqlStreamTransformerTDB extends StreamTransformerGenericIO imple
 	
 	protected static final Logger LOG = LogManager.getLogger(SparqlStreamTransformerTDB.class.getName());
 
+	// buffer between the parser thread and the windows in triple mode
+	private static final int PIPE_BUFFER_SIZE = 10000;
+	private static final int PIPE_POLL_TIMEOUT = 1000;
+
 	
 
 	private Dataset tdbDataset; 
+	// the dataset has been connected from tdbDirectory and must not be modified
+	private boolean prebuiltTDB = false;
 	private String lang = "TTL";
 	private Query query;
 	private CustomCSVFormat customFormat;
 	private ResultsFormat jenaFormat;
+	// windowed mode is disabled unless windowSize > 0
+	private int windowSize = 0;
+	private int windowOverlap = 0;
+	private String windowDelimiter = null;
 	
 
 	public String getLang() {
@@ -173,6 +251,35 @@ public class SparqlStreamTransformerTDB extends StreamTransformerGenericIO imple
 		this.jenaFormat = jenaFormat;
 	}
 
+	public int getWindowSize() {
+		return windowSize;
+	}
+
+	public int getWindowOverlap() {
+		return windowOverlap;
+	}
+
+	public String getWindowDelimiter() {
+		return windowDelimiter;
+	}
+
+	/**
+	 * Evaluate the query on windows of the default stream instead of loading it completely.
+	 * @param size the number of segments or triples per window
+	 * @param overlap the number of segments or triples shared by consecutive windows
+	 * @param delimiter the segment delimiter. If null, windows consist of triples.
+	 * @throws IllegalArgumentException if the size is not positive or the overlap not smaller than the size.
+	 */
+	public void activateWindows(int size, int overlap, String delimiter) throws IllegalArgumentException {
+		if (size <= 0)
+			throw new IllegalArgumentException("Window size must be positive.");
+		if (overlap < 0 || overlap >= size)
+			throw new IllegalArgumentException("Window overlap must be between 0 and size-1.");
+		this.windowSize = size;
+		this.windowOverlap = overlap;
+		this.windowDelimiter = delimiter;
+	}
+
 	public void initTDB(String path) {
 		if (path == null) path = FintanManager.DEFAULT_TDB_PATH;
 		if (!path.endsWith("/")) path+="/";
@@ -191,25 +298,73 @@ public class SparqlStreamTransformerTDB extends StreamTransformerGenericIO imple
 		tdbDataset = TDBFactory.createDataset(f.getAbsolutePath());
 	}
 
+	/**
+	 * A prebuilt dataset does not require any input.
+	 */
+	@Override
+	public boolean requiresInputStream() {
+		return !prebuiltTDB;
+	}
+
+	public boolean isPrebuiltTDB() {
+		return prebuiltTDB;
+	}
+	
+	/**
+	 * Query a prebuilt, persistent dataset instead of loading the input streams. 
+	 * The dataset is only read.
+	 * @param directory the dataset directory
+	 * @param type "TDB" or "TDB2", or null to detect it.
+	 * @throws IllegalArgumentException if the directory does not contain a dataset.
+	 */
+	public void connectTDB(String directory, String type) throws IllegalArgumentException {
+		if (JenaUtils.detectTDBType(new File(directory)) == null) 
+			throw new IllegalArgumentException("No TDB dataset found in <"+directory+">. It can be built by TDBIndexer.");
+		tdbDataset = JenaUtils.connectTDB(directory, type);
+		prebuiltTDB = true;
+	}
+
 	private void processStream() {
 
 		PrintStream out = new PrintStream(getOutputStream());
 		try {
 			//load streamed data into graphs
+			List<String> contextGraphs = new ArrayList<String>();
 			for (String name:listInputStreamNames()) {
+				// the default stream is evaluated window by window
+				if (windowSize > 0 && name.equals(FINTAN_DEFAULT_STREAM_NAME)) 
+					continue;
+				// input streams would block their writers, since they are never read.
+				if (prebuiltTDB) 
+					throw new IllegalArgumentException("Input stream '"+name+"' cannot be loaded into the prebuilt tdbDirectory. Remove it or use TDBIndexer.");
 				tdbDataset.begin(ReadWrite.WRITE);
 				if (name.equals(FINTAN_DEFAULT_STREAM_NAME)) {
 					tdbDataset.getDefaultModel().read(getInputStream(name), null, lang);
 				} else {
 					tdbDataset.getNamedModel(name).read(getInputStream(name), null, lang);
 					tdbDataset.getDefaultModel().setNsPrefixes(tdbDataset.getNamedModel(name).getNsPrefixMap());
+					contextGraphs.add(name);
 				}
 				tdbDataset.commit();
 				tdbDataset.end();
 			}
 
 			tdbDataset.begin(ReadWrite.READ);
-			ResultSet rs = QueryExecutionFactory.create(query, tdbDataset).execSelect();
+			if (prebuiltTDB) 
+				tdbDataset.listNames().forEachRemaining(contextGraphs::add);
+			ResultSet rs;
+			if (windowSize > 0) {
+				Iterator<Graph> windows;
+				if (getInputStream() == null) 
+					windows = Collections.emptyIterator();
+				else if (windowDelimiter != null) 
+					windows = new SegmentWindows(getInputStream());
+				else 
+					windows = new TripleWindows(getInputStream());
+				rs = new WindowedResultSet(windows, contextGraphs);
+			} else {
+				rs = QueryExecutionFactory.create(query, tdbDataset).execSelect();
+			}
 			if(jenaFormat != null) {
 				ResultSetFormatter.output(out, rs, jenaFormat);
 			} else {
@@ -224,6 +379,213 @@ public class SparqlStreamTransformerTDB extends StreamTransformerGenericIO imple
 		}
 	}
 	
+	/**
+	 * Windows of consecutive segments, each parsed only once. 
+	 * A window is a union view of its segments.
+	 */
+	private class SegmentWindows implements Iterator<Graph> {
+		
+		private final SegmentReader reader;
+		private final ArrayDeque<Graph> segments = new ArrayDeque<Graph>();
+		private String prefixCache = "";
+		private Graph next = null;
+		
+		private SegmentWindows(InputStream in) {
+			reader = new SegmentReader(in, windowDelimiter, true);
+		}
+		
+		@Override
+		public boolean hasNext() {
+			if (next == null) 
+				next = nextWindow();
+			return next != null;
+		}
+
+		@Override
+		public Graph next() {
+			if (!hasNext()) 
+				throw new NoSuchElementException();
+			Graph window = next;
+			next = null;
+			return window;
+		}
+		
+		private Graph nextWindow() {
+			while (segments.size() > windowOverlap) 
+				segments.poll();
+			boolean added = false;
+			try {
+				for (String segment; segments.size() < windowSize && (segment = reader.next()) != null; added = true) 
+					segments.add(parseSegment(segment));
+			} catch (IOException e) {
+				throw new UncheckedIOException("Error when reading from Stream: "+e.getMessage(), e);
+			}
+			// the overlap alone has already been evaluated
+			if (!added) 
+				return null;
+			MultiUnion window = new MultiUnion();
+			for (Graph segment:segments) 
+				window.addGraph(segment);
+			return window;
+		}
+		
+		/**
+		 * Segments may rely on the prefixes of previous segments, see RDFStreamLoader.
+		 */
+		private Graph parseSegment(String segment) {
+			Model m = JenaUtils.createSegmentModel();
+			try {
+				JenaUtils.readSegment(m, segment, lang);
+			} catch (RiotException e) {
+				JenaUtils.readSegment(m, prefixCache + segment, lang);
+			}
+			if (!m.getNsPrefixMap().isEmpty()) {
+				Model prefixes = ModelFactory.createDefaultModel();
+				prefixes.setNsPrefixes(m.getNsPrefixMap());
+				StringWriter prefixWriter = new StringWriter();
+				prefixes.write(prefixWriter, lang);
+				prefixCache = prefixWriter.toString();
+			}
+			return m.getGraph();
+		}
+	}
+	
+	/**
+	 * Windows of consecutive triples. The stream is parsed on a separate thread.
+	 */
+	private class TripleWindows implements Iterator<Graph> {
+		
+		private final PipedRDFIterator<Triple> triples = new PipedRDFIterator<Triple>(PIPE_BUFFER_SIZE, false, PIPE_POLL_TIMEOUT, Integer.MAX_VALUE);
+		// the triples to be repeated in the next window
+		private final ArrayDeque<Triple> overlap = new ArrayDeque<Triple>();
+		private Graph next = null;
+		
+		private TripleWindows(InputStream in) {
+			Lang rdfLang = RDFLanguages.nameToLang(lang);
+			if (rdfLang == null) 
+				throw new IllegalArgumentException("Unknown RDF syntax for windowed mode: "+lang);
+			PipedTriplesStream sink = new PipedTriplesStream(triples);
+			FintanScheduler.startThread(() -> {
+				try {
+					RDFDataMgr.parse(sink, in, rdfLang);
+				} catch (Exception e) {
+					LOG.error(e, e);
+					System.exit(1);
+				}
+			}, "fintan-"+getInstanceName()+"-parser");
+		}
+		
+		@Override
+		public boolean hasNext() {
+			if (next == null) 
+				next = nextWindow();
+			return next != null;
+		}
+
+		@Override
+		public Graph next() {
+			if (!hasNext()) 
+				throw new NoSuchElementException();
+			Graph window = next;
+			next = null;
+			return window;
+		}
+		
+		private Graph nextWindow() {
+			Graph window = JenaUtils.createSegmentGraph();
+			for (Triple t:overlap) 
+				window.add(t);
+			boolean added = false;
+			while (overlap.size() < windowSize && triples.hasNext()) {
+				Triple t = triples.next();
+				window.add(t);
+				overlap.add(t);
+				added = true;
+			}
+			if (!added) 
+				return null;
+			while (overlap.size() > windowOverlap) 
+				overlap.poll();
+			return window;
+		}
+	}
+	
+	/**
+	 * Concatenates the results of all windows, so that any output format 
+	 * produces a single well-formed result document. Windows are only read 
+	 * and evaluated when the previous results have been consumed.
+	 */
+	private class WindowedResultSet implements ResultSet {
+		
+		private final Iterator<Graph> windows;
+		private final List<String> contextGraphs;
+		private final List<String> resultVars = query.getResultVars();
+		private final Model resourceModel = ModelFactory.createDefaultModel();
+		private QueryExecution qexec = null;
+		private ResultSet current = null;
+		private int rowNumber = 0;
+		
+		private WindowedResultSet(Iterator<Graph> windows, List<String> contextGraphs) {
+			this.windows = windows;
+			this.contextGraphs = contextGraphs;
+		}
+		
+		@Override
+		public boolean hasNext() {
+			while (current == null || !current.hasNext()) {
+				if (qexec != null) 
+					qexec.close();
+				qexec = null;
+				current = null;
+				if (!windows.hasNext()) 
+					return false;
+				DatasetGraph dsg = DatasetGraphFactory.createGeneral();
+				dsg.setDefaultGraph(windows.next());
+				for (String name:contextGraphs) 
+					dsg.addGraph(NodeFactory.createURI(name), tdbDataset.getNamedModel(name).getGraph());
+				qexec = QueryExecutionFactory.create(query, DatasetFactory.wrap(dsg));
+				current = qexec.execSelect();
+			}
+			return true;
+		}
+
+		@Override
+		public QuerySolution next() {
+			return nextSolution();
+		}
+
+		@Override
+		public QuerySolution nextSolution() {
+			if (!hasNext()) 
+				throw new NoSuchElementException();
+			rowNumber++;
+			return current.nextSolution();
+		}
+
+		@Override
+		public Binding nextBinding() {
+			if (!hasNext()) 
+				throw new NoSuchElementException();
+			rowNumber++;
+			return current.nextBinding();
+		}
+
+		@Override
+		public int getRowNumber() {
+			return rowNumber;
+		}
+
+		@Override
+		public List<String> getResultVars() {
+			return resultVars;
+		}
+
+		@Override
+		public Model getResourceModel() {
+			return resourceModel;
+		}
+	}
+	
 	@Override
 	public void start() {
 		run();
@@ -0,0 +1,209 @@
+/*
+ * Copyright [2021] [ACoLi Lab, Prof. Dr. Chiarcos, Christian Faeth, Goethe University Frankfurt]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.acoli.fintan.genericIO;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.acoli.fintan.core.FintanStreamComponentFactory;
+import org.acoli.fintan.core.StreamTransformerGenericIO;
+import org.acoli.fintan.core.util.JenaUtils;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.tdb2.TDB2Factory;
+import org.apache.jena.tdb2.loader.DataLoader;
+import org.apache.jena.tdb2.loader.LoaderFactory;
+import org.apache.jena.tdb2.loader.base.LoaderOps;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Builds a persistent TDB or TDB2 dataset from serialized RDF streams. 
+ * RDFStreamSplitterTDB and SparqlStreamTransformerTDB can then use the dataset 
+ * by `tdbDirectory` on every run instead of reloading the same data. 
+ * 
+ * The default stream is loaded into the default graph (quads into their 
+ * respective graphs), named streams into the graph of the same name. 
+ * Data is added to an existing dataset. No output is produced.
+ * 
+ * TDB2 datasets are filled by the TDB2 bulk loader. For TDB datasets, each 
+ * stream is loaded in a single write transaction.
+ * 
+ * @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
+ *
+ */
+public class TDBIndexer extends StreamTransformerGenericIO implements FintanStreamComponentFactory {
+
+	/**
+	 * The following parameters can be set in the JSON config:
+	 * * `tdbDirectory` the dataset directory. Required.
+	 * * `tdbType` `TDB` or `TDB2`. Detected for existing datasets, 
+	 * 		new datasets default to TDB2.
+	 * * `lang` the RDF syntax of the input streams. Default: TTL
+	 */
+	@Override
+	public TDBIndexer buildFromJsonConf(ObjectNode conf) throws IOException, IllegalArgumentException {
+		TDBIndexer indexer = new TDBIndexer();
+		indexer.setConfig(conf);
+		if (conf.hasNonNull("lang")) {
+			indexer.setLang(conf.get("lang").asText());
+		}
+		if (!conf.hasNonNull("tdbDirectory")) {
+			throw new IllegalArgumentException("TDBIndexer requires a tdbDirectory.");
+		}
+		String type = null;
+		if (conf.hasNonNull("tdbType")) {
+			type = conf.get("tdbType").asText();
+		}
+		indexer.connectTDB(conf.get("tdbDirectory").asText(), type);
+		return indexer;
+	}
+
+	/**
+	 * CLI mode is not supported. 
+	 * 
+	 * @throws IOException always. Use a JSON config instead.
+	 */
+	@Override
+	public TDBIndexer buildFromCLI(String[] args) throws IOException, IllegalArgumentException {
+		throw new IOException("CLI mode is not supported for "+TDBIndexer.class.getName()+". Use a JSON config instead.");
+	}
+	
+	/**
+	 * Overrides default method. No output is produced.
+	 * 
+	 * @throws IOException always.
+	 */
+	@Override
+	public void setOutputStream(OutputStream outputStream) throws IOException {
+		throw new IOException(TDBIndexer.class.getName()+" does not produce any output.");
+	}
+	
+	/**
+	 * Overrides default method. No output is produced.
+	 * 
+	 * @throws IOException always.
+	 */
+	@Override
+	public void setOutputStream(OutputStream outputStream, String name) throws IOException {
+		throw new IOException(TDBIndexer.class.getName()+" does not produce any output.");
+	}
+
+	/**
+	 * The indexer stores all data in the dataset.
+	 */
+	@Override
+	public boolean requiresOutputStream() {
+		return false;
+	}
+
+	protected static final Logger LOG = LogManager.getLogger(TDBIndexer.class.getName());
+	
+	private Dataset tdbDataset;
+	private String tdbDirectory;
+	private String lang = "TTL";
+
+	public String getLang() {
+		return lang;
+	}
+
+	public void setLang(String lang) {
+		this.lang = lang;
+	}
+	
+	public String getTdbDirectory() {
+		return tdbDirectory;
+	}
+	
+	/**
+	 * @param directory the dataset directory. Created if it does not exist.
+	 * @param type "TDB" or "TDB2", or null to detect it.
+	 * @throws IllegalArgumentException if the type is unknown or does not match the directory.
+	 */
+	public void connectTDB(String directory, String type) throws IllegalArgumentException {
+		tdbDataset = JenaUtils.connectTDB(directory, type);
+		tdbDirectory = directory;
+	}
+	
+	private void processStream() {
+		Lang rdfLang = RDFLanguages.nameToLang(lang);
+		if (rdfLang == null) 
+			throw new IllegalArgumentException("Unknown RDF syntax: "+lang);
+		try {
+			for (String name:listInputStreamNames()) {
+				Node graph = null;
+				if (!name.equals(FINTAN_DEFAULT_STREAM_NAME)) 
+					graph = NodeFactory.createURI(name);
+				long start = System.currentTimeMillis();
+				if (TDB2Factory.isTDB2(tdbDataset)) {
+					bulkLoad(getInputStream(name), graph, rdfLang);
+				} else {
+					tdbDataset.begin(ReadWrite.WRITE);
+					DatasetGraph dsg = tdbDataset.asDatasetGraph();
+					StreamRDF dest = (graph == null) ? StreamRDFLib.dataset(dsg) : StreamRDFLib.graph(dsg.getGraph(graph));
+					RDFDataMgr.parse(dest, getInputStream(name), rdfLang);
+					tdbDataset.commit();
+					tdbDataset.end();
+				}
+				LOG.info("Indexed stream '"+name+"' into <"+tdbDirectory+"> in "+(System.currentTimeMillis()-start)+" ms.");
+			}
+		} finally {
+			tdbDataset.close();
+		}
+	}
+	
+	private void bulkLoad(InputStream in, Node graph, Lang rdfLang) {
+		DataLoader loader;
+		if (graph == null) 
+			loader = LoaderFactory.createLoader(tdbDataset.asDatasetGraph(), LoaderOps.nullOutput());
+		else 
+			loader = LoaderFactory.createLoader(tdbDataset.asDatasetGraph(), graph, LoaderOps.nullOutput());
+		loader.startBulk();
+		try {
+			RDFDataMgr.parse(loader.stream(), in, rdfLang);
+			loader.finishBulk();
+		} catch (RuntimeException e) {
+			loader.finishException(e);
+			throw e;
+		}
+	}
+	
+	@Override
+	public void start() {
+		run();
+	}
+
+	@Override
+	public void run() {
+		try {
+			processStream();
+		} catch (Exception e) {
+			LOG.error(e, e);
+			System.exit(1);
+		}
+	}
+}
@@ -15,15 +15,22 @@
  */
 package org.acoli.fintan.load;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.StringReader;
+import java.io.InputStream;
 import java.io.StringWriter;
 import java.util.Map;
 
+import org.acoli.fintan.core.FintanInputStream;
+import org.acoli.fintan.core.FintanScheduler;
 import org.acoli.fintan.core.FintanStreamComponentFactory;
+import org.acoli.fintan.core.ModelStreamBridge;
+import org.acoli.fintan.core.ModelStreamBridgeable;
 import org.acoli.fintan.core.StreamLoader;
+import org.acoli.fintan.core.checkpoint.CheckpointInputStream;
+import org.acoli.fintan.core.checkpoint.FintanCheckpoint;
+import org.acoli.fintan.core.util.JenaUtils;
+import org.acoli.fintan.core.util.ReadAheadInputStream;
+import org.acoli.fintan.core.util.SegmentReader;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.logging.log4j.LogManager;
@@ -38,10 +45,13 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
  * 		which converts the stream independently
  *  - input streams without matching outputstreams are dropped.
  * 
+ * If the input is linked to a ModelStreamBridge, the segments are forwarded 
+ * as Models without being parsed.
+ * 
  * @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
  *
  */
-public class RDFStreamLoader extends StreamLoader implements FintanStreamComponentFactory{
+public class RDFStreamLoader extends StreamLoader implements FintanStreamComponentFactory, ModelStreamBridgeable {
 
 	//Factory methods
 	/**
@@ -62,6 +72,11 @@ public class RDFStreamLoader extends StreamLoader implements FintanStreamCompone
 	 * 		still retry with the last successful set of prefixes, but this will 
 	 * 		increase processing overhead. In this case the `globalPrefixes` flag
 	 * 		should be set to `true`.
+	 * 
+	 * `readAhead` (`true`/`false` or a number of bytes) reads the input on a 
+	 * 		separate thread into a bounded chain of buffers, so that slow reads 
+	 * 		and decompression overlap with parsing. `true` reads ahead up to 
+	 * 		DEFAULT_READ_AHEAD bytes. Compressed input is always read ahead.
 	 */
 	@Override
 	public RDFStreamLoader buildFromJsonConf(ObjectNode conf) throws IOException, IllegalArgumentException {
@@ -80,6 +95,12 @@ public class RDFStreamLoader extends StreamLoader implements FintanStreamCompone
 		if (conf.hasNonNull("globalPrefixes")) {
 			loader.setGlobalPrefixes(conf.get("globalPrefixes").asBoolean());
 		}
+		if (conf.hasNonNull("readAhead")) {
+			if (conf.get("readAhead").isNumber()) 
+				loader.setReadAhead(conf.get("readAhead").asInt(0));
+			else if (conf.get("readAhead").asBoolean(false)) 
+				loader.setReadAhead(DEFAULT_READ_AHEAD);
+		}
 		return loader;
 	}
 
@@ -91,12 +112,20 @@ public class RDFStreamLoader extends StreamLoader implements FintanStreamCompone
 
 	protected static final Logger LOG = LogManager.getLogger(RDFStreamLoader.class.getName());
 
+	public static final int DEFAULT_READ_AHEAD = 8 * 1024 * 1024;
+	public static final int READ_AHEAD_CHUNK_SIZE = 1024 * 1024;
+
 
 	private String lang = "TTL";
 	private boolean split = false;
 	private String segmentDelimiter = null;
 	private boolean globalPrefixes = false;
 	private String prefixCache = "";
+	// bytes to read ahead, 0 to read on the loader's thread
+	private int readAhead = 0;
+	// only set if the default input is checkpointed
+	private CheckpointInputStream checkpoint = null;
+	private SegmentReader reader = null;
 
 	public String getLang() {
 		return lang;
@@ -122,6 +151,23 @@ public class RDFStreamLoader extends StreamLoader implements FintanStreamCompone
 		this.segmentDelimiter = segmentDelimiter;
 	}
 
+	/**
+	 * Segments are only split along the text stream's delimiters, 
+	 * if both split and delimiter are set.
+	 */
+	@Override
+	public boolean preservesSegments() {
+		return split && segmentDelimiter != null;
+	}
+
+	public int getReadAhead() {
+		return readAhead;
+	}
+
+	public void setReadAhead(int readAhead) {
+		this.readAhead = readAhead;
+	}
+
 	public boolean hasGlobalPrefixes() {
 		return globalPrefixes;
 	}
@@ -146,6 +192,7 @@ public class RDFStreamLoader extends StreamLoader implements FintanStreamCompone
 			loader.setLang(lang);
 			loader.setSplit(split);
 			loader.setGlobalPrefixes(globalPrefixes);
+			loader.setReadAhead(readAhead);
 			try {
 				loader.setInputStream(getInputStream(name));
 				loader.setOutputStream(getOutputStream(name));
@@ -153,55 +200,77 @@ public class RDFStreamLoader extends StreamLoader implements FintanStreamCompone
 				LOG.error(e, e);
 				System.exit(1);
 			}
-			new Thread(loader).start();
+			FintanScheduler.startThread(loader, "fintan-"+getInstanceName()+"-"+name);
 		}
 		
 		//terminate in case there is no default stream. 
 		//named streams are handled in subthreads.
 		if (getOutputStream()==null) return;
 		
+		if (getInputStream() instanceof ModelStreamBridge.Input) {
+			forwardStream(((ModelStreamBridge.Input) getInputStream()).getModelStream());
+			return;
+		}
+		
 		// process default stream
-		BufferedReader in = new BufferedReader(new InputStreamReader(getInputStream()));
-		StringBuilder sb = new StringBuilder(512);
+		// segments are split on raw bytes and decoded once.
+		if (getInputStream() instanceof CheckpointInputStream) {
+			checkpoint = (CheckpointInputStream) getInputStream();
+			prefixCache = FintanCheckpoint.getPrefixes();
+		}
+		InputStream in = getInputStream();
+		// compressed input is already read ahead by IOUtils.
+		if (readAhead > 0 && !(in instanceof ReadAheadInputStream)) 
+			in = new ReadAheadInputStream(in, readAhead, Math.min(readAhead, READ_AHEAD_CHUNK_SIZE), "fintan-"+getInstanceName()+"-readahead");
+		reader = new SegmentReader(in, segmentDelimiter, split);
 		try {
-			for(String line = in.readLine(); line !=null; line=in.readLine()) {
-				if (split && segmentDelimiter == null) {
-					outputSegment(line+"\n", "");
-				} else if (split && line.equals(segmentDelimiter)) {
-					outputSegment(sb.toString(), "");
-
-					sb = new StringBuilder(512);
-				} else {
-					sb.append(line+"\n");
-				}
+			for(String segment = reader.next(); segment != null; segment = reader.next()) {
+				outputSegment(segment, "");
 			}
-			//final segment in case there is no segmentDelimiter in last row
 		} catch (IOException e) {
 			LOG.trace("Error when reading from Stream: " +e);
 		}
-		String finalSegment = sb.toString();
-		if (!finalSegment.trim().isEmpty())
-			outputSegment(finalSegment, "");
+		getOutputStream().terminate();
+	}
+	
+	/**
+	 * Forwards all segments from a ModelStreamBridge instead of parsing them.
+	 * @param in the FintanStream underlying the bridge
+	 */
+	private void forwardStream(FintanInputStream<Model> in) {
+		while (in.canRead()) {
+			try {
+				Model m = in.read();
+				//read may return null in case the queue has been emptied and terminated since asking for canRead()
+				if (m == null) continue;
+				getOutputStream().write(m);
+			} catch (InterruptedException e) {
+				LOG.error("Error when forwarding Stream: " +e);
+			}
+		}
 		getOutputStream().terminate();
 	}
 	
 	private void outputSegment(String rdfsegment, String outputStreamName) {
-		Model m = ModelFactory.createDefaultModel();
+		Model m = JenaUtils.createSegmentModel();
 		
 		if (globalPrefixes) 
 			rdfsegment = prefixCache + rdfsegment;
 		//TODO: find a better way to assess existence of prefixes. 
 		//Exception handling may be slow.
 		try {
-			m.read(new StringReader(rdfsegment), null, lang);
+			JenaUtils.readSegment(m, rdfsegment, lang);
 		} catch (org.apache.jena.riot.RiotException e) {
 			//probably missing prefixes.
 			rdfsegment = prefixCache + rdfsegment;
-			m.read(new StringReader(rdfsegment), null, lang);
+			JenaUtils.readSegment(m, rdfsegment, lang);
 		}
 		
 //		if (!globalPrefixes || prefixCache.length()==0) // speed impact is low. caching always is more robust, especially when reading multiple datasets with differing global prefixes
 			cachePrefixes(m.getNsPrefixMap());
+		// mark before writing, the segment may be written by the next component right away.
+		if (checkpoint != null && outputStreamName.isEmpty()) 
+			checkpoint.markSegment(reader.getPosition(), prefixCache);
 		try {
 			getOutputStream(outputStreamName).write(m);
 		} catch (InterruptedException e) {
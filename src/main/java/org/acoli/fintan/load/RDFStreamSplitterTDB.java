@@ -19,6 +19,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 
 import org.acoli.fintan.core.FintanManager;
@@ -27,16 +28,20 @@ import org.acoli.fintan.core.StreamLoader;
 import org.acoli.fintan.core.util.IOUtils;
 import org.acoli.fintan.core.util.JenaUtils;
 import org.apache.commons.io.FileUtils;
+import org.apache.jena.graph.Triple;
 import org.apache.jena.query.Dataset;
 import org.apache.jena.query.Query;
 import org.apache.jena.query.QueryException;
+import org.apache.jena.query.QueryExecution;
 import org.apache.jena.query.QueryExecutionFactory;
 import org.apache.jena.query.QueryFactory;
 import org.apache.jena.query.QuerySolution;
 import org.apache.jena.query.ReadWrite;
 import org.apache.jena.query.ResultSet;
 import org.apache.jena.rdf.model.Model;
-import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.shared.PrefixMapping;
+import org.apache.jena.shared.impl.PrefixMappingImpl;
+import org.apache.jena.sparql.core.Quad;
 import org.apache.jena.tdb.TDBFactory;
 import org.apache.jena.update.Update;
 import org.apache.jena.update.UpdateAction;
@@ -94,6 +99,11 @@ public class RDFStreamSplitterTDB extends StreamLoader implements FintanStreamCo
 		 * 		naming convention of Apache Jena (ttl, TURTLE, RDF/XML, N3, …)
 		 * `tdbPath` to specify a custom directory to create the temporary TDB 
 		 * 		database
+		 * `tdbDirectory` to split a prebuilt, persistent TDB or TDB2 dataset 
+		 * 		(e.g. created by TDBIndexer) instead of loading the input streams.
+		 * 		The dataset is only read, so only `ITERATE_CONSTRUCT` mode 
+		 * 		without `initUpdate` is supported.
+		 * `tdbType` optional `TDB` or `TDB2` for `tdbDirectory`. Detected by default.
 		 * `iteratorQuery` for `ITERATE_CONSTRUCT` mode. Must be a select query. 
 		 * `constructQuery` for `ITERATE_CONSTRUCT` mode. Must be a construct or 
 		 * 		describe query. 
@@ -108,6 +118,11 @@ public class RDFStreamSplitterTDB extends StreamLoader implements FintanStreamCo
 		 * 		streamed after each recursion.
 		 * `deltaStreams` for `RECURSIVE_UPDATE` mode specifies a list of graphs 
 		 * 		whose content should be streamed after the last recursion.
+		 * `maxSegmentSize` for `ITERATE_CONSTRUCT` mode optionally limits the 
+		 * 		number of triples per segment. Larger results for a single seed 
+		 * 		element are split into multiple consecutive segments. Blank nodes 
+		 * 		are scoped to the result of a seed element, thus a segment is not 
+		 * 		split any more once it contains blank nodes.
 		 */
 		@Override
 		public RDFStreamSplitterTDB buildFromJsonConf(ObjectNode conf) throws IOException, IllegalArgumentException {
@@ -173,7 +188,15 @@ public class RDFStreamSplitterTDB extends StreamLoader implements FintanStreamCo
 				if (!deltaStreams.isEmpty())
 					splitter.setDeltaStreams(deltaStreams.toArray(new String[] {}));
 			}
-			if (conf.hasNonNull("tdbPath")) {
+			if (conf.hasNonNull("maxSegmentSize")) {
+				splitter.setMaxSegmentSize(conf.get("maxSegmentSize").asInt(0));
+			}
+			if (conf.hasNonNull("tdbDirectory")) {
+				String type = null;
+				if (conf.hasNonNull("tdbType"))
+					type = conf.get("tdbType").asText();
+				splitter.connectTDB(conf.get("tdbDirectory").asText(), type);
+			} else if (conf.hasNonNull("tdbPath")) {
 				splitter.initTDB(conf.get("tdbPath").asText());
 			} else {
 				splitter.initTDB(null);
@@ -183,6 +206,10 @@ public class RDFStreamSplitterTDB extends StreamLoader implements FintanStreamCo
 				throw new IllegalArgumentException("Splitter is configured inconsistently. "
 						+ "Please supply either an UPDATE or a set of ITERATE / CONSTRUCT queries");
 			}
+			if (splitter.isPrebuiltTDB() && (splitter.validateSplitterMode() != SplitterMode.ITERATE_CONSTRUCT || splitter.getInitUpdate() != null)) {
+				throw new IllegalArgumentException("A prebuilt tdbDirectory is read-only. "
+						+ "Only ITERATE / CONSTRUCT queries without initUpdate are supported.");
+			}
 			
 			return splitter;
 		}
@@ -198,6 +225,8 @@ public class RDFStreamSplitterTDB extends StreamLoader implements FintanStreamCo
 		private SplitterMode mode = SplitterMode.INVALID;
 		
 		private Dataset tdbDataset; 
+		// the dataset has been connected from tdbDirectory and must not be modified
+		private boolean prebuiltTDB = false;
 		private String lang = "TTL";
 		private String constructQuery;
 		private String iteratorQuery;
@@ -205,6 +234,8 @@ public class RDFStreamSplitterTDB extends StreamLoader implements FintanStreamCo
 		private String initUpdate;
 		private String[] deltaStreams;
 		private String[] segmentStreams;
+		// 0 for unlimited
+		private int maxSegmentSize = 0;
 		
 		
 		public SplitterMode validateSplitterMode() {
@@ -263,6 +294,14 @@ public class RDFStreamSplitterTDB extends StreamLoader implements FintanStreamCo
 			validateSplitterMode();
 		}
 
+		public int getMaxSegmentSize() {
+			return maxSegmentSize;
+		}
+
+		public void setMaxSegmentSize(int maxSegmentSize) {
+			this.maxSegmentSize = maxSegmentSize;
+		}
+
 		public String[] getDeltaStreams() {
 			if (deltaStreams == null) return null;
 			if (deltaStreams.length <= 0) return null;
@@ -368,7 +407,36 @@ public class RDFStreamSplitterTDB extends StreamLoader implements FintanStreamCo
 			tdbDataset = TDBFactory.createDataset(f.getAbsolutePath());
 		}
 
+		/**
+		 * A prebuilt dataset does not require any input.
+		 */
+		@Override
+		public boolean requiresInputStream() {
+			return !prebuiltTDB;
+		}
+		
+		public boolean isPrebuiltTDB() {
+			return prebuiltTDB;
+		}
+		
+		/**
+		 * Split a prebuilt, persistent dataset instead of loading the input streams. 
+		 * The dataset is only read.
+		 * @param directory the dataset directory
+		 * @param type "TDB" or "TDB2", or null to detect it.
+		 * @throws IllegalArgumentException if the directory does not contain a dataset.
+		 */
+		public void connectTDB(String directory, String type) throws IllegalArgumentException {
+			if (JenaUtils.detectTDBType(new File(directory)) == null) 
+				throw new IllegalArgumentException("No TDB dataset found in <"+directory+">. It can be built by TDBIndexer.");
+			tdbDataset = JenaUtils.connectTDB(directory, type);
+			prebuiltTDB = true;
+		}
+
 		private void processStream() {
+			// input streams would block their writers, since they are never read.
+			if (prebuiltTDB && listInputStreamNames().length > 0) 
+				throw new IllegalArgumentException("Input streams cannot be loaded into the prebuilt tdbDirectory. Remove them or use TDBIndexer.");
 			try {
 				//parse / test all queries on init
 				Query iteratorQuery = null;
@@ -425,59 +493,115 @@ public class RDFStreamSplitterTDB extends StreamLoader implements FintanStreamCo
 		private void executeIterateConstruct(Query iteratorQuery) {
 			//execute iteratorQuery
 			tdbDataset.begin(ReadWrite.READ);
-			ResultSet rs = QueryExecutionFactory.create(iteratorQuery, tdbDataset).execSelect();
-			
-			//for each resulting row, parse and execute construct query -> pipe as modelstream
-			while (rs.hasNext()) {
-				QuerySolution sol = rs.next();
+			try (QueryExecution iterator = QueryExecutionFactory.create(iteratorQuery, tdbDataset)) {
+				ResultSet rs = iterator.execSelect();
 				
-				//read seedElements and parse Query
-				HashMap <String, String> seedElements = new HashMap<String, String>();
-				for (String var:rs.getResultVars()) {
-					seedElements.put(var, sol.get(var).toString());
-				}
-				Query constructQuery = parseConstructQuery(this.constructQuery, seedElements);
-				
-				//execute CONSTRUCT or DESCRIBE query
-				Model resultModel = null;
-				Dataset resultDataset = null;
-				if (constructQuery.isDescribeType()) {
-					resultModel = QueryExecutionFactory.create(constructQuery, tdbDataset).execDescribe();
-				} else {
-					resultDataset = QueryExecutionFactory.create(constructQuery, tdbDataset).execConstructDataset();
-				}
-				
-				//for CONSTRUCT queries write all resulting subgraphs into their respective OutputStreams
-				if (resultDataset != null) {
-					//write the default graph into the resultModel (is empty, since no DESCRIBE query) 
-					resultModel = resultDataset.getDefaultModel();
-					//write named models to their respective streams
-					Iterator<String> iter = resultDataset.listNames();
-					while(iter.hasNext()) {
-						String name = iter.next();
-						try {
-							if (getOutputStream(name) == null) {
-								LOG.info("Input stream '"+name+"' does not have a corresponding output stream and is thus dropped.");
-								continue;
+				//for each resulting row, parse and execute construct query -> pipe as modelstream
+				while (rs.hasNext()) {
+					QuerySolution sol = rs.next();
+					
+					//read seedElements and parse Query
+					HashMap <String, String> seedElements = new HashMap<String, String>();
+					for (String var:rs.getResultVars()) {
+						seedElements.put(var, sol.get(var).toString());
+					}
+					Query constructQuery = parseConstructQuery(this.constructQuery, seedElements);
+					
+					//stream the results of the CONSTRUCT or DESCRIBE query into segments
+					try (QueryExecution qexec = QueryExecutionFactory.create(constructQuery, tdbDataset)) {
+						SegmentBuilder segments = new SegmentBuilder(constructQuery);
+						if (constructQuery.isDescribeType()) {
+							Iterator<Triple> triples = qexec.execDescribeTriples();
+							while (triples.hasNext()) {
+								segments.add(FINTAN_DEFAULT_STREAM_NAME, triples.next());
+							}
+						} else {
+							Iterator<Quad> quads = qexec.execConstructQuads();
+							while (quads.hasNext()) {
+								Quad quad = quads.next();
+								String name = FINTAN_DEFAULT_STREAM_NAME;
+								if (!quad.isDefaultGraph()) 
+									name = quad.getGraph().getURI();
+								segments.add(name, quad.asTriple());
 							}
-							getOutputStream(name).write(resultDataset.getNamedModel(name));
-						} catch (InterruptedException e) {
-							LOG.error("Error when processing stream "+name+ ": " +e);
 						}
+						segments.finish();
 					}
 				}
-
-				//for CONSTRUCT query the default graph has been written in the resultModel
-				//for DESCRIBE query only default graph is needed and directly supplied as resultModel
-				if (resultModel != null) {
-					try {
-						getOutputStream().write(resultModel);
-					} catch (InterruptedException e) {
-						LOG.error("Error when processing default output stream: " +e);
+			} finally {
+				tdbDataset.end();
+			}
+		}
+		
+		/**
+		 * Collects the results for a single seed element into one segment per 
+		 * output stream. A segment is written as soon as it reaches maxSegmentSize, 
+		 * unless it contains blank nodes. Any of the following triples may refer 
+		 * to the same blank nodes, so such segments are only written by finish().
+		 */
+		private class SegmentBuilder {
+			
+			private final PrefixMapping prefixes = new PrefixMappingImpl();
+			private final HashMap<String, Model> segments = new HashMap<String, Model>();
+			// streams without output, only reported once
+			private final HashSet<String> dropped = new HashSet<String>();
+			// streams whose current segment contains blank nodes and must not be split
+			private final HashSet<String> blankNodes = new HashSet<String>();
+			private boolean defaultWritten = false;
+			
+			private SegmentBuilder(Query query) {
+				//same prefixes as Jena assigns to materialized results
+				prefixes.setNsPrefixes(tdbDataset.getDefaultModel());
+				prefixes.setNsPrefixes(query.getPrefixMapping());
+			}
+			
+			private void add(String name, Triple triple) {
+				Model m = segments.get(name);
+				if (m == null) {
+					if (getOutputStream(name) == null) {
+						if (dropped.add(name)) 
+							LOG.info("Input stream '"+name+"' does not have a corresponding output stream and is thus dropped.");
+						return;
 					}
+					m = JenaUtils.createSegmentModel();
+					m.setNsPrefixes(prefixes);
+					segments.put(name, m);
+				}
+				m.getGraph().add(triple);
+				if (triple.getSubject().isBlank() || triple.getObject().isBlank()) 
+					blankNodes.add(name);
+				if (maxSegmentSize > 0 && m.size() >= maxSegmentSize && !blankNodes.contains(name)) {
+					segments.remove(name);
+					write(name, m);
+				}
+			}
+			
+			/**
+			 * Writes all remaining segments. The default stream receives 
+			 * a segment for each seed element, even if it is empty.
+			 */
+			private void finish() {
+				if (!defaultWritten && !segments.containsKey(FINTAN_DEFAULT_STREAM_NAME) && getOutputStream() != null) {
+					Model m = JenaUtils.createSegmentModel();
+					m.setNsPrefixes(prefixes);
+					segments.put(FINTAN_DEFAULT_STREAM_NAME, m);
+				}
+				for (String name:segments.keySet()) {
+					write(name, segments.get(name));
+				}
+				segments.clear();
+				blankNodes.clear();
+			}
+			
+			private void write(String name, Model m) {
+				if (name.equals(FINTAN_DEFAULT_STREAM_NAME)) 
+					defaultWritten = true;
+				try {
+					getOutputStream(name).write(m);
+				} catch (InterruptedException e) {
+					LOG.error("Error when processing stream "+name+ ": " +e);
 				}
 			}
-			tdbDataset.end();
 		}
 		
 		
@@ -564,7 +688,7 @@ public class RDFStreamSplitterTDB extends StreamLoader implements FintanStreamCo
 			if (tdbModel.isEmpty())
 				m = null;
 			else {
-				m = ModelFactory.createDefaultModel();
+				m = JenaUtils.createSegmentModel();
 				//full prefixmap is stored in default graph.
 				m.setNsPrefixes(tdbDataset.getDefaultModel().getNsPrefixMap());
 				m.add(tdbModel);
@@ -0,0 +1,458 @@
+/*
+ * Copyright [2021] [ACoLi Lab, Prof. Dr. Chiarcos, Christian Faeth, Goethe University Frankfurt]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.acoli.fintan.load;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import org.acoli.fintan.core.FintanOutputStream;
+import org.acoli.fintan.core.FintanStreamComponentFactory;
+import org.acoli.fintan.core.StreamLoader;
+import org.acoli.fintan.core.util.JenaUtils;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Generates a synthetic CoNLL-RDF corpus instead of loading one, e.g. for 
+ * load and scale testing. Each segment contains a nif:Sentence and its 
+ * nif:Words, linked by nif:nextWord and annotated with conll:* columns.
+ * Segments are generated on the fly, so memory usage does not depend on 
+ * the size of the corpus. Identical configs produce identical corpora.
+ * 
+ * Does not read any input stream. Only the default output stream is supported.
+ * 
+ * @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
+ *
+ */
+public class SyntheticCorpusGenerator extends StreamLoader implements FintanStreamComponentFactory {
+	
+	//Factory methods
+	/**
+	 * The following parameters can be set in the JSON config:
+	 * 
+	 * `sentences` the number of segments to be generated. Default: 1000
+	 * `maxTriples` optional. Stop as soon as the given number of triples 
+	 * 		has been generated.
+	 * `lengthDistribution` of sentence lengths, either `normal` (default) or `uniform`
+	 * `meanLength`, `stdDevLength` for the normal distribution. Default: 15, 7
+	 * `minLength`, `maxLength` bounds for both distributions. Default: 1, 60
+	 * `vocabularySize` number of distinct word forms. Forms follow a 
+	 * 		Zipf distribution with `zipfExponent` (default: 1.0). Default: 10000
+	 * `columns` array of annotation columns to be generated as conll:* properties. 
+	 * 		`WORD` is drawn from the vocabulary, `HEAD` links to a word of 
+	 * 		the same sentence or the sentence itself (root). Any other column 
+	 * 		is drawn from a tag set of `tagsetSize` values (default: 16).
+	 * 		Default: ["WORD", "POS", "HEAD"]
+	 * `seed` for the random generator. Default: 0
+	 * `baseURI` namespace of sentences and words, also bound to the empty 
+	 * 		prefix. Default: http://example.org/synthetic#
+	 */
+	@Override
+	public SyntheticCorpusGenerator buildFromJsonConf(ObjectNode conf) throws IOException, IllegalArgumentException {
+		SyntheticCorpusGenerator generator = new SyntheticCorpusGenerator();
+		generator.setConfig(conf);
+		if (conf.hasNonNull("sentences")) {
+			generator.setSentences(conf.get("sentences").asLong());
+		}
+		if (conf.hasNonNull("maxTriples")) {
+			generator.setMaxTriples(conf.get("maxTriples").asLong());
+		}
+		if (conf.hasNonNull("lengthDistribution")) {
+			generator.setLengthDistribution(conf.get("lengthDistribution").asText());
+		}
+		if (conf.hasNonNull("meanLength")) {
+			generator.setMeanLength(conf.get("meanLength").asDouble());
+		}
+		if (conf.hasNonNull("stdDevLength")) {
+			generator.setStdDevLength(conf.get("stdDevLength").asDouble());
+		}
+		if (conf.hasNonNull("minLength")) {
+			generator.setMinLength(conf.get("minLength").asInt());
+		}
+		if (conf.hasNonNull("maxLength")) {
+			generator.setMaxLength(conf.get("maxLength").asInt());
+		}
+		if (conf.hasNonNull("vocabularySize")) {
+			generator.setVocabularySize(conf.get("vocabularySize").asInt());
+		}
+		if (conf.hasNonNull("zipfExponent")) {
+			generator.setZipfExponent(conf.get("zipfExponent").asDouble());
+		}
+		if (conf.hasNonNull("tagsetSize")) {
+			generator.setTagsetSize(conf.get("tagsetSize").asInt());
+		}
+		if (conf.hasNonNull("columns")) {
+			List<String> columns = new ArrayList<String>();
+			for (JsonNode column:conf.withArray("columns")) {
+				columns.add(column.asText());
+			}
+			generator.setColumns(columns);
+		}
+		if (conf.hasNonNull("seed")) {
+			generator.setSeed(conf.get("seed").asLong());
+		}
+		if (conf.hasNonNull("baseURI")) {
+			generator.setBaseURI(conf.get("baseURI").asText());
+		}
+		if (generator.getMinLength() > generator.getMaxLength()) {
+			throw new IllegalArgumentException("minLength must not exceed maxLength.");
+		}
+		return generator;
+	}
+
+	/**
+	 * Not supported: the corpus parameters can only be set by a JSON config.
+	 * 
+	 * @throws IOException always.
+	 */
+	@Override
+	public SyntheticCorpusGenerator buildFromCLI(String[] args) throws IOException, IllegalArgumentException {
+		throw new IOException("CLI mode is not supported for "+SyntheticCorpusGenerator.class.getName()+". Use a JSON config instead.");
+	}
+	
+	protected static final Logger LOG = LogManager.getLogger(SyntheticCorpusGenerator.class.getName());
+	
+	public static final String NIF_NS = "http://persistence.uni-leipzig.org/nlp2rdf/ontologies/nif-core#";
+	public static final String CONLL_NS = "http://ufal.mff.cuni.cz/conll2009-st/task-description.html#";
+	public static final String DISTRIBUTION_NORMAL = "normal";
+	public static final String DISTRIBUTION_UNIFORM = "uniform";
+	
+	private long sentences = 1000;
+	private long maxTriples = -1;
+	private String lengthDistribution = DISTRIBUTION_NORMAL;
+	private double meanLength = 15;
+	private double stdDevLength = 7;
+	private int minLength = 1;
+	private int maxLength = 60;
+	private int vocabularySize = 10000;
+	private double zipfExponent = 1.0;
+	private int tagsetSize = 16;
+	private List<String> columns = Arrays.asList("WORD", "POS", "HEAD");
+	private long seed = 0;
+	private String baseURI = "http://example.org/synthetic#";
+
+	public long getSentences() {
+		return sentences;
+	}
+
+	public void setSentences(long sentences) {
+		this.sentences = sentences;
+	}
+
+	public long getMaxTriples() {
+		return maxTriples;
+	}
+
+	/**
+	 * @param maxTriples 0 or less for no limit.
+	 */
+	public void setMaxTriples(long maxTriples) {
+		this.maxTriples = maxTriples;
+	}
+
+	public String getLengthDistribution() {
+		return lengthDistribution;
+	}
+
+	public void setLengthDistribution(String lengthDistribution) {
+		if (!DISTRIBUTION_NORMAL.equals(lengthDistribution) && !DISTRIBUTION_UNIFORM.equals(lengthDistribution))
+			throw new IllegalArgumentException("Unknown lengthDistribution: "+lengthDistribution);
+		this.lengthDistribution = lengthDistribution;
+	}
+
+	public double getMeanLength() {
+		return meanLength;
+	}
+
+	public void setMeanLength(double meanLength) {
+		this.meanLength = meanLength;
+	}
+
+	public double getStdDevLength() {
+		return stdDevLength;
+	}
+
+	public void setStdDevLength(double stdDevLength) {
+		this.stdDevLength = stdDevLength;
+	}
+
+	public int getMinLength() {
+		return minLength;
+	}
+
+	public void setMinLength(int minLength) {
+		if (minLength < 1)
+			throw new IllegalArgumentException("minLength must be positive.");
+		this.minLength = minLength;
+	}
+
+	public int getMaxLength() {
+		return maxLength;
+	}
+
+	public void setMaxLength(int maxLength) {
+		if (maxLength < 1)
+			throw new IllegalArgumentException("maxLength must be positive.");
+		this.maxLength = maxLength;
+	}
+
+	public int getVocabularySize() {
+		return vocabularySize;
+	}
+
+	public void setVocabularySize(int vocabularySize) {
+		if (vocabularySize < 1)
+			throw new IllegalArgumentException("vocabularySize must be positive.");
+		this.vocabularySize = vocabularySize;
+	}
+
+	public double getZipfExponent() {
+		return zipfExponent;
+	}
+
+	public void setZipfExponent(double zipfExponent) {
+		this.zipfExponent = zipfExponent;
+	}
+
+	public int getTagsetSize() {
+		return tagsetSize;
+	}
+
+	public void setTagsetSize(int tagsetSize) {
+		if (tagsetSize < 1)
+			throw new IllegalArgumentException("tagsetSize must be positive.");
+		this.tagsetSize = tagsetSize;
+	}
+
+	public List<String> getColumns() {
+		return columns;
+	}
+
+	public void setColumns(List<String> columns) {
+		this.columns = columns;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	public String getBaseURI() {
+		return baseURI;
+	}
+
+	public void setBaseURI(String baseURI) {
+		this.baseURI = baseURI;
+	}
+	
+	/**
+	 * The generator does not consume any input.
+	 */
+	@Override
+	public boolean requiresInputStream() {
+		return false;
+	}
+	
+	/**
+	 * Overrides default method. The generator does not accept input streams.
+	 * 
+	 * @throws IOException always.
+	 */
+	@Override
+	public void setInputStream(InputStream inputStream, String name) throws IOException {
+		throw new IOException("InputStreams are not supported for "+SyntheticCorpusGenerator.class.getName());
+	}
+	
+	/**
+	 * Overrides default method. The generator does not accept input streams.
+	 * 
+	 * @throws IOException always.
+	 */
+	@Override
+	public void setInputStream(InputStream inputStream) throws IOException {
+		setInputStream(inputStream, null);
+	}
+	
+	/**
+	 * Overrides default method. Only accepts default stream.
+	 * 
+	 * @throws IOException if named stream is set.
+	 */
+	@Override
+	public void setOutputStream(FintanOutputStream<Model> outputStream, String name) throws IOException {
+		if (name == null || FINTAN_DEFAULT_STREAM_NAME.equals(name)) {
+			setOutputStream(outputStream);
+		} else {
+			throw new IOException("Only default OutputStream is supported for "+SyntheticCorpusGenerator.class.getName());
+		}
+	}
+	
+	/**
+	 * Cumulative distribution of word ranks following Zipf's law.
+	 */
+	private double[] zipfCdf() {
+		double[] cdf = new double[vocabularySize];
+		double sum = 0;
+		for (int i = 0; i < vocabularySize; i++) {
+			sum += 1.0 / Math.pow(i + 1, zipfExponent);
+			cdf[i] = sum;
+		}
+		for (int i = 0; i < vocabularySize; i++) {
+			cdf[i] /= sum;
+		}
+		return cdf;
+	}
+	
+	private static int sample(double[] cdf, Random random) {
+		double r = random.nextDouble();
+		int lo = 0, hi = cdf.length - 1;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (cdf[mid] < r) 
+				lo = mid + 1;
+			else 
+				hi = mid;
+		}
+		return lo;
+	}
+	
+	private int sampleLength(Random random) {
+		int length;
+		if (DISTRIBUTION_UNIFORM.equals(lengthDistribution)) {
+			length = minLength + random.nextInt(maxLength - minLength + 1);
+		} else {
+			length = (int) Math.round(meanLength + random.nextGaussian() * stdDevLength);
+		}
+		return Math.max(minLength, Math.min(maxLength, length));
+	}
+	
+	/**
+	 * Creates a single segment. Identifiers follow the CoNLL-RDF 
+	 * convention: s{sentence}_0 for the sentence, s{sentence}_{n} for words.
+	 */
+	private Model createSegment(long sentence, int length, double[] zipf, Property[] properties, Random random) {
+		Model m = JenaUtils.createSegmentModel();
+		m.setNsPrefix("nif", NIF_NS);
+		m.setNsPrefix("conll", CONLL_NS);
+		m.setNsPrefix("rdf", RDF.getURI());
+		m.setNsPrefix("", baseURI);
+		
+		Resource nifWord = m.createResource(NIF_NS+"Word");
+		Property nextWord = m.createProperty(NIF_NS+"nextWord");
+		String id = baseURI+"s"+sentence+"_";
+		
+		m.add(m.createResource(id+"0"), RDF.type, m.createResource(NIF_NS+"Sentence"));
+		Resource previous = null;
+		for (int w = 1; w <= length; w++) {
+			Resource word = m.createResource(id+w);
+			m.add(word, RDF.type, nifWord);
+			for (int c = 0; c < columns.size(); c++) {
+				String column = columns.get(c);
+				if ("WORD".equals(column)) {
+					word.addProperty(properties[c], "w"+sample(zipf, random));
+				} else if ("HEAD".equals(column)) {
+					word.addProperty(properties[c], m.createResource(id+random.nextInt(length + 1)));
+				} else {
+					word.addProperty(properties[c], column+random.nextInt(tagsetSize));
+				}
+			}
+			if (previous != null) 
+				previous.addProperty(nextWord, word);
+			previous = word;
+		}
+		return m;
+	}
+	
+	/**
+	 * Generates the segments on the fly without streaming them, e.g. for 
+	 * benchmarks. Each call starts the same corpus from the beginning.
+	 * @return an Iterator over a new Model for each segment.
+	 */
+	public Iterator<Model> segments() {
+		return new SegmentIterator();
+	}
+	
+	private class SegmentIterator implements Iterator<Model> {
+		
+		private final Random random = new Random(seed);
+		private final double[] zipf = zipfCdf();
+		private final Property[] properties = new Property[columns.size()];
+		private long sentence = 1;
+		private long triples = 0;
+		
+		private SegmentIterator() {
+			for (int c = 0; c < columns.size(); c++) {
+				properties[c] = ModelFactory.createDefaultModel().createProperty(CONLL_NS+columns.get(c));
+			}
+		}
+		
+		@Override
+		public boolean hasNext() {
+			return sentence <= sentences && (maxTriples <= 0 || triples < maxTriples);
+		}
+		
+		@Override
+		public Model next() {
+			if (!hasNext()) 
+				throw new NoSuchElementException();
+			Model m = createSegment(sentence++, sampleLength(random), zipf, properties, random);
+			triples += m.size();
+			return m;
+		}
+	}
+	
+	private void generate() throws InterruptedException {
+		SegmentIterator segments = new SegmentIterator();
+		while (segments.hasNext()) {
+			getOutputStream().write(segments.next());
+		}
+		LOG.debug("Generated "+segments.triples+" triples.");
+	}
+
+	@Override
+	public void start() {
+		run();
+	}
+
+	@Override
+	public void run() {
+		try {
+			generate();
+		} catch (Exception e) {
+			LOG.error(e, e);
+			System.exit(1);
+		}
+		getOutputStream().terminate();
+	}
+
+}
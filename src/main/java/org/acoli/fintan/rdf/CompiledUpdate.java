@@ -0,0 +1,350 @@
+/*
+ * Copyright [2021] [ACoLi Lab, Prof. Dr. Chiarcos, Christian Faeth, Goethe University Frankfurt]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.acoli.fintan.rdf;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.core.TriplePath;
+import org.apache.jena.sparql.modify.request.UpdateDeleteWhere;
+import org.apache.jena.sparql.modify.request.UpdateModify;
+import org.apache.jena.sparql.syntax.Element;
+import org.apache.jena.sparql.syntax.ElementGroup;
+import org.apache.jena.sparql.syntax.ElementPathBlock;
+import org.apache.jena.sparql.syntax.ElementTriplesBlock;
+import org.apache.jena.update.Update;
+import org.apache.jena.util.iterator.ExtendedIterator;
+
+/**
+ * Native graph rewriter for a single update operation of the BGP-only subset 
+ * of SPARQL Update. Circumvents the algebra and binding machinery of ARQ.
+ * 
+ * Supported are DELETE/INSERT ... WHERE operations without WITH/USING and 
+ * DELETE WHERE operations, if
+ * 	- all templates address the default graph
+ * 	- the WHERE clause only consists of plain triple patterns 
+ * 		(no FILTER, OPTIONAL, GRAPH, property paths etc.)
+ * 
+ * The triple patterns are ordered at compile time, most selective first, 
+ * and matched by backtracking over Graph.find(). As in SPARQL Update, all 
+ * solutions are materialized before the deletions and then the insertions 
+ * are applied. Template triples with unbound variables are skipped, blank 
+ * nodes in the INSERT template are created fresh for each solution. As in 
+ * ARQ, instantiated triples which are illegal as data (literal subject or 
+ * non-IRI predicate) are not inserted.
+ * 
+ * Instances are immutable and may be executed by multiple threads, 
+ * each on its own Graph.
+ * 
+ * @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
+ *
+ */
+public class CompiledUpdate {
+	
+	private static final int CONCRETE = -1;
+	
+	/**
+	 * A triple pattern or template. For each position either holds a 
+	 * concrete node or refers to a variable slot (or a blank node slot 
+	 * in case of templates).
+	 */
+	private static class Pattern {
+		private final Node[] nodes = new Node[3];
+		private final int[] slots = {CONCRETE, CONCRETE, CONCRETE};
+		private final boolean[] blank = new boolean[3];
+		
+		private Node resolve(int pos, Node[] binding) {
+			if (slots[pos] == CONCRETE) 
+				return nodes[pos];
+			return binding[slots[pos]];
+		}
+	}
+	
+	private final int varCount;
+	private final Pattern[] where;
+	private final Pattern[] delete;
+	private final Pattern[] insert;
+	private final int blankCount;
+	
+	private CompiledUpdate(int varCount, Pattern[] where, Pattern[] delete, Pattern[] insert, int blankCount) {
+		this.varCount = varCount;
+		this.where = where;
+		this.delete = delete;
+		this.insert = insert;
+		this.blankCount = blankCount;
+	}
+	
+	/**
+	 * Compile an update operation.
+	 * @param operation
+	 * @return the compiled rewriter or null if the operation is not supported.
+	 */
+	public static CompiledUpdate compile(Update operation) {
+		List<Triple> wherePatterns = new ArrayList<Triple>();
+		List<Triple> deleteTemplate = new ArrayList<Triple>();
+		List<Triple> insertTemplate = new ArrayList<Triple>();
+		if (operation instanceof UpdateModify) {
+			UpdateModify modify = (UpdateModify) operation;
+			if (modify.getWithIRI() != null || !modify.getUsing().isEmpty() || !modify.getUsingNamed().isEmpty())
+				return null;
+			if (!collect(modify.getWherePattern(), wherePatterns))
+				return null;
+			if (!collect(modify.getDeleteQuads(), deleteTemplate) || !collect(modify.getInsertQuads(), insertTemplate))
+				return null;
+			for (Triple t:deleteTemplate) {
+				if (t.getSubject().isBlank() || t.getObject().isBlank())
+					return null;
+			}
+		} else if (operation instanceof UpdateDeleteWhere) {
+			if (!collect(((UpdateDeleteWhere) operation).getQuads(), wherePatterns))
+				return null;
+			deleteTemplate.addAll(wherePatterns);
+		} else {
+			return null;
+		}
+		
+		Map<Node, Integer> vars = new HashMap<Node, Integer>();
+		Map<Node, Integer> blanks = new HashMap<Node, Integer>();
+		Pattern[] where = order(wherePatterns, vars);
+		Pattern[] delete = new Pattern[deleteTemplate.size()];
+		for (int i = 0; i < delete.length; i++) {
+			delete[i] = template(deleteTemplate.get(i), vars, blanks);
+		}
+		Pattern[] insert = new Pattern[insertTemplate.size()];
+		for (int i = 0; i < insert.length; i++) {
+			insert[i] = template(insertTemplate.get(i), vars, blanks);
+		}
+		return new CompiledUpdate(vars.size(), where, delete, insert, blanks.size());
+	}
+	
+	private static boolean collect(Element element, List<Triple> patterns) {
+		if (element instanceof ElementGroup) {
+			for (Element e:((ElementGroup) element).getElements()) {
+				if (!collect(e, patterns)) 
+					return false;
+			}
+			return true;
+		} else if (element instanceof ElementPathBlock) {
+			for (TriplePath tp:((ElementPathBlock) element).getPattern().getList()) {
+				if (!tp.isTriple()) 
+					return false;
+				patterns.add(tp.asTriple());
+			}
+			return true;
+		} else if (element instanceof ElementTriplesBlock) {
+			patterns.addAll(((ElementTriplesBlock) element).getPattern().getList());
+			return true;
+		}
+		return false;
+	}
+	
+	private static boolean collect(List<Quad> quads, List<Triple> templates) {
+		for (Quad quad:quads) {
+			if (!quad.isDefaultGraph())
+				return false;
+			templates.add(quad.asTriple());
+		}
+		return true;
+	}
+	
+	private static boolean isVariable(Node n) {
+		// blank nodes in patterns act as variables
+		return n.isVariable() || n.isBlank();
+	}
+	
+	/**
+	 * Orders the triple patterns greedily: the next pattern is always 
+	 * the one with the most concrete or already bound positions.
+	 * Assigns the variable slots in order of binding.
+	 */
+	private static Pattern[] order(List<Triple> patterns, Map<Node, Integer> vars) {
+		List<Triple> remaining = new ArrayList<Triple>(patterns);
+		Set<Node> bound = new HashSet<Node>();
+		Pattern[] result = new Pattern[patterns.size()];
+		for (int i = 0; i < result.length; i++) {
+			int best = 0;
+			int bestScore = -1;
+			for (int j = 0; j < remaining.size(); j++) {
+				int score = 0;
+				Triple t = remaining.get(j);
+				for (Node n:new Node[] {t.getSubject(), t.getPredicate(), t.getObject()}) {
+					if (!isVariable(n) || bound.contains(n)) 
+						score++;
+				}
+				if (score > bestScore) {
+					best = j;
+					bestScore = score;
+				}
+			}
+			Triple t = remaining.remove(best);
+			Pattern p = new Pattern();
+			Node[] nodes = {t.getSubject(), t.getPredicate(), t.getObject()};
+			for (int pos = 0; pos < 3; pos++) {
+				if (isVariable(nodes[pos])) {
+					Integer slot = vars.get(nodes[pos]);
+					if (slot == null) {
+						slot = vars.size();
+						vars.put(nodes[pos], slot);
+					}
+					p.slots[pos] = slot;
+					bound.add(nodes[pos]);
+				} else {
+					p.nodes[pos] = nodes[pos];
+				}
+			}
+			result[i] = p;
+		}
+		return result;
+	}
+	
+	private static Pattern template(Triple t, Map<Node, Integer> vars, Map<Node, Integer> blanks) {
+		Pattern p = new Pattern();
+		Node[] nodes = {t.getSubject(), t.getPredicate(), t.getObject()};
+		for (int pos = 0; pos < 3; pos++) {
+			if (nodes[pos].isBlank()) {
+				Integer slot = blanks.get(nodes[pos]);
+				if (slot == null) {
+					slot = blanks.size();
+					blanks.put(nodes[pos], slot);
+				}
+				p.slots[pos] = slot;
+				p.blank[pos] = true;
+			} else if (nodes[pos].isVariable()) {
+				// variables which do not occur in the WHERE clause remain unbound
+				Integer slot = vars.get(nodes[pos]);
+				if (slot == null) {
+					slot = vars.size();
+					vars.put(nodes[pos], slot);
+				}
+				p.slots[pos] = slot;
+			} else {
+				p.nodes[pos] = nodes[pos];
+			}
+		}
+		return p;
+	}
+	
+	/**
+	 * Executes the operation on the given graph.
+	 * @param graph the default graph of the segment.
+	 */
+	public void execute(Graph graph) {
+		List<Node[]> solutions = new ArrayList<Node[]>();
+		match(graph, 0, new Node[varCount], solutions);
+		if (solutions.isEmpty())
+			return;
+		
+		List<Triple> deletions = new ArrayList<Triple>();
+		List<Triple> insertions = new ArrayList<Triple>();
+		for (Node[] binding:solutions) {
+			for (Pattern p:delete) {
+				Triple t = instantiate(p, binding, null);
+				if (t != null) 
+					deletions.add(t);
+			}
+			Node[] blanks = (blankCount > 0) ? new Node[blankCount] : null;
+			for (Pattern p:insert) {
+				Triple t = instantiate(p, binding, blanks);
+				if (t != null && isLegalAsData(t)) 
+					insertions.add(t);
+			}
+		}
+		for (Triple t:deletions) {
+			graph.delete(t);
+		}
+		for (Triple t:insertions) {
+			graph.add(t);
+		}
+	}
+	
+	private void match(Graph graph, int depth, Node[] binding, List<Node[]> solutions) {
+		if (depth == where.length) {
+			solutions.add(binding.clone());
+			return;
+		}
+		Pattern p = where[depth];
+		Node s = p.resolve(0, binding);
+		Node pr = p.resolve(1, binding);
+		Node o = p.resolve(2, binding);
+		boolean[] newlyBound = new boolean[3];
+		ExtendedIterator<Triple> it = graph.find(
+				s == null ? Node.ANY : s, 
+				pr == null ? Node.ANY : pr, 
+				o == null ? Node.ANY : o);
+		try {
+			while (it.hasNext()) {
+				Triple t = it.next();
+				Node[] nodes = {t.getSubject(), t.getPredicate(), t.getObject()};
+				boolean matches = true;
+				for (int pos = 0; pos < 3 && matches; pos++) {
+					int slot = p.slots[pos];
+					if (slot == CONCRETE) 
+						continue;
+					if (binding[slot] == null) {
+						binding[slot] = nodes[pos];
+						newlyBound[pos] = true;
+					} else if (!binding[slot].equals(nodes[pos])) {
+						// repeated variable within the same pattern
+						matches = false;
+					}
+				}
+				if (matches) 
+					match(graph, depth + 1, binding, solutions);
+				for (int pos = 0; pos < 3; pos++) {
+					if (newlyBound[pos]) {
+						binding[p.slots[pos]] = null;
+						newlyBound[pos] = false;
+					}
+				}
+			}
+		} finally {
+			it.close();
+		}
+	}
+	
+	private static Triple instantiate(Pattern p, Node[] binding, Node[] blanks) {
+		Node[] nodes = new Node[3];
+		for (int pos = 0; pos < 3; pos++) {
+			if (p.slots[pos] == CONCRETE) {
+				nodes[pos] = p.nodes[pos];
+			} else if (p.blank[pos]) {
+				if (blanks[p.slots[pos]] == null)
+					blanks[p.slots[pos]] = NodeFactory.createBlankNode();
+				nodes[pos] = blanks[p.slots[pos]];
+			} else {
+				nodes[pos] = binding[p.slots[pos]];
+				if (nodes[pos] == null) 
+					return null;
+			}
+		}
+		return Triple.create(nodes[0], nodes[1], nodes[2]);
+	}
+	
+	// same restrictions as Quad.isLegalAsData() for the default graph
+	private static boolean isLegalAsData(Triple t) {
+		return !t.getSubject().isLiteral() && t.getPredicate().isURI();
+	}
+
+}
@@ -22,9 +22,9 @@ import org.acoli.fintan.core.FintanInputStream;
 import org.acoli.fintan.core.FintanOutputStream;
 import org.acoli.fintan.core.FintanStreamComponentFactory;
 import org.acoli.fintan.core.StreamRdfUpdater;
+import org.acoli.fintan.core.util.JenaUtils;
 import org.apache.commons.cli.ParseException;
 import org.apache.jena.rdf.model.Model;
-import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -96,7 +96,7 @@ public final class RDFStreamDuplicator extends StreamRdfUpdater implements Finta
 				Model model_in = getInputStream().read();
 				if (model_in == null) continue;
 				for (String name:listOutputStreamNames()) {
-					Model model_out = ModelFactory.createDefaultModel();
+					Model model_out = JenaUtils.createSegmentModel();
 					model_out.add(model_in);
 					getOutputStream(name).write(model_out);
 				}
@@ -31,29 +31,41 @@ import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.zip.GZIPInputStream;
 
 import org.acoli.fintan.core.FintanInputStream;
+import org.acoli.fintan.core.FintanScheduler;
+import org.acoli.fintan.core.ParallelStreamComponent;
 import org.acoli.fintan.core.StreamRdfUpdater;
+import org.acoli.fintan.core.metrics.FintanMetrics;
 import org.acoli.fintan.core.util.IOUtils;
+import org.acoli.fintan.core.util.JenaUtils;
 import org.apache.commons.cli.ParseException;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.ImmutableTriple;
 import org.apache.commons.lang3.tuple.MutableTriple;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.lang3.tuple.Triple;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.compose.Delta;
+import org.apache.jena.graph.compose.MultiUnion;
 import org.apache.jena.query.Dataset;
 import org.apache.jena.query.DatasetFactory;
 import org.apache.jena.query.QueryParseException;
 import org.apache.jena.rdf.listeners.ChangedListener;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
 import org.apache.jena.update.Update;
 import org.apache.jena.update.UpdateAction;
 import org.apache.jena.update.UpdateFactory;
@@ -66,7 +78,7 @@ import org.apache.logging.log4j.Logger;
  *  @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
  *  @author Christian Chiarcos {@literal chiarcos@informatik.uni-frankfurt.de}
  */
-public class RDFUpdater extends StreamRdfUpdater {
+public class RDFUpdater extends StreamRdfUpdater implements ParallelStreamComponent {
 	public static final Logger LOG = LogManager.getLogger(RDFUpdater.class);
 	public static final String DEFAULTUPDATENAME = "DIRECTUPDATE";
 	public static final int MAXITERATE = 999;
@@ -86,20 +98,45 @@ public class RDFUpdater extends StreamRdfUpdater {
 
 	//for updates
 	private final List<Triple<String, String, String>> updates = Collections.synchronizedList(new ArrayList<Triple<String, String, String>>());
+	// parsed once, shared read-only by all threads
+	private final List<UpdateRequest> parsedUpdates = Collections.synchronizedList(new ArrayList<UpdateRequest>());
+	//For indexed dispatch
+	private boolean indexedDispatch = false;
+	private final List<List<UpdateRequirements>> updateRequirements = Collections.synchronizedList(new ArrayList<List<UpdateRequirements>>());
+	private final LongAdder executedOperations = new LongAdder();
+	private final LongAdder skippedOperations = new LongAdder();
+	//For semi-naive evaluation, null for unsupported updates
+	private boolean semiNaive = false;
+	private final List<SemiNaiveUpdate> semiNaiveUpdates = Collections.synchronizedList(new ArrayList<SemiNaiveUpdate>());
+	//For compiled updates, null for operations executed by ARQ
+	private boolean compileUpdates = false;
+	private final List<List<CompiledUpdate>> compiledUpdates = Collections.synchronizedList(new ArrayList<List<CompiledUpdate>>());
+	//For caching segment results
+	private boolean cache = false;
+	private int cacheSize = SegmentCache.DEFAULT_SIZE;
+	private SegmentCache.Policy cachePolicy = SegmentCache.Policy.LRU;
+	private File cacheDirectory = null;
+	private SegmentCache segmentCache = null;
 	//For graphsout and triplesout
 	private final List<String> graphOutputSegments = Collections.synchronizedList(new ArrayList<String>());
 	private final List<String> triplesOutputSegments = Collections.synchronizedList(new ArrayList<String>());
 	private String triplesOutSegmentClass = "http://persistence.uni-leipzig.org/nlp2rdf/ontologies/nif-core#Sentence"; //defaults to CoNLL-RDF's nif:Sentence
+	//For profiling
+	private boolean profile = false;
+	private File profileFile = null;
+	private int profileSlowestSegments = UpdateProfiler.DEFAULT_SLOWEST_SEGMENTS;
+	private UpdateProfiler profiler = null;
 
 	// for thread handling
-	private boolean running = false;
+	private volatile boolean running = false;
 	private final List<UpdateThread> updateThreads = Collections.synchronizedList(new ArrayList<UpdateThread>());
 	// Buffer providing each thread with its respective segment(s) to process
 	// <List:lookbackBuffer>, <String:currentSegment>, <List:lookaheadBuffer>
 	private final List<Triple<List<Model>, Model, List<Model>>> segtBufferThreads = Collections.synchronizedList(new ArrayList<Triple<List<Model>, Model, List<Model>>>());
 
-	private final List<Model> segtBufferLookahead = Collections.synchronizedList(new ArrayList<Model>());
-	private final List<Model> segtBufferLookback = Collections.synchronizedList(new ArrayList<Model>());
+	// only accessed by the main thread. The UpdateThreads receive their own lists.
+	private final Deque<Model> segtBufferLookahead = new ArrayDeque<Model>();
+	private final Deque<Model> segtBufferLookback = new ArrayDeque<Model>();
 	// Buffer for outputting segments in original order
 	private final List<Pair<Integer, Model>> segtBufferOut = Collections.synchronizedList(new ArrayList<Pair<Integer, Model>>()); 
 
@@ -120,11 +157,28 @@ public class RDFUpdater extends StreamRdfUpdater {
 	
 	
 
-	private class UpdateThread extends Thread {
+	/**
+	 * Worker processing one segment at a time. Started on a worker thread of 
+	 * the FintanScheduler, whose state is exposed by getState().
+	 */
+	private class UpdateThread implements Runnable {
 		
 		private RDFUpdater updater;
 		private int threadID;
+		// null until started
+		private volatile Thread thread = null;
 		private Dataset memDataset;
+		// null unless indexedDispatch is active
+		private SegmentIndex segmentIndex = null;
+		// set while waiting for the next segment. Guarded by this.
+		// Thread.State.WAITING is ambiguous, the thread may also be blocked on a full output stream.
+		private volatile boolean idle = false;
+		// sliding window: the neighbouring segments are attached to the unions, not copied.
+		// Updates modifying the lookback or lookahead graph only modify the Deltas.
+		private final MultiUnion lookbackWindow = new MultiUnion();
+		private final MultiUnion lookaheadWindow = new MultiUnion();
+		private final Delta lookbackGraph = new Delta(lookbackWindow);
+		private final Delta lookaheadGraph = new Delta(lookaheadWindow);
 		
 		/**
 		 * Each UpdateThread receives its own ID and a back-reference to the calling Updater.
@@ -141,20 +195,43 @@ public class RDFUpdater extends StreamRdfUpdater {
 		public UpdateThread(RDFUpdater updater, int id) {
 			this.updater = updater;
 			threadID = id;
-			memDataset = DatasetFactory.create();
+			// links graphs instead of copying them. Required for the lookback and lookahead windows.
+			DatasetGraph dsg = DatasetGraphFactory.createGeneral();
+			dsg.setDefaultGraph(JenaUtils.createSegmentGraph());
+			memDataset = DatasetFactory.wrap(dsg);
 			Iterator<String> iter = updater.dataset.listNames();
 			while(iter.hasNext()) {
 				String graph = iter.next();
-				memDataset.addNamedModel(graph, updater.dataset.getNamedModel(graph));
+				// each thread works on its own copy
+				memDataset.addNamedModel(graph, ModelFactory.createDefaultModel().add(updater.dataset.getNamedModel(graph)));
+			}
+			memDataset.addNamedModel(LOOKBACK_GRAPH, ModelFactory.createModelForGraph(lookbackGraph));
+			memDataset.addNamedModel(LOOKAHEAD_GRAPH, ModelFactory.createModelForGraph(lookaheadGraph));
+			if (updater.semiNaive) 
+				memDataset.addNamedModel(SemiNaiveUpdate.DELTA_GRAPH, ModelFactory.createDefaultModel());
+			if (updater.indexedDispatch) {
+				segmentIndex = new SegmentIndex();
+				memDataset.getDefaultModel().getGraph().getEventManager().register(segmentIndex);
 			}
-			memDataset.addNamedModel(LOOKBACK_GRAPH, ModelFactory.createDefaultModel());
-			memDataset.addNamedModel(LOOKAHEAD_GRAPH, ModelFactory.createDefaultModel());
+		}
+		
+		/**
+		 * Start the update thread via the FintanScheduler.
+		 */
+		public void start() {
+			thread = FintanScheduler.startThread(this, "fintan-"+updater.getInstanceName()+"-update-"+threadID);
+		}
+		
+		public Thread.State getState() {
+			Thread t = thread;
+			return (t == null) ? Thread.State.NEW : t.getState();
 		}
 		
 		/**
 		 * Run the update thread.
 		 * Load the buffer, execute the updates with all iterations and graphsout, unload the buffer.
 		 */
+		@Override
 		public void run() {
 			while (updater.running) {
 				//Execute Thread
@@ -163,23 +240,35 @@ public class RDFUpdater extends StreamRdfUpdater {
 				LOG.trace("NOW Processing on thread "+threadID+": outputbuffersize "+segtBufferOut.size());
 				Triple<List<Model>, Model, List<Model>> segtBufferThread = segtBufferThreads.get(threadID);
 				try {
-					loadBuffer(segtBufferThread);
+					String cacheKey = null;
+					if (segmentCache != null) {
+						cacheKey = segmentCache.key(segtBufferThread.getLeft(), segtBufferThread.getMiddle(), segtBufferThread.getRight());
+						if (cacheKey == null)
+							segmentCache.bypass();
+						else
+							out = segmentCache.get(cacheKey);
+					}
+					if (out == null) {
+						loadBuffer(segtBufferThread);
 					
-					List<Pair<Integer,Long> > ret = executeUpdates(updates);
-					if (dRTs.get(threadID).isEmpty())
-						dRTs.get(threadID).addAll(ret);
-					else
-						for (int x = 0; x < ret.size(); ++x)
-							dRTs.get(threadID).set(x, new ImmutablePair<Integer, Long>(
-									dRTs.get(threadID).get(x).getKey() + ret.get(x).getKey(),
-									dRTs.get(threadID).get(x).getValue() + ret.get(x).getValue()));
+						List<Pair<Integer,Long> > ret = executeUpdates(updates);
+						if (dRTs.get(threadID).isEmpty())
+							dRTs.get(threadID).addAll(ret);
+						else
+							for (int x = 0; x < ret.size(); ++x)
+								dRTs.get(threadID).set(x, new ImmutablePair<Integer, Long>(
+										dRTs.get(threadID).get(x).getKey() + ret.get(x).getKey(),
+										dRTs.get(threadID).get(x).getValue() + ret.get(x).getValue()));
 					
-					out = unloadBuffer(segtBufferThread);
+						out = unloadBuffer(segtBufferThread);
+						if (cacheKey != null)
+							segmentCache.put(cacheKey, out);
+					}
 				} catch (Exception e) {
 //					memDataset.begin(ReadWrite.WRITE);
 					memDataset.getDefaultModel().removeAll();
-					memDataset.getNamedModel(LOOKBACK_GRAPH).removeAll();
-					memDataset.getNamedModel(LOOKAHEAD_GRAPH).removeAll();
+					detachWindow(lookbackWindow, lookbackGraph);
+					detachWindow(lookaheadWindow, lookaheadGraph);
 //					memDataset.commit();
 //					memDataset.end();
 
@@ -210,7 +299,9 @@ public class RDFUpdater extends StreamRdfUpdater {
 				try {
 					synchronized (this) {
 						LOG.trace("Waiting: "+threadID);
-						wait();
+						idle = true;
+						while (idle && updater.running)
+							wait();
 					}
 				} catch (InterruptedException e) {
 					LOG.error(e, e);
@@ -218,6 +309,20 @@ public class RDFUpdater extends StreamRdfUpdater {
 			}
 		}
 		
+		/**
+		 * Assigns the next segment, if this thread is waiting for one.
+		 * @return true if the segment has been assigned.
+		 */
+		private synchronized boolean assignSegment(Triple<List<Model>, Model, List<Model>> segtBufferThread) {
+			if (!idle) 
+				return false;
+			segtBufferThreads.set(threadID, segtBufferThread);
+			segtBufferOut.add(new ImmutablePair<Integer, Model>(threadID, null)); //add last segments to the end of the output queue.
+			idle = false;
+			notify();
+			return true;
+		}
+		
 		/**
 		 * Loads Data to this thread's working model.
 		 * @param buffer 
@@ -231,15 +336,18 @@ public class RDFUpdater extends StreamRdfUpdater {
 				
 				// for lookback
 				for (Model m:segtBufferThread.getLeft()) {
-					memDataset.getNamedModel(LOOKBACK_GRAPH).add(m);
+					lookbackWindow.addGraph(m.getGraph());
 				}
 				
 				// for current segment
+				// the segmentIndex is built by listening to the default model
+				if (segmentIndex != null)
+					segmentIndex.clear();
 				memDataset.getDefaultModel().add(segtBufferThread.getMiddle());
 
 				// for lookahead
 				for (Model segt:segtBufferThread.getRight()) {
-					memDataset.getNamedModel(LOOKAHEAD_GRAPH).add(segt);
+					lookaheadWindow.addGraph(segt.getGraph());
 				}
 				
 //				memDataset.commit();
@@ -265,7 +373,7 @@ public class RDFUpdater extends StreamRdfUpdater {
 		 * @throws Exception
 		 */
 		private Model unloadBuffer(Triple<List<Model>, Model, List<Model>> segtBufferThread) throws Exception { //TODO: adjust for TXN-Models
-			Model out = ModelFactory.createDefaultModel();
+			Model out = JenaUtils.createSegmentModel();
 //START		ARTIFACT for writing comments
 //			String buffer = segtBufferThread.getMiddle();
 			try {
@@ -283,14 +391,30 @@ public class RDFUpdater extends StreamRdfUpdater {
 			} finally {
 //				memDataset.begin(ReadWrite.WRITE);
 				memDataset.getDefaultModel().removeAll();
-				memDataset.getNamedModel(LOOKBACK_GRAPH).removeAll();
-				memDataset.getNamedModel(LOOKAHEAD_GRAPH).removeAll();
+				detachWindow(lookbackWindow, lookbackGraph);
+				detachWindow(lookaheadWindow, lookaheadGraph);
 //				memDataset.commit();
 //				memDataset.end();
 			}
 			return out;
 		}
 		
+		/**
+		 * Detaches all segments from a window and discards all modifications.
+		 * The segments themselves are never modified.
+		 */
+		private void detachWindow(MultiUnion window, Delta graph) {
+			// getSubGraphs() omits the base graph, which is the first one attached.
+			for (Graph g:new ArrayList<Graph>(window.getSubGraphs())) {
+				window.removeGraph(g);
+			}
+			Graph base = window.getBaseGraph();
+			if (base != null)
+				window.removeGraph(base);
+			graph.getAdditions().clear();
+			graph.getDeletions().clear();
+		}
+		
 		/**
 		 * Executes updates on this thread. Data must be preloaded first.
 		 * 
@@ -338,7 +462,10 @@ public class RDFUpdater extends StreamRdfUpdater {
 			int iter_id = 1;
 			for(Triple<String, String, String> update : updates) {
 				iter_id = 1;
-				Long startTime = System.currentTimeMillis();
+				UpdateRequest updateRequest = parsedUpdates.get(upd_id - 1);
+				List<UpdateRequirements> requirements = (segmentIndex != null) ? updateRequirements.get(upd_id - 1) : null;
+				List<CompiledUpdate> compiled = compileUpdates ? compiledUpdates.get(upd_id - 1) : null;
+				long startTime = System.nanoTime();
 				Model defaultModel = memDataset.getDefaultModel();
 				ChangedListener cL = new ChangedListener();
 				defaultModel.register(cL);
@@ -351,22 +478,53 @@ public class RDFUpdater extends StreamRdfUpdater {
 					if (!"*".equals(update.getRight()))
 						throw e;
 				}
+				if (requirements != null && !canMatchAny(requirements)) {
+					//no operation can match the current segment
+					skippedOperations.add(requirements.size());
+					change = false;
+				}
+				SemiNaiveUpdate semiNaiveUpdate = (semiNaive && !graphsout && !triplesout) ? semiNaiveUpdates.get(upd_id - 1) : null;
+				if (change && semiNaiveUpdate != null) {
+					try {
+						v = semiNaiveUpdate.execute(memDataset, frq);
+					} catch (Exception e) {
+						LOG.error("Error while processing update No. "+upd_id+": "+update.getLeft());
+						LOG.error(e, e);
+					}
+					change = false;
+				}
 				while(v < frq && change) {
 					try {
-						UpdateRequest updateRequest;
-						updateRequest = UpdateFactory.create(update.getMiddle());
-						if (graphsout || triplesout) { //execute Update-block step by step and output intermediate results
+						if (graphsout || triplesout || profiler != null || requirements != null || compiled != null) { //execute Update-block step by step and output intermediate results, profile, skip or compile operations
 							int step = 1;
 							Model dM = memDataset.getDefaultModel();
-							String dMS = dM.toString();
-							ChangedListener cLdM = new ChangedListener();
-							dM.register(cLdM);
+							String dMS = null;
+							ChangedListener cLdM = null;
+							if (graphsout || triplesout) {
+								dMS = dM.toString();
+								cLdM = new ChangedListener();
+								dM.register(cLdM);
+							}
 							for(Update operation : updateRequest.getOperations()) {
+								if (requirements != null) {
+									if (!requirements.get(step - 1).canMatch(segmentIndex)) {
+										skippedOperations.increment();
+										step++;
+										continue;
+									}
+									executedOperations.increment();
+								}
 								//							memDataset.begin(ReadWrite.WRITE);
-								UpdateAction.execute(operation, memDataset);
+								long opStartTime = System.nanoTime();
+								if (compiled != null && compiled.get(step - 1) != null)
+									compiled.get(step - 1).execute(memDataset.getDefaultModel().getGraph());
+								else
+									UpdateAction.execute(operation, memDataset);
+								if (profiler != null)
+									profiler.recordOperation(upd_id - 1, step - 1, System.nanoTime() - opStartTime);
 								//							memDataset.commit();
 								//							memDataset.end();
-								if (cLdM.hasChanged() && (!dMS.equals(memDataset.getDefaultModel().toString()))) {
+								if ((graphsout || triplesout) && cLdM.hasChanged() && (!dMS.equals(memDataset.getDefaultModel().toString()))) {
 									if (graphsout) try {
 										produceDot(defaultModel, update.getLeft(), operation.toString(), segt, upd_id, iter_id, step);
 									} catch (IOException e) {
@@ -382,6 +540,8 @@ public class RDFUpdater extends StreamRdfUpdater {
 								}
 								step++;
 							}
+							if (cLdM != null)
+								dM.unregister(cLdM);
 						} else { //execute updates en bloc
 							//						memDataset.begin(ReadWrite.WRITE);
 							UpdateAction.execute(updateRequest, memDataset); //REMOVE THE PARAMETERS segt_id, upd_id, iter_id to use deshoe's original file names
@@ -408,13 +568,36 @@ public class RDFUpdater extends StreamRdfUpdater {
 				}
 				if (v == MAXITERATE)
 					LOG.warn("Warning: MAXITERATE reached for " + update.getLeft() + ".");
-				result.add(new ImmutablePair<Integer, Long>(v, System.currentTimeMillis() - startTime));
+				long duration = System.nanoTime() - startTime;
+				if (profiler != null) {
+					String segtID = null;
+					if (profiler.isSlowest(upd_id - 1, duration)) {
+						try {
+							segtID = readFirstSegmentID(memDataset.getDefaultModel());
+						} catch (Exception e) {
+							segtID = "none";
+						}
+					}
+					profiler.recordUpdate(upd_id - 1, duration, v, segtID);
+				}
+				result.add(new ImmutablePair<Integer, Long>(v, duration / 1000000));
 				defaultModel.unregister(cL);
 				upd_id++;
 			}			
 			return result;
 		}
 		
+		/**
+		 * @return true if at least one operation of an update may match the current segment.
+		 */
+		private boolean canMatchAny(List<UpdateRequirements> requirements) {
+			for (UpdateRequirements r:requirements) {
+				if (r.canMatch(segmentIndex)) 
+					return true;
+			}
+			return false;
+		}
+		
 		/**
 		 * Produce dotFile for a specific update iteration.
 		 * 
@@ -517,7 +700,7 @@ public class RDFUpdater extends StreamRdfUpdater {
 	 * 				path to database (only for TDB2 or other DB-backed modes)
 	 * @param threads
 	 * 				Maximum amount of threads for execution.
-	 * 				default: threads = number of logical cores available to runtime
+	 * 				default: threads = share of the FintanScheduler's thread budget
 	 */
 	public RDFUpdater(String type, String path, int threads) {
 		if (type.equals("TDB2")) {
@@ -535,9 +718,11 @@ public class RDFUpdater extends StreamRdfUpdater {
 		running = false;
 	}
 
+	@Override
 	public void setThreads(int threads) {
 		this.threads = threads;
 	}
+	@Override
 	public int getThreads() {
 		return threads;
 	}
@@ -578,6 +763,14 @@ public class RDFUpdater extends StreamRdfUpdater {
 		return lookback_sgts;
 	}
 
+	/**
+	 * The lookback and lookahead windows would be incomplete after resuming.
+	 */
+	@Override
+	public boolean supportsCheckpointing() {
+		return lookback_sgts == 0 && lookahead_sgts == 0;
+	}
+
 	/**
 	 * Activates the graphsout mode for single graphviz .dot files per execution step.
 	 * @param dir
@@ -650,6 +843,115 @@ public class RDFUpdater extends StreamRdfUpdater {
 		return triplesOutputSegments.toArray(new String[triplesOutputSegments.size()]);
 	}
 
+	/**
+	 * Activates the profiling mode. Records latency histograms per update and 
+	 * per operation, iteration counts and the slowest segments. 
+	 * The report is logged on termination.
+	 * 
+	 * Profiling executes the operations of each update one by one.
+	 * 
+	 * @param file
+	 * 			optional JSON file for the final report, may be null.
+	 * @param slowestSegments
+	 * 			number of slowest segments to be retained per update.
+	 */
+	public void activateProfiler(String file, int slowestSegments) {
+		profile = true;
+		profileFile = (file == null || file.isEmpty()) ? null : new File(file);
+		profileSlowestSegments = slowestSegments;
+	}
+	public boolean isProfiling() {
+		return profile;
+	}
+	/**
+	 * @return the profiler, available while running in profiling mode.
+	 */
+	public UpdateProfiler getProfiler() {
+		return profiler;
+	}
+
+	/**
+	 * Activates the indexed dispatch. Each thread indexes the predicates and 
+	 * rdf:type classes of the current segment. Update operations requiring 
+	 * predicates or classes absent from the segment are skipped. 
+	 * See UpdateRequirements for the static analysis of the updates.
+	 * 
+	 * Indexed dispatch executes the operations of each update one by one.
+	 */
+	public void activateIndexedDispatch() {
+		indexedDispatch = true;
+	}
+	public boolean isIndexedDispatch() {
+		return indexedDispatch;
+	}
+
+	/**
+	 * Activates semi-naive evaluation for iterated, monotonic INSERT-only updates. 
+	 * After the first iteration, each iteration only evaluates matches using at 
+	 * least one triple added in the preceding iteration. 
+	 * See SemiNaiveUpdate for the supported subset of SPARQL Update. 
+	 * Unsupported updates, as well as segments in graphsout or triplesout mode, 
+	 * are evaluated as usual.
+	 */
+	public void activateSemiNaive() {
+		semiNaive = true;
+	}
+	public boolean isSemiNaive() {
+		return semiNaive;
+	}
+
+	/**
+	 * Activates native execution of simple update operations. 
+	 * DELETE/INSERT WHERE and DELETE WHERE operations on the default graph 
+	 * with a WHERE clause consisting only of triple patterns are matched 
+	 * directly on the segment graph instead of being executed by ARQ. 
+	 * See CompiledUpdate for details. 
+	 * 
+	 * Compiled updates execute the operations of each update one by one.
+	 */
+	public void activateCompileUpdates() {
+		compileUpdates = true;
+	}
+	public boolean isCompileUpdates() {
+		return compileUpdates;
+	}
+
+	/**
+	 * Activates the segment cache. Results are cached by a canonical hash of 
+	 * the segment, its lookback and lookahead segments and a fingerprint of 
+	 * the updates. Segments with identical content are then not processed again.
+	 * 
+	 * The cache is not used, if any update contains nondeterministic functions 
+	 * (RAND, NOW, UUID, STRUUID, BNODE), if any update writes to named graphs, 
+	 * since they persist across segments, or in graphsout or triplesout mode. 
+	 * Segments and results with blank nodes are never cached.
+	 * 
+	 * @param size
+	 * 			maximum number of results held in memory
+	 * @param policy
+	 * 			eviction policy: LRU or LFU
+	 * @param directory
+	 * 			optional directory for persisting results across runs, may be null.
+	 */
+	public void activateSegmentCache(int size, String policy, String directory) {
+		activateSegmentCache(size, SegmentCache.Policy.valueOf(policy.toUpperCase()), directory);
+	}
+	public void activateSegmentCache(int size, SegmentCache.Policy policy, String directory) {
+		cache = true;
+		cacheSize = size;
+		cachePolicy = policy;
+		cacheDirectory = (directory == null || directory.isEmpty()) ? null : new File(directory);
+	}
+	public boolean isSegmentCache() {
+		return cache;
+	}
+	/**
+	 * @return the segment cache, available while running with activated cache.
+	 */
+	public SegmentCache getSegmentCache() {
+		return segmentCache;
+	}
+
 	/**
 	 * Instruct the Updater to remove duplicates of RDF prefixes, to avoid issues with segmented data using a single prefix header.
 	 */
@@ -702,6 +1004,11 @@ public class RDFUpdater extends StreamRdfUpdater {
 	 */
 	public void parseUpdates(List<Triple<String, String, String>> updatesRaw) throws IOException, ParseException {
 		updates.clear();
+		parsedUpdates.clear();
+		updateRequirements.clear();
+		semiNaiveUpdates.clear();
+		compiledUpdates.clear();
+		final List<UpdateRequest> parsedOut = new ArrayList<UpdateRequest>(updatesRaw.size());
 		final List<Triple<String, String, String>> updatesOut = new ArrayList<Triple<String, String, String>>(updatesRaw.size());
 
 		int updateNo = 0;
@@ -736,8 +1043,7 @@ public class RDFUpdater extends StreamRdfUpdater {
 			}
 
 			try {
-				@SuppressWarnings("unused")
-				UpdateRequest qexec = UpdateFactory.create(updateScript);
+				parsedOut.add(UpdateFactory.create(updateScript));
 			} catch (QueryParseException e) {
 				LOG.error("Failed to parse argument as sparql");
 				// if update looks like a file, but can't be found (=> DEFAUTUPDATENAME has been set by runtime "==", not "equals()")
@@ -752,6 +1058,21 @@ public class RDFUpdater extends StreamRdfUpdater {
 			LOG.debug("Update parsed ok");
 		}
 		updates.addAll(Collections.synchronizedList(updatesOut));
+		parsedUpdates.addAll(parsedOut);
+		for (UpdateRequest request:parsedOut) {
+			List<UpdateRequirements> requirements = new ArrayList<UpdateRequirements>();
+			List<CompiledUpdate> compiled = new ArrayList<CompiledUpdate>();
+			for (Update operation:request.getOperations()) {
+				requirements.add(UpdateRequirements.analyze(operation));
+				compiled.add(CompiledUpdate.compile(operation));
+			}
+			compiledUpdates.add(compiled);
+			updateRequirements.add(requirements);
+			LOG.debug("Requirements for indexed dispatch: "+requirements);
+			SemiNaiveUpdate semiNaiveUpdate = SemiNaiveUpdate.compile(request);
+			semiNaiveUpdates.add(semiNaiveUpdate);
+			LOG.debug("Supports semi-naive evaluation: "+(semiNaiveUpdate != null));
+		}
 	}
 
 	/**
@@ -822,6 +1143,16 @@ public class RDFUpdater extends StreamRdfUpdater {
 			}
 		}
 		initThreads();
+		initProfiler();
+		initSegmentCache();
+		if (compileUpdates) {
+			int operations = 0, compiled = 0;
+			for (List<CompiledUpdate> c:compiledUpdates) {
+				operations += c.size();
+				compiled += c.size() - Collections.frequency(c, null);
+			}
+			LOG.info("Compiled "+compiled+" of "+operations+" update operations.");
+		}
 		running = true;
 
 		
@@ -851,13 +1182,13 @@ public class RDFUpdater extends StreamRdfUpdater {
 					//READY TO PROCESS 
 					// remove first segment from buffer and process it.
 					// !!if lookahead = 0 then only current buffer is in segtBufferLookahead!!
-					executeThread(segtBufferLookahead.remove(0));
+					executeThread(segtBufferLookahead.removeFirst());
 				}		
 				
 				//lookback
 				//needs to consider lookahead buffer. The full buffer size needs to be lookahead + lookback.
 				if (lookback_sgts > 0) {
-					while (segtBufferLookback.size() >= lookback_sgts + segtBufferLookahead.size()) segtBufferLookback.remove(0);
+					while (segtBufferLookback.size() >= lookback_sgts + segtBufferLookahead.size()) segtBufferLookback.removeFirst();
 					segtBufferLookback.add(buffer);
 				}
 
@@ -871,9 +1202,9 @@ public class RDFUpdater extends StreamRdfUpdater {
 
 		// LOOKAHEAD work down remaining buffer
 		while (segtBufferLookahead.size()>0) {
-			executeThread(segtBufferLookahead.remove(0));
+			executeThread(segtBufferLookahead.removeFirst());
 			if (lookback_sgts > 0) {
-				while (segtBufferLookback.size() >= lookback_sgts + segtBufferLookahead.size()) segtBufferLookback.remove(0);
+				while (segtBufferLookback.size() >= lookback_sgts + segtBufferLookahead.size()) segtBufferLookback.removeFirst();
 			}
 		}
 			
@@ -884,7 +1215,7 @@ public class RDFUpdater extends StreamRdfUpdater {
 			threadsRunning = false;
 			for (UpdateThread t:updateThreads) {
 				if (t != null)
-				if (t.getState() == Thread.State.RUNNABLE || t.getState() == Thread.State.BLOCKED) {
+				if (!t.idle && t.getState() != Thread.State.TERMINATED) {
 					threadsRunning = true;
 				}
 			}
@@ -922,10 +1253,18 @@ public class RDFUpdater extends StreamRdfUpdater {
 		}
 		if (!dRTs_sum.isEmpty())
 			LOG.debug("Done - List of iterations and execution times for the updates done (in given order):\n\t\t" + dRTs_sum.toString());
+		if (profiler != null)
+			profiler.report(profileFile);
+		if (segmentCache != null)
+			LOG.info(segmentCache.summary());
+		if (indexedDispatch)
+			LOG.info("Indexed dispatch skipped "+skippedOperations.sum()+" of "
+					+(skippedOperations.sum()+executedOperations.sum())+" update operations.");
 
 		//final flush
 		flushOutputBuffer();
 		getOutputStream().terminate();
+		FintanScheduler.releaseWorkers(this);
 		
 	}
 
@@ -940,12 +1279,51 @@ public class RDFUpdater extends StreamRdfUpdater {
 		return segtID;
 	}
 
+	private void initProfiler() {
+		if (!profile) 
+			return;
+		profiler = new UpdateProfiler(getInstanceName(), profileSlowestSegments);
+		for (int i = 0; i < updates.size(); i++) {
+			List<String> operations = new ArrayList<String>();
+			for (Update operation:parsedUpdates.get(i).getOperations()) {
+				operations.add(operation.toString());
+			}
+			profiler.addUpdate(updates.get(i).getLeft(), operations);
+		}
+		FintanMetrics.registerSource(profiler);
+	}
+
+	private void initSegmentCache() throws IOException {
+		if (!cache)
+			return;
+		if (graphOutputDir != null || triplesOutputDir != null) {
+			LOG.warn("Segment cache is not used in graphsout or triplesout mode.");
+			return;
+		}
+		for (Triple<String, String, String> update:updates) {
+			if (!SegmentCache.isDeterministic(update.getMiddle())) {
+				LOG.warn("Segment cache is not used, since update "+update.getLeft()+" is not deterministic.");
+				return;
+			}
+		}
+		for (int i = 0; i < updates.size(); i++) {
+			if (SegmentCache.writesNamedGraphs(parsedUpdates.get(i))) {
+				LOG.warn("Segment cache is not used, since update "+updates.get(i).getLeft()+" writes to named graphs.");
+				return;
+			}
+		}
+		segmentCache = new SegmentCache(getInstanceName(), cacheSize, cachePolicy, cacheDirectory, 
+				SegmentCache.fingerprint(updates, dataset, lookback_sgts, lookahead_sgts));
+		FintanMetrics.registerSource(segmentCache);
+	}
+
 	private void initThreads() {
-		// Use the processor cores available to runtime (but at least 1) as thread count, if an invalid thread count is provided.
+		// Request workers from the pipeline's thread budget (but at least 1). 
+		// If no valid thread count is provided, all unallocated workers are granted.
 		if (threads <= 0) {
-			threads = (Runtime.getRuntime().availableProcessors()>0)?(Runtime.getRuntime().availableProcessors()):(1);
 			LOG.info("Falling back to default thread maximum.");
 		}
+		threads = FintanScheduler.requestWorkers(this, threads);
 		LOG.info("Executing on "+threads+" processor cores, max.");
 		for (int i = 0; i < threads; i++) {
 			updateThreads.add(null);
@@ -977,8 +1355,9 @@ public class RDFUpdater extends StreamRdfUpdater {
 		//segtBufferLookback only needs to be filled up to the current segment.
 		//All other segments are for further lookahead iterations
 //		segtBufferThread.getLeft().addAll(segtBufferLookback);
+		Iterator<Model> lookback = segtBufferLookback.iterator();
 		for (int i = 0; i < segtBufferLookback.size() - segtBufferLookahead.size(); i++) {
-			segtBufferThread.getLeft().add(segtBufferLookback.get(i));
+			segtBufferThread.getLeft().add(lookback.next());
 		}
 		segtBufferThread.setMiddle(buffer);
 		segtBufferThread.getRight().addAll(segtBufferLookahead);
@@ -995,12 +1374,7 @@ public class RDFUpdater extends StreamRdfUpdater {
 				LOG.trace("OutBufferSize: "+segtBufferOut.size());
 				break;
 			} else 
-				if (updateThreads.get(i).getState() == Thread.State.WAITING) {
-				synchronized(updateThreads.get(i)) {
-				segtBufferThreads.set(i, segtBufferThread);
-				segtBufferOut.add(new ImmutablePair<Integer, Model>(i, null)); //add last segments to the end of the output queue.
-				updateThreads.get(i).notify();
-				}
+				if (updateThreads.get(i).assignSegment(segtBufferThread)) {
 				LOG.trace("wake up "+i);
 				break;
 			} else 
@@ -74,6 +74,62 @@ public class RDFUpdaterFactory implements FintanStreamComponentFactory {
 			}
 		}
 
+		// READ PROFILER PARAMETERS
+		if (conf.hasNonNull("profile")) {
+			JsonNode profile = conf.get("profile");
+			if (profile.isObject()) {
+				String file = null;
+				if (profile.hasNonNull("file"))
+					file = profile.get("file").asText();
+				int slowest = UpdateProfiler.DEFAULT_SLOWEST_SEGMENTS;
+				if (profile.hasNonNull("slowest"))
+					slowest = profile.get("slowest").asInt(slowest);
+				updater.activateProfiler(file, slowest);
+			} else if (profile.asBoolean(false)) {
+				updater.activateProfiler(null, UpdateProfiler.DEFAULT_SLOWEST_SEGMENTS);
+			}
+		}
+
+		// READ INDEXED DISPATCH PARAMETERS
+		if (conf.hasNonNull("indexedDispatch") && conf.get("indexedDispatch").asBoolean(false)) {
+			updater.activateIndexedDispatch();
+		}
+
+		// READ SEMI-NAIVE PARAMETERS
+		if (conf.hasNonNull("semiNaive") && conf.get("semiNaive").asBoolean(false)) {
+			updater.activateSemiNaive();
+		}
+
+		// READ COMPILER PARAMETERS
+		if (conf.hasNonNull("compileUpdates") && conf.get("compileUpdates").asBoolean(false)) {
+			updater.activateCompileUpdates();
+		}
+
+		// READ SEGMENT CACHE PARAMETERS
+		if (conf.hasNonNull("segmentCache")) {
+			JsonNode cache = conf.get("segmentCache");
+			if (cache.isObject()) {
+				int size = SegmentCache.DEFAULT_SIZE;
+				if (cache.hasNonNull("size"))
+					size = cache.get("size").asInt(size);
+				SegmentCache.Policy policy = SegmentCache.Policy.LRU;
+				if (cache.hasNonNull("policy")) {
+					String name = cache.get("policy").asText();
+					try {
+						policy = SegmentCache.Policy.valueOf(name.toUpperCase());
+					} catch (IllegalArgumentException e) {
+						throw new IllegalArgumentException("Unsupported segmentCache policy: "+name+". Use LRU or LFU.", e);
+					}
+				}
+				String directory = null;
+				if (cache.hasNonNull("directory"))
+					directory = cache.get("directory").asText();
+				updater.activateSegmentCache(size, policy, directory);
+			} else if (cache.asBoolean(false)) {
+				updater.activateSegmentCache(SegmentCache.DEFAULT_SIZE, "LRU", null);
+			}
+		}
+
 		// READ LOOKAHEAD PARAMETERS
 		if (conf.get("lookahead") != null) {
 			int lookahead_snts = conf.get("lookahead").asInt(0);
@@ -0,0 +1,463 @@
+/*
+ * Copyright [2021] [ACoLi Lab, Prof. Dr. Chiarcos, Christian Faeth, Goethe University Frankfurt]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.acoli.fintan.rdf;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import org.acoli.fintan.core.metrics.MetricsSource;
+import org.acoli.fintan.core.util.JenaUtils;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.GraphUtil;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.out.NodeFmtLib;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.modify.request.UpdateAdd;
+import org.apache.jena.sparql.modify.request.UpdateBinaryOp;
+import org.apache.jena.sparql.modify.request.UpdateData;
+import org.apache.jena.sparql.modify.request.UpdateDeleteWhere;
+import org.apache.jena.sparql.modify.request.UpdateDropClear;
+import org.apache.jena.sparql.modify.request.UpdateLoad;
+import org.apache.jena.sparql.modify.request.UpdateModify;
+import org.apache.jena.update.Update;
+import org.apache.jena.update.UpdateRequest;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Cache for the results of an RDFUpdater, keyed by a canonical hash of the 
+ * input segment, its lookback and lookahead segments and a fingerprint of 
+ * the updates and named graphs.
+ * 
+ * The canonical form of a graph is its sorted N-Triples serialization. Since 
+ * blank nodes have no canonical labels, segments containing blank nodes are 
+ * not cached, neither are results containing blank nodes.
+ * 
+ * The in-memory cache is bounded by the number of entries and evicts either 
+ * the least recently used (LRU) or least frequently used (LFU) entry. 
+ * Optionally, all results are also stored as N-Triples files in a directory, 
+ * which is consulted on misses and may be reused by subsequent runs.
+ * The directory is not bounded.
+ * 
+ * Thread-safe. Shared by all UpdateThreads of an RDFUpdater.
+ * 
+ * @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
+ *
+ */
+public class SegmentCache implements MetricsSource {
+	
+	protected static final Logger LOG = LogManager.getLogger(SegmentCache.class.getName());
+	
+	public static final int DEFAULT_SIZE = 10000;
+	
+	public enum Policy { LRU, LFU }
+	
+	// SPARQL functions yielding different results on each call
+	private static final Pattern NONDETERMINISTIC = Pattern.compile(
+			"\\b(RAND|NOW|UUID|STRUUID|BNODE)\\s*\\(", Pattern.CASE_INSENSITIVE);
+	
+	private static final BigInteger MOD_256 = BigInteger.ONE.shiftLeft(256);
+	
+	private final String name;
+	private final int size;
+	private final Policy policy;
+	private final File directory;
+	private final String fingerprint;
+	
+	// LRU: access ordered. LFU: insertion ordered, see buckets.
+	private final LinkedHashMap<String, Triple[]> entries;
+	// LFU only: frequency per key and keys per frequency in order of insertion
+	private final Map<String, Integer> frequencies = new HashMap<String, Integer>();
+	private final Map<Integer, LinkedHashSet<String>> buckets = new HashMap<Integer, LinkedHashSet<String>>();
+	private int minFrequency = 0;
+	
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder diskHits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder bypassed = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	
+	/**
+	 * @param name for reporting
+	 * @param size maximum number of entries held in memory
+	 * @param policy eviction policy
+	 * @param directory optional directory for persisting the results, may be null
+	 * @param fingerprint fingerprint of the updates, see fingerprint()
+	 * @throws IOException if the directory can not be created
+	 */
+	public SegmentCache(String name, int size, Policy policy, File directory, String fingerprint) throws IOException {
+		this.name = name;
+		this.size = Math.max(1, size);
+		this.policy = policy;
+		this.directory = directory;
+		this.fingerprint = fingerprint;
+		this.entries = new LinkedHashMap<String, Triple[]>(16, 0.75f, policy == Policy.LRU);
+		if (directory != null && !directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Failed to create segment cache directory: "+directory);
+	}
+	
+	/**
+	 * @return false if the update contains functions with nondeterministic results.
+	 */
+	public static boolean isDeterministic(String update) {
+		return !NONDETERMINISTIC.matcher(update).find();
+	}
+	
+	/**
+	 * Named graphs are part of the dataset of each UpdateThread and persist 
+	 * across segments. An update writing to them would make the result of a 
+	 * segment depend on all previously processed segments.
+	 * @return true if any operation of the request may write to a named graph.
+	 */
+	public static boolean writesNamedGraphs(UpdateRequest request) {
+		for (Update operation:request.getOperations()) {
+			if (writesNamedGraphs(operation))
+				return true;
+		}
+		return false;
+	}
+	
+	private static boolean writesNamedGraphs(Update operation) {
+		if (operation instanceof UpdateModify) {
+			UpdateModify modify = (UpdateModify) operation;
+			return modify.getWithIRI() != null 
+					|| !isDefaultGraph(modify.getDeleteQuads()) 
+					|| !isDefaultGraph(modify.getInsertQuads());
+		} else if (operation instanceof UpdateDeleteWhere) {
+			return !isDefaultGraph(((UpdateDeleteWhere) operation).getQuads());
+		} else if (operation instanceof UpdateData) {
+			return !isDefaultGraph(((UpdateData) operation).getQuads());
+		} else if (operation instanceof UpdateLoad) {
+			return ((UpdateLoad) operation).getDest() != null;
+		} else if (operation instanceof UpdateDropClear) {
+			return !((UpdateDropClear) operation).isDefault();
+		} else if (operation instanceof UpdateBinaryOp) {
+			UpdateBinaryOp op = (UpdateBinaryOp) operation;
+			// MOVE and COPY also empty or replace their source
+			return !op.getDest().isDefault() 
+					|| (!(op instanceof UpdateAdd) && !op.getSrc().isDefault());
+		}
+		// CREATE and unknown operations
+		return true;
+	}
+	
+	private static boolean isDefaultGraph(List<Quad> quads) {
+		for (Quad quad:quads) {
+			if (!quad.isDefaultGraph())
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Fingerprint of everything besides the segments influencing the result: 
+	 * the updates with their iterations, the window size and the content of 
+	 * the named graphs.
+	 * 
+	 * Named graphs are hashed order-independently without sorting, since they 
+	 * may be large: the SHA-256 digests of their triples are summed modulo 2^256.
+	 */
+	public static String fingerprint(List<org.apache.commons.lang3.tuple.Triple<String, String, String>> updates, 
+			Dataset dataset, int lookback, int lookahead) {
+		MessageDigest digest = sha256();
+		for (org.apache.commons.lang3.tuple.Triple<String, String, String> update:updates) {
+			update(digest, "update\n"+update.getMiddle()+"\niter "+update.getRight()+"\n");
+		}
+		update(digest, "lookback "+lookback+"\nlookahead "+lookahead+"\n");
+		List<String> graphs = new ArrayList<String>();
+		Iterator<String> iter = dataset.listNames();
+		while (iter.hasNext()) 
+			graphs.add(iter.next());
+		Collections.sort(graphs);
+		for (String graph:graphs) {
+			BigInteger sum = BigInteger.ZERO;
+			long count = 0;
+			MessageDigest tripleDigest = sha256();
+			ExtendedIterator<Triple> it = dataset.getNamedModel(graph).getGraph().find();
+			try {
+				while (it.hasNext()) {
+					update(tripleDigest, str(it.next()));
+					sum = sum.add(new BigInteger(1, tripleDigest.digest()));
+					count++;
+				}
+			} finally {
+				it.close();
+			}
+			update(digest, "graph "+graph+" "+count+" "+sum.mod(MOD_256).toString(16)+"\n");
+		}
+		return hex(digest.digest());
+	}
+	
+	/**
+	 * Computes the cache key of a segment with its context.
+	 * @return the key or null if any of the graphs contains blank nodes.
+	 */
+	public String key(List<Model> lookback, Model segment, List<Model> lookahead) {
+		MessageDigest digest = sha256();
+		update(digest, fingerprint+"\n");
+		for (Model m:lookback) {
+			update(digest, "lookback\n");
+			if (!update(digest, m.getGraph())) 
+				return null;
+		}
+		update(digest, "segment\n");
+		if (!update(digest, segment.getGraph())) 
+			return null;
+		for (Model m:lookahead) {
+			update(digest, "lookahead\n");
+			if (!update(digest, m.getGraph())) 
+				return null;
+		}
+		return hex(digest.digest());
+	}
+	
+	private static boolean update(MessageDigest digest, Graph graph) {
+		List<String> lines = new ArrayList<String>(graph.size());
+		ExtendedIterator<Triple> it = graph.find();
+		try {
+			while (it.hasNext()) {
+				Triple t = it.next();
+				if (t.getSubject().isBlank() || t.getObject().isBlank()) 
+					return false;
+				lines.add(str(t));
+			}
+		} finally {
+			it.close();
+		}
+		Collections.sort(lines);
+		for (String line:lines) {
+			update(digest, line);
+			update(digest, "\n");
+		}
+		return true;
+	}
+	
+	private static String str(Triple t) {
+		return NodeFmtLib.str(t.getSubject())+" "+NodeFmtLib.str(t.getPredicate())+" "+NodeFmtLib.str(t.getObject());
+	}
+	
+	private static void update(MessageDigest digest, String s) {
+		digest.update(s.getBytes(StandardCharsets.UTF_8));
+	}
+	
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	private static String hex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (byte b:bytes) 
+			sb.append(String.format("%02x", b));
+		return sb.toString();
+	}
+	
+	/**
+	 * Count a segment which could not be cached.
+	 */
+	public void bypass() {
+		bypassed.increment();
+	}
+	
+	/**
+	 * @param key
+	 * @return a new Model with the cached result or null.
+	 */
+	public Model get(String key) {
+		Triple[] triples;
+		synchronized (this) {
+			triples = entries.get(key);
+			if (triples != null && policy == Policy.LFU)
+				touch(key);
+		}
+		if (triples == null && directory != null) {
+			triples = read(key);
+			if (triples != null) {
+				diskHits.increment();
+				synchronized (this) {
+					store(key, triples);
+				}
+			}
+		}
+		if (triples == null) {
+			misses.increment();
+			return null;
+		}
+		hits.increment();
+		Model m = JenaUtils.createSegmentModel();
+		GraphUtil.add(m.getGraph(), triples);
+		return m;
+	}
+	
+	/**
+	 * Cache the result for a key. Results containing blank nodes are not cached.
+	 * @param key
+	 * @param result
+	 */
+	public void put(String key, Model result) {
+		List<Triple> triples = new ArrayList<Triple>();
+		ExtendedIterator<Triple> it = result.getGraph().find();
+		try {
+			while (it.hasNext()) {
+				Triple t = it.next();
+				if (t.getSubject().isBlank() || t.getObject().isBlank()) 
+					return;
+				triples.add(t);
+			}
+		} finally {
+			it.close();
+		}
+		Triple[] array = triples.toArray(new Triple[triples.size()]);
+		synchronized (this) {
+			store(key, array);
+		}
+		if (directory != null)
+			write(key, result);
+	}
+	
+	private void store(String key, Triple[] triples) {
+		if (entries.containsKey(key)) 
+			return;
+		if (entries.size() >= size) 
+			evict();
+		entries.put(key, triples);
+		if (policy == Policy.LFU) {
+			frequencies.put(key, 1);
+			buckets.computeIfAbsent(1, k -> new LinkedHashSet<String>()).add(key);
+			minFrequency = 1;
+		}
+	}
+	
+	private void touch(String key) {
+		int f = frequencies.get(key);
+		LinkedHashSet<String> bucket = buckets.get(f);
+		bucket.remove(key);
+		if (bucket.isEmpty()) {
+			buckets.remove(f);
+			if (minFrequency == f) 
+				minFrequency = f + 1;
+		}
+		frequencies.put(key, f + 1);
+		buckets.computeIfAbsent(f + 1, k -> new LinkedHashSet<String>()).add(key);
+	}
+	
+	private void evict() {
+		String victim;
+		if (policy == Policy.LFU) {
+			LinkedHashSet<String> bucket = buckets.get(minFrequency);
+			victim = bucket.iterator().next();
+			bucket.remove(victim);
+			if (bucket.isEmpty()) 
+				buckets.remove(minFrequency);
+			frequencies.remove(victim);
+		} else {
+			victim = entries.keySet().iterator().next();
+		}
+		entries.remove(victim);
+		evictions.increment();
+	}
+	
+	private Triple[] read(String key) {
+		File file = new File(directory, key+".nt");
+		if (!file.isFile()) 
+			return null;
+		Model m = ModelFactory.createDefaultModel();
+		try (InputStream in = new FileInputStream(file)) {
+			RDFDataMgr.read(m, in, Lang.NTRIPLES);
+		} catch (Exception e) {
+			LOG.warn("Ignoring unreadable segment cache file "+file+": "+e);
+			return null;
+		}
+		return m.getGraph().find().toList().toArray(new Triple[0]);
+	}
+	
+	private void write(String key, Model result) {
+		File file = new File(directory, key+".nt");
+		if (file.exists()) 
+			return;
+		try {
+			File tmp = File.createTempFile(key, ".tmp", directory);
+			try (OutputStream out = new FileOutputStream(tmp)) {
+				RDFDataMgr.write(out, result, Lang.NTRIPLES);
+			}
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			LOG.warn("Failed to write segment cache file "+file+": "+e);
+		}
+	}
+	
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public synchronized ObjectNode snapshot() {
+		ObjectNode node = JsonNodeFactory.instance.objectNode();
+		node.put("policy", policy.name());
+		node.put("size", size);
+		node.put("entries", entries.size());
+		node.put("hits", hits.sum());
+		node.put("diskHits", diskHits.sum());
+		node.put("misses", misses.sum());
+		node.put("bypassed", bypassed.sum());
+		node.put("evictions", evictions.sum());
+		return node;
+	}
+
+	@Override
+	public String summary() {
+		long h = hits.sum();
+		long total = h + misses.sum();
+		return String.format(Locale.ROOT, "segment cache: %d hits (%d from disk), %d misses, %d bypassed, hit rate %.1f%%", 
+				h, diskHits.sum(), misses.sum(), bypassed.sum(), total == 0 ? 0.0 : 100.0 * h / total);
+	}
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright [2021] [ACoLi Lab, Prof. Dr. Chiarcos, Christian Faeth, Goethe University Frankfurt]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.acoli.fintan.rdf;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.GraphListener;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.vocabulary.RDF;
+
+/**
+ * Index of the predicates and rdf:type classes of a segment.
+ * 
+ * Registered as listener on an UpdateThread's default graph, the index 
+ * is built while the segment is loaded and kept up to date with all 
+ * triples added by updates. Removals are not tracked, so the index may 
+ * contain more predicates and types than the segment. It is reset before 
+ * loading the next segment.
+ * 
+ * Listens on graph level, since the ModelChangedListeners create a Statement 
+ * for each added triple.
+ * 
+ * Not thread-safe. Each UpdateThread maintains its own index.
+ * 
+ * @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
+ *
+ */
+public class SegmentIndex implements GraphListener {
+	
+	private final Set<Node> predicates = new HashSet<Node>();
+	private final Set<Node> types = new HashSet<Node>();
+	
+	private void add(Triple t) {
+		Node p = t.getPredicate();
+		predicates.add(p);
+		if (p.equals(RDF.Nodes.type))
+			types.add(t.getObject());
+	}
+	
+	@Override
+	public void notifyAddTriple(Graph g, Triple t) {
+		add(t);
+	}
+
+	@Override
+	public void notifyAddArray(Graph g, Triple[] triples) {
+		for (Triple t:triples) 
+			add(t);
+	}
+
+	@Override
+	public void notifyAddList(Graph g, List<Triple> triples) {
+		for (Triple t:triples) 
+			add(t);
+	}
+
+	@Override
+	public void notifyAddIterator(Graph g, Iterator<Triple> it) {
+		while (it.hasNext()) 
+			add(it.next());
+	}
+
+	@Override
+	public void notifyAddGraph(Graph g, Graph added) {
+		ExtendedIterator<Triple> it = added.find();
+		try {
+			while (it.hasNext()) 
+				add(it.next());
+		} finally {
+			it.close();
+		}
+	}
+
+	// removals are not tracked.
+	@Override
+	public void notifyDeleteTriple(Graph g, Triple t) {}
+
+	@Override
+	public void notifyDeleteList(Graph g, List<Triple> triples) {}
+
+	@Override
+	public void notifyDeleteArray(Graph g, Triple[] triples) {}
+
+	@Override
+	public void notifyDeleteIterator(Graph g, Iterator<Triple> it) {}
+
+	@Override
+	public void notifyDeleteGraph(Graph g, Graph removed) {}
+
+	@Override
+	public void notifyEvent(Graph source, Object value) {}
+	
+	public boolean containsPredicate(Node predicate) {
+		return predicates.contains(predicate);
+	}
+	
+	public boolean containsType(Node type) {
+		return types.contains(type);
+	}
+	
+	/**
+	 * Reset the index before loading the next segment.
+	 */
+	public void clear() {
+		predicates.clear();
+		types.clear();
+	}
+
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright [2021] [ACoLi Lab, Prof. Dr. Chiarcos, Christian Faeth, Goethe University Frankfurt]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.acoli.fintan.rdf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.GraphUtil;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.core.TriplePath;
+import org.apache.jena.sparql.expr.E_BNode;
+import org.apache.jena.sparql.expr.E_Random;
+import org.apache.jena.sparql.expr.E_StrUUID;
+import org.apache.jena.sparql.expr.E_UUID;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.expr.ExprFunction;
+import org.apache.jena.sparql.expr.ExprFunctionOp;
+import org.apache.jena.sparql.modify.request.UpdateModify;
+import org.apache.jena.sparql.syntax.Element;
+import org.apache.jena.sparql.syntax.ElementBind;
+import org.apache.jena.sparql.syntax.ElementFilter;
+import org.apache.jena.sparql.syntax.ElementGroup;
+import org.apache.jena.sparql.syntax.ElementNamedGraph;
+import org.apache.jena.sparql.syntax.ElementPathBlock;
+import org.apache.jena.sparql.syntax.ElementTriplesBlock;
+import org.apache.jena.sparql.syntax.ElementUnion;
+import org.apache.jena.sparql.syntax.Template;
+import org.apache.jena.update.Update;
+import org.apache.jena.update.UpdateRequest;
+
+/**
+ * Semi-naive evaluation of an iterated, monotonic INSERT-only UpdateRequest.
+ * 
+ * The first iteration evaluates each operation against the full default graph. 
+ * Every further iteration only considers solutions which use at least one 
+ * triple added since the operation's previous evaluation. These triples are 
+ * exposed in the named graph DELTA_GRAPH. For each triple pattern of the WHERE 
+ * clause, a variant is generated which matches this pattern in the delta graph 
+ * and the remaining patterns in the default graph. The variants are evaluated 
+ * as a single CONSTRUCT query with a UNION.
+ * 
+ * Since all operations are monotonic, each iteration produces exactly the 
+ * triples of the corresponding iteration of the naive evaluation.
+ * 
+ * Supported are UpdateRequests consisting only of INSERT {...} WHERE {...} 
+ * operations without WITH/USING, with templates for the default graph 
+ * without blank nodes and with a WHERE clause of triple patterns, FILTERs 
+ * and BINDs. FILTERs must not contain EXISTS, expressions must not create 
+ * new blank nodes or random values.
+ * 
+ * Instances are immutable and may be executed by multiple threads, 
+ * each on its own Dataset.
+ * 
+ * @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
+ *
+ */
+public class SemiNaiveUpdate {
+	
+	public static final String DELTA_GRAPH = "https://github.com/acoli-repo/fintan-core/delta";
+	private static final Node DELTA_NODE = NodeFactory.createURI(DELTA_GRAPH);
+	
+	private final List<Query> fullQueries;
+	private final List<Query> deltaQueries;
+	
+	private SemiNaiveUpdate(List<Query> fullQueries, List<Query> deltaQueries) {
+		this.fullQueries = fullQueries;
+		this.deltaQueries = deltaQueries;
+	}
+	
+	/**
+	 * Compile an UpdateRequest for semi-naive evaluation.
+	 * @param request
+	 * @return the compiled update or null if the request is not supported.
+	 */
+	public static SemiNaiveUpdate compile(UpdateRequest request) {
+		List<Query> fullQueries = new ArrayList<Query>();
+		List<Query> deltaQueries = new ArrayList<Query>();
+		if (request.getOperations().isEmpty())
+			return null;
+		for (Update operation:request.getOperations()) {
+			if (!(operation instanceof UpdateModify)) 
+				return null;
+			UpdateModify modify = (UpdateModify) operation;
+			if (modify.hasDeleteClause() || !modify.hasInsertClause())
+				return null;
+			if (modify.getWithIRI() != null || !modify.getUsing().isEmpty() || !modify.getUsingNamed().isEmpty())
+				return null;
+			
+			BasicPattern template = new BasicPattern();
+			for (Quad quad:modify.getInsertQuads()) {
+				if (!quad.isDefaultGraph() || quad.getSubject().isBlank() || quad.getObject().isBlank())
+					return null;
+				template.add(quad.asTriple());
+			}
+			
+			List<Element> elements = flatten(modify.getWherePattern());
+			if (elements == null) 
+				return null;
+			int patterns = 0;
+			for (Element e:elements) {
+				if (e instanceof ElementPathBlock) 
+					patterns++;
+			}
+			if (patterns == 0)
+				return null;
+			
+			ElementUnion variants = new ElementUnion();
+			for (int i = 0; i < patterns; i++) {
+				variants.addElement(buildGroup(elements, i));
+			}
+			fullQueries.add(buildQuery(template, buildGroup(elements, -1)));
+			deltaQueries.add(buildQuery(template, variants));
+		}
+		return new SemiNaiveUpdate(fullQueries, deltaQueries);
+	}
+	
+	/**
+	 * Flattens the WHERE clause into single triple patterns (as ElementPathBlocks), 
+	 * FILTERs and BINDs in their original order. 
+	 * @return null if the WHERE clause contains any other element.
+	 */
+	private static List<Element> flatten(Element where) {
+		if (!(where instanceof ElementGroup))
+			return null;
+		List<Element> elements = new ArrayList<Element>();
+		for (Element e:((ElementGroup) where).getElements()) {
+			if (e instanceof ElementPathBlock) {
+				for (TriplePath tp:((ElementPathBlock) e).getPattern().getList()) {
+					if (!tp.isTriple()) 
+						return null;
+					elements.add(single(tp.asTriple()));
+				}
+			} else if (e instanceof ElementTriplesBlock) {
+				for (Triple t:((ElementTriplesBlock) e).getPattern().getList()) {
+					elements.add(single(t));
+				}
+			} else if (e instanceof ElementFilter) {
+				if (!isMonotonic(((ElementFilter) e).getExpr()))
+					return null;
+				elements.add(e);
+			} else if (e instanceof ElementBind) {
+				if (!isMonotonic(((ElementBind) e).getExpr()))
+					return null;
+				elements.add(e);
+			} else {
+				return null;
+			}
+		}
+		return elements;
+	}
+	
+	private static ElementPathBlock single(Triple t) {
+		ElementPathBlock block = new ElementPathBlock();
+		block.addTriple(t);
+		return block;
+	}
+	
+	/**
+	 * @return false for expressions containing (NOT) EXISTS or creating fresh values.
+	 */
+	private static boolean isMonotonic(Expr expr) {
+		if (expr instanceof ExprFunctionOp)
+			return false;
+		if (expr instanceof E_BNode || expr instanceof E_Random || expr instanceof E_UUID || expr instanceof E_StrUUID)
+			return false;
+		if (expr instanceof ExprFunction) {
+			for (Expr arg:((ExprFunction) expr).getArgs()) {
+				if (!isMonotonic(arg))
+					return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Builds the group pattern. The triple pattern with the given index 
+	 * is matched in the delta graph.
+	 * @param delta index of the delta pattern, -1 for none.
+	 */
+	private static ElementGroup buildGroup(List<Element> elements, int delta) {
+		ElementGroup group = new ElementGroup();
+		int pattern = 0;
+		for (Element e:elements) {
+			if (e instanceof ElementPathBlock) {
+				if (pattern == delta) 
+					group.addElement(new ElementNamedGraph(DELTA_NODE, e));
+				else
+					group.addElement(e);
+				pattern++;
+			} else if (e instanceof ElementFilter) {
+				group.addElementFilter((ElementFilter) e);
+			} else {
+				group.addElement(e);
+			}
+		}
+		return group;
+	}
+	
+	private static Query buildQuery(BasicPattern template, Element where) {
+		Query query = new Query();
+		query.setQueryConstructType();
+		query.setConstructTemplate(new Template(template));
+		query.setQueryPattern(where);
+		return query;
+	}
+	
+	/**
+	 * Executes the update on the default graph of the dataset until a fixpoint 
+	 * or the maximum number of iterations is reached. 
+	 * Uses and clears the named graph DELTA_GRAPH of the dataset.
+	 * 
+	 * @param dataset
+	 * @param maxIterations
+	 * @return the number of iterations, including the final one without changes.
+	 */
+	public int execute(Dataset dataset, int maxIterations) {
+		Graph graph = dataset.getDefaultModel().getGraph();
+		Graph delta = dataset.getNamedModel(DELTA_GRAPH).getGraph();
+		// all triples added so far, in order of insertion.
+		List<Triple> added = new ArrayList<Triple>();
+		// size of added at the last evaluation of each operation, -1 if not yet evaluated
+		int[] evaluated = new int[fullQueries.size()];
+		Arrays.fill(evaluated, -1);
+		
+		int v = 0;
+		boolean change = true;
+		try {
+			while (v < maxIterations && change) {
+				int before = added.size();
+				for (int i = 0; i < fullQueries.size(); i++) {
+					Query query;
+					if (evaluated[i] < 0) {
+						query = fullQueries.get(i);
+					} else if (evaluated[i] == added.size()) {
+						// nothing new since the last evaluation
+						continue;
+					} else {
+						delta.clear();
+						GraphUtil.add(delta, added.subList(evaluated[i], added.size()));
+						query = deltaQueries.get(i);
+					}
+					evaluated[i] = added.size();
+					
+					// materialize before modifying the graph
+					List<Triple> result = new ArrayList<Triple>();
+					QueryExecution qexec = QueryExecutionFactory.create(query, dataset);
+					try {
+						Iterator<Triple> it = qexec.execConstructTriples();
+						while (it.hasNext()) 
+							result.add(it.next());
+					} finally {
+						qexec.close();
+					}
+					for (Triple t:result) {
+						if (!graph.contains(t)) {
+							graph.add(t);
+							added.add(t);
+						}
+					}
+				}
+				change = added.size() > before;
+				v++;
+			}
+		} finally {
+			delta.clear();
+		}
+		return v;
+	}
+
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright [2021] [ACoLi Lab, Prof. Dr. Chiarcos, Christian Faeth, Goethe University Frankfurt]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.acoli.fintan.rdf;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+
+import org.acoli.fintan.core.metrics.Histogram;
+import org.acoli.fintan.core.metrics.MetricsSource;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Profiler for the updates of an RDFUpdater. Records per update: 
+ * 	- latency histogram over all iterations on a segment (ns)
+ * 	- latency histogram per single operation of the UpdateRequest (ns)
+ * 	- distribution of the number of iterations per segment
+ * 	- the segments with the highest latencies
+ * 
+ * Thread-safe. Update threads record concurrently.
+ * 
+ * @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
+ *
+ */
+public class UpdateProfiler implements MetricsSource {
+	
+	protected static final Logger LOG = LogManager.getLogger(UpdateProfiler.class.getName());
+	
+	public static final int DEFAULT_SLOWEST_SEGMENTS = 10;
+	private static final int LABEL_LENGTH = 80;
+	
+	private final String name;
+	private final int slowestSegments;
+	private final List<UpdateProfile> profiles = new ArrayList<UpdateProfile>();
+	
+	private class UpdateProfile {
+		private final String name;
+		private final Histogram latency = new Histogram();
+		private final Histogram iterations = new Histogram();
+		private final List<String> operationLabels;
+		private final List<Histogram> operationLatency = new ArrayList<Histogram>();
+		// min-heap of <latency, segmentID>
+		private final PriorityQueue<Pair<Long, String>> slowest = new PriorityQueue<Pair<Long, String>>(
+				Comparator.comparing(Pair<Long, String>::getLeft));
+		
+		private UpdateProfile(String name, List<String> operationLabels) {
+			this.name = name;
+			this.operationLabels = operationLabels;
+			for (int i = 0; i < operationLabels.size(); i++) {
+				operationLatency.add(new Histogram());
+			}
+		}
+		
+		private synchronized boolean isSlowest(long nanos) {
+			return slowest.size() < slowestSegments || slowest.peek().getLeft() < nanos;
+		}
+		
+		private synchronized void addSlowest(long nanos, String segmentID) {
+			slowest.add(new ImmutablePair<Long, String>(nanos, segmentID));
+			if (slowest.size() > slowestSegments) 
+				slowest.poll();
+		}
+		
+		private synchronized List<Pair<Long, String>> listSlowest() {
+			List<Pair<Long, String>> list = new ArrayList<Pair<Long, String>>(slowest);
+			list.sort(Collections.reverseOrder(Comparator.comparing(Pair<Long, String>::getLeft)));
+			return list;
+		}
+	}
+	
+	/**
+	 * @param name
+	 * 			name of the profiled component
+	 * @param slowestSegments
+	 * 			the number of slowest segments to be retained per update.
+	 */
+	public UpdateProfiler(String name, int slowestSegments) {
+		this.name = name;
+		this.slowestSegments = Math.max(1, slowestSegments);
+	}
+	
+	/**
+	 * Add an update to the profiler. Updates are identified by their index 
+	 * in the order they have been added.
+	 * 
+	 * @param updateName
+	 * @param operations
+	 * 			String representation of the update's operations.
+	 */
+	public synchronized void addUpdate(String updateName, List<String> operations) {
+		List<String> labels = new ArrayList<String>();
+		for (String op:operations) {
+			String label = op.replaceAll("\\s+", " ").trim();
+			if (label.length() > LABEL_LENGTH) 
+				label = label.substring(0, LABEL_LENGTH) + "...";
+			labels.add(label);
+		}
+		profiles.add(new UpdateProfile(updateName, labels));
+	}
+	
+	/**
+	 * Record the execution of a single operation in one iteration.
+	 * @param update index of the update
+	 * @param operation index of the operation within the update
+	 * @param nanos
+	 */
+	public void recordOperation(int update, int operation, long nanos) {
+		profiles.get(update).operationLatency.get(operation).record(nanos);
+	}
+	
+	/**
+	 * @return true if an update execution of the given duration will be 
+	 * 		retained as one of the slowest. In this case, recordUpdate() needs a segment ID.
+	 */
+	public boolean isSlowest(int update, long nanos) {
+		return profiles.get(update).isSlowest(nanos);
+	}
+	
+	/**
+	 * Record the execution of an update on a segment, including all iterations.
+	 * @param update index of the update
+	 * @param nanos
+	 * @param iterations
+	 * @param segmentID 
+	 * 			may be null if isSlowest() is false.
+	 */
+	public void recordUpdate(int update, long nanos, int iterations, String segmentID) {
+		UpdateProfile profile = profiles.get(update);
+		profile.latency.record(nanos);
+		profile.iterations.record(iterations);
+		if (segmentID != null && profile.isSlowest(nanos)) 
+			profile.addSlowest(nanos, segmentID);
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Latencies are given in microseconds.
+	 */
+	@Override
+	public ObjectNode snapshot() {
+		ObjectNode node = JsonNodeFactory.instance.objectNode();
+		node.put("unit", "us");
+		ArrayNode updates = node.putArray("updates");
+		for (UpdateProfile profile:listProfiles()) {
+			ObjectNode upd = updates.addObject();
+			upd.put("name", profile.name);
+			upd.set("latency", profile.latency.toJson(1000));
+			upd.set("iterations", profile.iterations.toJson(1));
+			ArrayNode ops = upd.putArray("operations");
+			for (int i = 0; i < profile.operationLabels.size(); i++) {
+				ObjectNode op = ops.addObject();
+				op.put("operation", profile.operationLabels.get(i));
+				op.set("latency", profile.operationLatency.get(i).toJson(1000));
+			}
+			ArrayNode slowest = upd.putArray("slowestSegments");
+			for (Pair<Long, String> segment:profile.listSlowest()) {
+				ObjectNode seg = slowest.addObject();
+				seg.put("segment", segment.getRight());
+				seg.put("latency", segment.getLeft() / 1000.0);
+			}
+		}
+		return node;
+	}
+
+	/**
+	 * The update with the highest p99 latency.
+	 */
+	@Override
+	public String summary() {
+		UpdateProfile hottest = null;
+		for (UpdateProfile profile:listProfiles()) {
+			if (hottest == null || profile.latency.getValueAtPercentile(99) > hottest.latency.getValueAtPercentile(99)) 
+				hottest = profile;
+		}
+		if (hottest == null) 
+			return "no updates";
+		return String.format(Locale.ROOT, "hottest update %s: p99 %.3f ms, max %.3f ms", hottest.name, 
+				hottest.latency.getValueAtPercentile(99) / 1e6, hottest.latency.getMax() / 1e6);
+	}
+	
+	private synchronized List<UpdateProfile> listProfiles() {
+		return new ArrayList<UpdateProfile>(profiles);
+	}
+	
+	/**
+	 * Log the final report, with updates ordered by total execution time. 
+	 * Optionally write the JSON snapshot to a file.
+	 * @param file may be null
+	 */
+	public void report(File file) {
+		List<UpdateProfile> sorted = listProfiles();
+		sorted.sort(Collections.reverseOrder(Comparator.comparingLong(p -> p.latency.getSum())));
+		StringBuilder sb = new StringBuilder("Update profile for <"+name+"> (ms):");
+		for (UpdateProfile p:sorted) {
+			sb.append(String.format(Locale.ROOT, "%n\t%s: total %.1f, n %d, mean %.3f, p50 %.3f, p90 %.3f, p99 %.3f, max %.3f, iterations p50 %d max %d", 
+					p.name, p.latency.getSum() / 1e6, p.latency.getCount(), p.latency.getMean() / 1e6, 
+					p.latency.getValueAtPercentile(50) / 1e6, p.latency.getValueAtPercentile(90) / 1e6, 
+					p.latency.getValueAtPercentile(99) / 1e6, p.latency.getMax() / 1e6, 
+					p.iterations.getValueAtPercentile(50), p.iterations.getMax()));
+			for (int i = 0; i < p.operationLabels.size(); i++) {
+				Histogram op = p.operationLatency.get(i);
+				sb.append(String.format(Locale.ROOT, "%n\t\top %d: total %.1f, p99 %.3f, max %.3f -- %s", 
+						i + 1, op.getSum() / 1e6, op.getValueAtPercentile(99) / 1e6, op.getMax() / 1e6, 
+						p.operationLabels.get(i)));
+			}
+			List<Pair<Long, String>> slowest = p.listSlowest();
+			if (!slowest.isEmpty()) {
+				sb.append("\n\t\tslowest segments:");
+				for (Pair<Long, String> segment:slowest) {
+					sb.append(String.format(Locale.ROOT, " %s (%.3f)", segment.getRight(), segment.getLeft() / 1e6));
+				}
+			}
+		}
+		LOG.info(sb.toString());
+		if (file != null) {
+			try {
+				new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(file, snapshot());
+			} catch (IOException e) {
+				LOG.error("Failed to write update profile to "+file, e);
+			}
+		}
+	}
+
+}
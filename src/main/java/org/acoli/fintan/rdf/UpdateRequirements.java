@@ -0,0 +1,146 @@
+/*
+ * Copyright [2021] [ACoLi Lab, Prof. Dr. Chiarcos, Christian Faeth, Goethe University Frankfurt]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.acoli.fintan.rdf;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.core.TriplePath;
+import org.apache.jena.sparql.modify.request.UpdateDeleteWhere;
+import org.apache.jena.sparql.modify.request.UpdateModify;
+import org.apache.jena.sparql.syntax.Element;
+import org.apache.jena.sparql.syntax.ElementGroup;
+import org.apache.jena.sparql.syntax.ElementPathBlock;
+import org.apache.jena.sparql.syntax.ElementTriplesBlock;
+import org.apache.jena.update.Update;
+import org.apache.jena.vocabulary.RDF;
+
+/**
+ * Predicates and classes an update operation requires in the default graph 
+ * in order to match at all. Used by the RDFUpdater's indexed dispatch to skip 
+ * operations which cannot match the current segment.
+ * 
+ * The analysis is conservative: only triple patterns which are mandatory for 
+ * every solution are considered, i.e. plain triples in the top level group 
+ * of the WHERE clause (or of a DELETE WHERE) and its nested groups. 
+ * OPTIONAL, UNION, MINUS, GRAPH, SERVICE, subqueries, property paths and 
+ * FILTERs are ignored. Operations with WITH or USING clauses and all other 
+ * operations (INSERT DATA, LOAD, CLEAR, ...) never have requirements and 
+ * are always executed.
+ * 
+ * @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
+ *
+ */
+public class UpdateRequirements {
+	
+	/**
+	 * Requirements of operations which have to be executed in any case.
+	 */
+	public static final UpdateRequirements NONE = new UpdateRequirements(
+			Collections.<Node>emptySet(), Collections.<Node>emptySet());
+	
+	private final Set<Node> predicates;
+	private final Set<Node> types;
+	
+	private UpdateRequirements(Set<Node> predicates, Set<Node> types) {
+		this.predicates = predicates;
+		this.types = types;
+	}
+	
+	/**
+	 * Statically extract the required predicates and types of an update operation.
+	 * @param operation
+	 * @return the requirements, NONE if the operation can not be filtered.
+	 */
+	public static UpdateRequirements analyze(Update operation) {
+		Set<Node> predicates = new HashSet<Node>();
+		Set<Node> types = new HashSet<Node>();
+		if (operation instanceof UpdateModify) {
+			UpdateModify modify = (UpdateModify) operation;
+			if (modify.getWithIRI() != null || !modify.getUsing().isEmpty() || !modify.getUsingNamed().isEmpty())
+				return NONE;
+			collect(modify.getWherePattern(), predicates, types);
+		} else if (operation instanceof UpdateDeleteWhere) {
+			for (Quad quad:((UpdateDeleteWhere) operation).getQuads()) {
+				if (quad.isDefaultGraph())
+					collect(quad.getPredicate(), quad.getObject(), predicates, types);
+			}
+		} else {
+			return NONE;
+		}
+		if (predicates.isEmpty() && types.isEmpty())
+			return NONE;
+		return new UpdateRequirements(predicates, types);
+	}
+	
+	private static void collect(Element element, Set<Node> predicates, Set<Node> types) {
+		if (element instanceof ElementGroup) {
+			for (Element e:((ElementGroup) element).getElements()) {
+				collect(e, predicates, types);
+			}
+		} else if (element instanceof ElementPathBlock) {
+			for (TriplePath tp:((ElementPathBlock) element).getPattern().getList()) {
+				if (tp.isTriple())
+					collect(tp.getPredicate(), tp.getObject(), predicates, types);
+			}
+		} else if (element instanceof ElementTriplesBlock) {
+			for (org.apache.jena.graph.Triple t:((ElementTriplesBlock) element).getPattern().getList()) {
+				collect(t.getPredicate(), t.getObject(), predicates, types);
+			}
+		}
+		// all other elements are either optional or do not restrict the default graph.
+	}
+	
+	private static void collect(Node predicate, Node object, Set<Node> predicates, Set<Node> types) {
+		if (!predicate.isURI()) 
+			return;
+		predicates.add(predicate);
+		if (predicate.equals(RDF.Nodes.type) && object.isURI())
+			types.add(object);
+	}
+	
+	/**
+	 * @return true if this operation has no requirements and is always executed.
+	 */
+	public boolean isEmpty() {
+		return predicates.isEmpty() && types.isEmpty();
+	}
+	
+	/**
+	 * @param index the index of the current segment.
+	 * @return false if the operation cannot match the indexed segment.
+	 */
+	public boolean canMatch(SegmentIndex index) {
+		for (Node p:predicates) {
+			if (!index.containsPredicate(p)) 
+				return false;
+		}
+		for (Node t:types) {
+			if (!index.containsType(t)) 
+				return false;
+		}
+		return true;
+	}
+	
+	@Override
+	public String toString() {
+		return "predicates="+predicates+", types="+types;
+	}
+
+}
@@ -23,8 +23,13 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 
+import org.acoli.fintan.core.FintanOutputStream;
+import org.acoli.fintan.core.FintanScheduler;
 import org.acoli.fintan.core.FintanStreamComponentFactory;
+import org.acoli.fintan.core.ModelStreamBridge;
+import org.acoli.fintan.core.ModelStreamBridgeable;
 import org.acoli.fintan.core.StreamWriter;
+import org.acoli.fintan.core.checkpoint.CheckpointOutputStream;
 import org.apache.jena.rdf.model.Model;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -38,10 +43,13 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
  * 		which converts the stream independently
  *  - input streams without matching output streams are dropped.
  * 
+ * If the output is linked to a ModelStreamBridge, the segments are forwarded 
+ * as Models without being serialized.
+ * 
  * @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
  *
  */
-public class RDFStreamWriter extends StreamWriter implements FintanStreamComponentFactory {
+public class RDFStreamWriter extends StreamWriter implements FintanStreamComponentFactory, ModelStreamBridgeable {
 	
 	/**
 	 * The following parameters can be set in the JSON config:
@@ -113,6 +121,14 @@ public class RDFStreamWriter extends StreamWriter implements FintanStreamCompone
 		this.segmentDelimiter = segmentDelimiter;
 	}
 	
+	/**
+	 * Segments are only recoverable from the text stream, if a delimiter is set.
+	 */
+	@Override
+	public boolean preservesSegments() {
+		return segmentDelimiter != null;
+	}
+	
 	
 	public boolean isPrefixDeduplication() {
 		return prefixDeduplication;
@@ -130,7 +146,7 @@ public class RDFStreamWriter extends StreamWriter implements FintanStreamCompone
 		this.customPrefixes = customPrefixes;
 	}
 
-	private void processStream() {
+	private void processStream() throws IOException {
 		// Spawn writers for parallel processing, in case there are multiple streams.
 		for (String name:listInputStreamNames()) {
 			if (name == FINTAN_DEFAULT_STREAM_NAME) 
@@ -152,13 +168,18 @@ public class RDFStreamWriter extends StreamWriter implements FintanStreamCompone
 				LOG.error(e, e);
 				System.exit(1);
 			}
-			new Thread(writer).start();
+			FintanScheduler.startThread(writer, "fintan-"+getInstanceName()+"-"+name);
 		}
 		
 		//terminate in case there is no default stream. 
 		//named streams are handled in subthreads.
 		if (getOutputStream()==null) return;
 		
+		if (getOutputStream() instanceof ModelStreamBridge.Output) {
+			forwardStream(((ModelStreamBridge.Output) getOutputStream()).getModelStream());
+			return;
+		}
+		
 		PrintStream out = new PrintStream(getOutputStream());
 		String prefixCacheOut = new String();
 		
@@ -212,6 +233,11 @@ public class RDFStreamWriter extends StreamWriter implements FintanStreamCompone
 					out.println(segmentDelimiter);
 				}
 				
+				if (getOutputStream() instanceof CheckpointOutputStream) {
+					out.flush();
+					((CheckpointOutputStream) getOutputStream()).markSegment();
+				}
+				
 			} catch (InterruptedException e) {
 				LOG.error("Error when reading from Stream: " +e);
 			}
@@ -220,6 +246,28 @@ public class RDFStreamWriter extends StreamWriter implements FintanStreamCompone
 
 	}
 	
+	/**
+	 * Forwards all segments to a ModelStreamBridge instead of serializing them.
+	 * @param out the FintanStream underlying the bridge
+	 */
+	private void forwardStream(FintanOutputStream<Model> out) {
+		while (getInputStream().canRead()) {
+			try {
+				Model m = getInputStream().read();
+				//read may return null in case the queue has been emptied and terminated since asking for canRead()
+				if (m == null) continue;
+				
+				for(String prefix:customPrefixes.keySet()) {
+					m.setNsPrefix(prefix, customPrefixes.get(prefix));
+				}
+				out.write(m);
+			} catch (InterruptedException e) {
+				LOG.error("Error when forwarding Stream: " +e);
+			}
+		}
+		out.terminate();
+	}
+	
 	@Override
 	public void start() {
 		run();
@@ -18,8 +18,10 @@ package org.acoli.fintan.write;
 import java.io.IOException;
 import java.io.PrintStream;
 
+import org.acoli.fintan.core.FintanScheduler;
 import org.acoli.fintan.core.FintanStreamComponentFactory;
 import org.acoli.fintan.core.StreamWriter;
+import org.acoli.fintan.core.checkpoint.CheckpointOutputStream;
 import org.acoli.fintan.core.util.CustomCSVFormat;
 import org.acoli.fintan.core.util.IOUtils;
 import org.acoli.fintan.core.util.JenaUtils;
@@ -146,7 +148,7 @@ public class SparqlStreamWriter extends StreamWriter implements FintanStreamComp
 		this.jenaFormat = jenaFormat;
 	}
 	
-	private void processStream() {
+	private void processStream() throws IOException {
 		
 		// Spawn writers for parallel processing, in case there are multiple streams.
 		for (String name:listInputStreamNames()) {
@@ -170,7 +172,7 @@ public class SparqlStreamWriter extends StreamWriter implements FintanStreamComp
 				LOG.error(e, e);
 				System.exit(1);
 			}
-			new Thread(writer).start();
+			FintanScheduler.startThread(writer, "fintan-"+getInstanceName()+"-"+name);
 		}
 		
 		//terminate in case there is no default stream. 
@@ -198,6 +200,9 @@ public class SparqlStreamWriter extends StreamWriter implements FintanStreamComp
 
 				out.flush();
 				
+				if (getOutputStream() instanceof CheckpointOutputStream) 
+					((CheckpointOutputStream) getOutputStream()).markSegment();
+				
 			} catch (InterruptedException e) {
 				LOG.error("Error when reading from Stream: " +e);
 			}
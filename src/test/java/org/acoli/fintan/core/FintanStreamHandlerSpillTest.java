@@ -0,0 +1,153 @@
+/*
+ * Copyright [2021] [ACoLi Lab, Prof. Dr. Chiarcos, Christian Faeth, Goethe University Frankfurt]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.acoli.fintan.core;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.Statement;
+
+import junit.framework.TestCase;
+
+/**
+ * Stress test for spill mode of FintanStreamHandler. A tiny queue and spill 
+ * buffer force the writer to switch between enqueuing and spilling while 
+ * the reader moves spilled segments back.
+ * 
+ * Each test runs twice by default. For stress testing, set the number of 
+ * runs by the system property fintan.stressRuns, e.g. -Dfintan.stressRuns=50.
+ * 
+ * @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
+ *
+ */
+public class FintanStreamHandlerSpillTest extends TestCase {
+	
+	private static final String NS = "http://example.org/";
+	private static final int SEGMENTS = 2000;
+	private static final int RUNS = Integer.getInteger("fintan.stressRuns", 2);
+	private static final long TIMEOUT_MILLIS = 20000;
+	
+	private int queueSize;
+	private String spillDirectory;
+	private long spillMaxBytes;
+	private File directory;
+	
+	@Override
+	protected void setUp() throws Exception {
+		queueSize = FintanStreamHandler.QUEUE_SIZE;
+		spillDirectory = FintanStreamHandler.SPILL_DIRECTORY;
+		spillMaxBytes = FintanStreamHandler.SPILL_MAX_BYTES;
+		directory = Files.createTempDirectory("fintan-spill-test").toFile();
+		FintanStreamHandler.QUEUE_SIZE = 3;
+		FintanStreamHandler.SPILL_DIRECTORY = directory.getPath();
+		FintanStreamHandler.SPILL_MAX_BYTES = 20000;
+	}
+	
+	@Override
+	protected void tearDown() throws Exception {
+		FintanStreamHandler.QUEUE_SIZE = queueSize;
+		FintanStreamHandler.SPILL_DIRECTORY = spillDirectory;
+		FintanStreamHandler.SPILL_MAX_BYTES = spillMaxBytes;
+		File[] files = directory.listFiles();
+		if (files != null) 
+			for (File f:files) 
+				f.delete();
+		directory.delete();
+	}
+	
+	public void testSingleWriter() throws Exception {
+		for (int run = 0; run < RUNS; run++) 
+			runPipeline(1);
+	}
+	
+	public void testConcurrentWriters() throws Exception {
+		for (int run = 0; run < RUNS; run++) 
+			runPipeline(3);
+	}
+	
+	/**
+	 * Streams SEGMENTS models per writer through a single handler and checks 
+	 * that the reader receives all of them, in order for each writer.
+	 */
+	private void runPipeline(int writers) throws Exception {
+		FintanStreamHandler<Model> stream = new FintanStreamHandler<Model>();
+		AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		
+		List<Thread> writerThreads = new ArrayList<Thread>();
+		for (int w = 0; w < writers; w++) {
+			final int writer = w;
+			Thread t = new Thread(() -> {
+				try {
+					for (int i = 0; i < SEGMENTS; i++) 
+						stream.write(segment(writer, i));
+				} catch (Throwable e) {
+					error.compareAndSet(null, e);
+				}
+			}, "writer-"+w);
+			writerThreads.add(t);
+		}
+		
+		int[] next = new int[writers];
+		Thread reader = new Thread(() -> {
+			try {
+				Model vocab = ModelFactory.createDefaultModel();
+				Property writerProperty = vocab.createProperty(NS+"writer");
+				Property indexProperty = vocab.createProperty(NS+"index");
+				for (Model m = stream.read(); m != null; m = stream.read()) {
+					Statement st = m.listStatements(null, writerProperty, (String) null).next();
+					int writer = st.getInt();
+					int index = st.getSubject().getRequiredProperty(indexProperty).getInt();
+					if (index != next[writer]) 
+						throw new AssertionError("writer "+writer+": expected segment "+next[writer]+", got "+index);
+					next[writer]++;
+				}
+			} catch (Throwable e) {
+				error.compareAndSet(null, e);
+			}
+		}, "reader");
+		
+		reader.start();
+		for (Thread t:writerThreads) 
+			t.start();
+		for (Thread t:writerThreads) 
+			t.join(TIMEOUT_MILLIS);
+		for (Thread t:writerThreads) 
+			if (t.isAlive()) 
+				fail("Writer blocked: "+error.get());
+		stream.terminate();
+		reader.join(TIMEOUT_MILLIS);
+		if (error.get() != null) 
+			throw new AssertionError(error.get().toString(), error.get());
+		assertFalse("Reader blocked.", reader.isAlive());
+		for (int w = 0; w < writers; w++) 
+			assertEquals(SEGMENTS, next[w]);
+		assertEquals(0, stream.spilledSize());
+	}
+	
+	private static Model segment(int writer, int index) {
+		Model m = ModelFactory.createDefaultModel();
+		m.createResource(NS+"segment")
+				.addLiteral(m.createProperty(NS+"writer"), writer)
+				.addLiteral(m.createProperty(NS+"index"), index);
+		return m;
+	}
+}
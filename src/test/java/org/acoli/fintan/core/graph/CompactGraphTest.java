@@ -0,0 +1,131 @@
+/*
+ * Copyright [2021] [ACoLi Lab, Prof. Dr. Chiarcos, Christian Faeth, Goethe University Frankfurt]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.acoli.fintan.core.graph;
+
+import java.io.StringReader;
+
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.mem.GraphMem;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.update.UpdateAction;
+
+import junit.framework.TestCase;
+
+/**
+ * Differential test of CompactGraph against GraphMem. Both are loaded with 
+ * the same segment and updated by ARQ's UpdateAction. They must yield 
+ * isomorphic graphs, both with linear scan and with index.
+ * 
+ * @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
+ *
+ */
+public class CompactGraphTest extends TestCase {
+	
+	private static final String PREFIX = "PREFIX : <http://example.org/>\n"
+			+ "PREFIX xsd: <http://www.w3.org/2001/XMLSchema#>\n";
+	
+	private static final String DATA = PREFIX
+			+ ":a :v \"1\"^^xsd:int .\n"
+			+ ":a :v \"lit\"@en .\n"
+			+ ":a :p :b .\n"
+			+ ":b :v \"01\"^^xsd:int .\n"
+			+ ":b :v \"1.0\"^^xsd:double .\n"
+			+ ":b :v \"lit\" .\n"
+			+ ":c :v 1 .\n"
+			+ ":c :p :a .\n";
+	
+	private int threshold;
+	
+	@Override
+	protected void setUp() {
+		threshold = CompactGraph.INDEX_THRESHOLD;
+	}
+	
+	@Override
+	protected void tearDown() {
+		CompactGraph.INDEX_THRESHOLD = threshold;
+	}
+	
+	/**
+	 * Typed literals are matched by value, not by lexical form.
+	 */
+	public void testTypedLiteralValue() {
+		assertSameResult("INSERT { ?s :match true } WHERE { ?s :v \"01\"^^xsd:int }");
+	}
+	
+	public void testNumericTypes() {
+		assertSameResult("INSERT { ?s :match true } WHERE { ?s :v 1 }");
+		assertSameResult("INSERT { ?s :match true } WHERE { ?s :v 1.0e0 }");
+	}
+	
+	public void testLanguageTag() {
+		assertSameResult("INSERT { ?s :match true } WHERE { ?s :v \"lit\"@EN }");
+	}
+	
+	public void testDeleteWhere() {
+		assertSameResult("DELETE WHERE { ?s :v \"1\"^^xsd:int }");
+	}
+	
+	/**
+	 * Deletion of a concrete triple is by term equality.
+	 */
+	public void testDeleteData() {
+		assertSameResult("DELETE DATA { :a :v \"01\"^^xsd:int }");
+	}
+	
+	public void testJoinOnLiteral() {
+		assertSameResult("INSERT { ?x :same ?y } WHERE { ?x :v ?o . ?y :v ?o }");
+	}
+	
+	public void testFind() {
+		Node a = NodeFactory.createURI("http://example.org/a");
+		Node v = NodeFactory.createURI("http://example.org/v");
+		Node one = NodeFactory.createLiteral("01", XSDDatatype.XSDint);
+		for (int t:new int[] {threshold, 0}) {
+			CompactGraph.INDEX_THRESHOLD = t;
+			Graph expected = data(new GraphMem());
+			Graph actual = data(new CompactGraph());
+			assertEquals(expected.contains(a, v, one), actual.contains(a, v, one));
+			assertEquals(expected.contains(Triple.create(a, v, one)), actual.contains(Triple.create(a, v, one)));
+			assertEquals(expected.find(Node.ANY, Node.ANY, one).toList().size(), 
+					actual.find(Node.ANY, Node.ANY, one).toList().size());
+		}
+	}
+	
+	private void assertSameResult(String update) {
+		for (int t:new int[] {threshold, 0}) {
+			CompactGraph.INDEX_THRESHOLD = t;
+			Model expected = ModelFactory.createModelForGraph(data(new GraphMem()));
+			UpdateAction.parseExecute(PREFIX + update, expected);
+			Model actual = ModelFactory.createModelForGraph(data(new CompactGraph()));
+			UpdateAction.parseExecute(PREFIX + update, actual);
+			
+			assertTrue("Different result for "+update+" with index threshold "+t
+					+"\nexpected:\n"+expected.getGraph()+"\nactual:\n"+actual.getGraph(), 
+					expected.isIsomorphicWith(actual));
+		}
+	}
+	
+	private static Graph data(Graph graph) {
+		ModelFactory.createModelForGraph(graph).read(new StringReader(DATA), null, "TTL");
+		return graph;
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright [2021] [ACoLi Lab, Prof. Dr. Chiarcos, Christian Faeth, Goethe University Frankfurt]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.acoli.fintan.rdf;
+
+import java.io.StringReader;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.update.Update;
+import org.apache.jena.update.UpdateAction;
+import org.apache.jena.update.UpdateFactory;
+import org.apache.jena.update.UpdateRequest;
+
+import junit.framework.TestCase;
+
+/**
+ * Differential test of CompiledUpdate against ARQ's UpdateAction. 
+ * Both are run on copies of the same segment and must yield isomorphic 
+ * graphs.
+ * 
+ * @author Christian Faeth {@literal faeth@em.uni-frankfurt.de}
+ *
+ */
+public class CompiledUpdateTest extends TestCase {
+	
+	private static final String PREFIX = "PREFIX : <http://example.org/>\n";
+	
+	private static final String DATA = PREFIX
+			+ ":a :p :b .\n"
+			+ ":a :p \"lit\" .\n"
+			+ ":a :p \"lit\"@en .\n"
+			+ ":b :p 42 .\n"
+			+ ":b :p _:x .\n"
+			+ "_:x :p :c .\n"
+			+ ":c :q :a .\n";
+	
+	/**
+	 * Literal subjects introduced by swapping subject and object.
+	 */
+	public void testLiteralSubject() {
+		assertSameResult("INSERT { ?o :r ?s } WHERE { ?s :p ?o }");
+	}
+	
+	/**
+	 * Literal and blank node predicates introduced by variables.
+	 */
+	public void testNonIRIPredicate() {
+		assertSameResult("INSERT { ?s ?o :c } WHERE { ?s :p ?o }");
+	}
+	
+	/**
+	 * Only some of the template triples are illegal for a given solution.
+	 */
+	public void testPartiallyIllegalTemplate() {
+		assertSameResult("INSERT { ?o :r ?s . ?s :r ?o . ?s ?o ?s } WHERE { ?s :p ?o }");
+	}
+	
+	/**
+	 * Illegal insertions must not affect the deletions of the same operation.
+	 */
+	public void testDeleteInsert() {
+		assertSameResult("DELETE { ?s :p ?o } INSERT { ?o :r ?s } WHERE { ?s :p ?o }");
+	}
+	
+	public void testDeleteWhere() {
+		assertSameResult("DELETE WHERE { ?s :p ?o . ?o :p ?x }");
+	}
+	
+	public void testBlankNodeTemplate() {
+		assertSameResult("INSERT { ?s :r _:n . _:n :v ?o } WHERE { ?s :p ?o }");
+	}
+	
+	private static void assertSameResult(String update) {
+		UpdateRequest request = UpdateFactory.create(PREFIX + update);
+		assertEquals(1, request.getOperations().size());
+		Update operation = request.getOperations().get(0);
+		CompiledUpdate compiled = CompiledUpdate.compile(operation);
+		assertNotNull("Not compiled: "+update, compiled);
+		
+		Model expected = data();
+		UpdateAction.execute(request, expected);
+		Model actual = data();
+		compiled.execute(actual.getGraph());
+		
+		assertTrue("Different result for "+update+"\nexpected:\n"+expected.getGraph()+"\nactual:\n"+actual.getGraph(), 
+				expected.isIsomorphicWith(actual));
+	}
+	
+	private static Model data() {
+		Model m = ModelFactory.createDefaultModel();
+		m.read(new StringReader(DATA), null, "TTL");
+		return m;
+	}
+}